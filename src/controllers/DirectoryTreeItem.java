@@ -0,0 +1,310 @@
+package controllers;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import models.Directory;
+import models.DirectoryScanner;
+import models.ImageFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A DirectoryTreeItem displays a Directory in the directoryView and only creates the TreeItems of its files when it is
+ * first expanded. If the Directory hasn't been listed yet, it is listed by the DirectoryScanner on a background
+ * thread and the children are filled in once that is done, so expanding a large folder never blocks the JavaFX
+ * thread.
+ * <p>
+ * The children of a collapsed DirectoryTreeItem are kept so that it opens again instantly, but when the program runs
+ * low on memory the children of collapsed items are dropped, least recently collapsed first, and listed again from
+ * the Directory the next time they're expanded. The number of TreeItems therefore follows what has been opened, not
+ * how big the tree is. Every tree keeps its own collapsed items, so a tree that is no longer displayed can be
+ * collected with its ImageFiles. Every DirectoryTreeItem must only be used on the JavaFX thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class DirectoryTreeItem extends TreeItem<File> {
+
+    /**
+     * A Listener is told when a DirectoryTreeItem creates or drops the TreeItems of its files.
+     */
+    public interface Listener {
+
+        /**
+         * Called after the given DirectoryTreeItem has created the TreeItems of its files.
+         *
+         * @param treeItem the DirectoryTreeItem whose files are displayed
+         */
+        void childrenLoaded(DirectoryTreeItem treeItem);
+
+        /**
+         * Called after the given DirectoryTreeItem has dropped the TreeItems of its files.
+         *
+         * @param treeItem the DirectoryTreeItem whose files are no longer displayed
+         */
+        void childrenUnloaded(DirectoryTreeItem treeItem);
+    }
+
+    /**
+     * Fraction of the maximum heap in use above which the children of collapsed items are dropped.
+     */
+    private static final double memoryPressure = 0.75;
+
+    /**
+     * The threads that directories are listed on.
+     */
+    private static final ExecutorService listingThreads = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "directory-lister");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * The DirectoryScanner that lists directories that haven't been listed yet.
+     */
+    private final DirectoryScanner directoryScanner;
+
+    /**
+     * The Comparator the children are sorted with.
+     */
+    private final Comparator<File> fileComparator;
+
+    /**
+     * The Listener told when children are created or dropped.
+     */
+    private final Listener listener;
+
+    /**
+     * Every collapsed DirectoryTreeItem of this one's tree that still has its children, least recently collapsed
+     * first. It is shared by the whole tree, so it is dropped with the tree when a new root is displayed.
+     */
+    private final LinkedHashSet<DirectoryTreeItem> collapsedItems;
+
+    /**
+     * Whether the TreeItems of the files have been created.
+     */
+    private boolean loaded;
+
+    /**
+     * Whether the Directory is being listed on a background thread.
+     */
+    private boolean loading;
+
+    /**
+     * Constructs a new DirectoryTreeItem for the given Directory, without any children yet.
+     *
+     * @param directory        the Directory to display, which may not have been listed yet
+     * @param directoryScanner DirectoryScanner to list the Directory with
+     * @param fileComparator   Comparator to sort the children with
+     * @param listener         Listener told when children are created or dropped
+     */
+    public DirectoryTreeItem(Directory directory, DirectoryScanner directoryScanner, Comparator<File> fileComparator,
+                             Listener listener) {
+        this(directory, directoryScanner, fileComparator, listener, new LinkedHashSet<>());
+    }
+
+    /**
+     * Constructs a new DirectoryTreeItem for the given Directory in the tree with the given collapsed items, without
+     * any children yet.
+     *
+     * @param directory        the Directory to display, which may not have been listed yet
+     * @param directoryScanner DirectoryScanner to list the Directory with
+     * @param fileComparator   Comparator to sort the children with
+     * @param listener         Listener told when children are created or dropped
+     * @param collapsedItems   the collapsed items of the tree that still have their children
+     */
+    private DirectoryTreeItem(Directory directory, DirectoryScanner directoryScanner, Comparator<File> fileComparator,
+                              Listener listener, LinkedHashSet<DirectoryTreeItem> collapsedItems) {
+        super(directory);
+        this.directoryScanner = directoryScanner;
+        this.fileComparator = fileComparator;
+        this.listener = listener;
+        this.collapsedItems = collapsedItems;
+        expandedProperty().addListener((observable, wasExpanded, isExpanded) -> {
+            if (isExpanded) {
+                collapsedItems.remove(this);
+                loadChildren();
+            } else if (loaded) {
+                collapsedItems.add(this);
+            }
+        });
+    }
+
+    /**
+     * Returns the Directory this DirectoryTreeItem displays.
+     *
+     * @return the Directory
+     */
+    public Directory getDirectory() {
+        return (Directory) getValue();
+    }
+
+    /**
+     * Returns whether the TreeItems of the files have been created.
+     *
+     * @return true if the children are loaded, and false if not
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * A DirectoryTreeItem is only a leaf once it is known to have no files, so that it can be expanded before it is
+     * listed.
+     *
+     * @return true if the Directory has been listed and has no files, and false otherwise
+     */
+    @Override
+    public boolean isLeaf() {
+        return loaded && getChildren().isEmpty();
+    }
+
+    /**
+     * Creates the TreeItems of the files, unless they already exist or are on their way. A Directory that has already
+     * been listed is displayed right away; any other is listed on a background thread first.
+     */
+    public void loadChildren() {
+        if (loaded || loading)
+            return;
+        Directory listed = directoryScanner.getListed(getDirectory());
+        if (listed != null) {
+            showChildren(listed);
+            return;
+        }
+        loading = true;
+        Directory directory = getDirectory();
+        listingThreads.execute(() -> {
+            Directory result = directoryScanner.list(directory);
+            Platform.runLater(() -> {
+                loading = false;
+                if (!loaded && isExpanded())
+                    showChildren(result);
+            });
+        });
+    }
+
+    /**
+     * Drops the TreeItems of the files, and of every loaded DirectoryTreeItem below this one, so that they are
+     * listed again from the Directory the next time this DirectoryTreeItem is expanded.
+     */
+    public void unloadChildren() {
+        if (!loaded)
+            return;
+        for (TreeItem<File> child : getChildren()) {
+            if (child instanceof DirectoryTreeItem)
+                ((DirectoryTreeItem) child).unloadChildren();
+        }
+        loaded = false;
+        collapsedItems.remove(this);
+        setExpanded(false);
+        getChildren().clear();
+        listener.childrenUnloaded(this);
+    }
+
+    /**
+     * Recreates the TreeItems of the files from the given Directory, ie. after the Directory displayed was replaced
+     * by the one the DirectoryManager has for the same path.
+     *
+     * @param directory the Directory to display
+     */
+    public void reload(Directory directory) {
+        boolean expanded = isExpanded();
+        unloadChildren();
+        showChildren(directory);
+        setExpanded(expanded);
+    }
+
+    /**
+     * Creates the TreeItems of the files of the given listed Directory in order, and displays it instead of the one
+     * this DirectoryTreeItem was created with if they are different objects. Subdirectories get a DirectoryTreeItem of
+     * their own, which is only filled in when it is expanded.
+     *
+     * @param directory the listed Directory for this DirectoryTreeItem's path
+     */
+    private void showChildren(Directory directory) {
+        setValue(directory);
+        ArrayList<File> files = new ArrayList<>(directory.getFiles());
+        files.sort(fileComparator);
+        ArrayList<TreeItem<File>> children = new ArrayList<>(files.size());
+        for (File file : files) {
+            if (file instanceof ImageFile)
+                children.add(new TreeItem<>(file));
+            else
+                children.add(new DirectoryTreeItem((Directory) file, directoryScanner, fileComparator, listener,
+                        collapsedItems));
+        }
+        getChildren().setAll(children);
+        loaded = true;
+        if (!isExpanded())
+            collapsedItems.add(this);
+        listener.childrenLoaded(this);
+        trimIfLowOnMemory();
+    }
+
+    /**
+     * Adds a TreeItem for the given file to the children in sorted order, if they are loaded.
+     *
+     * @param file the file added to the Directory
+     */
+    public void addChild(File file) {
+        if (!loaded)
+            return;
+        ObservableList<TreeItem<File>> children = getChildren();
+        int index = 0;
+        while (index < children.size() && fileComparator.compare(children.get(index).getValue(), file) < 0)
+            index++;
+        if (file instanceof ImageFile)
+            children.add(index, new TreeItem<>(file));
+        else
+            children.add(index, new DirectoryTreeItem((Directory) file, directoryScanner, fileComparator, listener,
+                    collapsedItems));
+    }
+
+    /**
+     * Removes the TreeItem of the given file from the children, if they are loaded.
+     *
+     * @param file the file removed from the Directory
+     */
+    public void removeChild(File file) {
+        if (!loaded)
+            return;
+        ObservableList<TreeItem<File>> children = getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i).getValue() == file || children.get(i).getValue().equals(file)) {
+                if (children.get(i) instanceof DirectoryTreeItem)
+                    ((DirectoryTreeItem) children.get(i)).unloadChildren();
+                children.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the children of collapsed items, least recently collapsed first, while more than the memoryPressure
+     * fraction of the maximum heap is in use. Items whose children are dropped can't give the memory back until the
+     * next garbage collection, so at most half of the collapsed items are dropped at a time.
+     */
+    private void trimIfLowOnMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used < memoryPressure * runtime.maxMemory() || collapsedItems.isEmpty())
+            return;
+        int toDrop = Math.max(collapsedItems.size() / 2, 1);
+        ArrayList<DirectoryTreeItem> oldest = new ArrayList<>(toDrop);
+        for (DirectoryTreeItem item : collapsedItems) {
+            if (oldest.size() == toDrop)
+                break;
+            oldest.add(item);
+        }
+        for (DirectoryTreeItem item : oldest) {
+            item.unloadChildren();
+        }
+    }
+}
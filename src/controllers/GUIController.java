@@ -1,7 +1,9 @@
 package controllers;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
@@ -16,17 +18,21 @@ import javafx.scene.input.MouseEvent;
 import javafx.stage.DirectoryChooser;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.Image;
+import javafx.scene.layout.AnchorPane;
 import javafx.scene.input.KeyEvent;
 import javafx.event.EventHandler;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.IOException;
-import java.io.FilenameFilter;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 import models.*;
+import views.Main;
 
 /**
  * The Controller class that interacts with our model classes (ImageFile, Log, Directory,
@@ -123,11 +129,6 @@ public class GUIController implements Initializable {
     @FXML
     private Button processChanges;
 
-    /**
-     * The regex format followed by any file name that contains tags
-     */
-    private String regex_format = "^[\\W\\D\\w\\d\\s]+((\\s)(@[^.\\\\/:*?\"<>|]*[^\\s]))+\\.((jpg)|(png)|(gif)|(jpeg))";
-
     /**
      * ListView representing the ImageFile objects in the listOfFavourites in a Favourite object
      */
@@ -139,6 +140,168 @@ public class GUIController implements Initializable {
      */
     private static Favourite favourite;
 
+    /**
+     * The ScanCache that remembers the entries of every scanned directory
+     */
+    private static ScanCache scanCache;
+
+    /**
+     * The DirectoryScanner that builds Directory objects off the JavaFX thread
+     */
+    private DirectoryScanner directoryScanner;
+
+    /**
+     * The DirectoryWatcher that keeps the displayed Directory objects up to date
+     */
+    private static DirectoryWatcher directoryWatcher;
+
+    /**
+     * The DirectoryTreeItem displaying the files of each watched Directory
+     */
+    private HashMap<Directory, DirectoryTreeItem> treeItems;
+
+    /**
+     * Registers every DirectoryTreeItem that displays its files, and unregisters it when it drops them
+     */
+    private final DirectoryTreeItem.Listener treeItemListener = new DirectoryTreeItem.Listener() {
+        @Override
+        public void childrenLoaded(DirectoryTreeItem treeItem) {
+            registerTreeItem(treeItem);
+        }
+
+        @Override
+        public void childrenUnloaded(DirectoryTreeItem treeItem) {
+            unregisterTreeItem(treeItem);
+        }
+    };
+
+    /**
+     * The ProgressBar shown while a directory is being scanned
+     */
+    @FXML
+    private ProgressBar scanProgress;
+
+    /**
+     * The Label describing how far the current scan has got
+     */
+    @FXML
+    private Label scanStatus;
+
+    /**
+     * The Button that cancels the current scan
+     */
+    @FXML
+    private Button cancelScan;
+
+    /**
+     * The most bytes of decoded previews the PreviewCache keeps in memory.
+     */
+    private static final long previewCacheBudget = 64L * 1024 * 1024;
+
+    /**
+     * The ThumbnailStore that keeps the thumbnails of seen images between runs
+     */
+    private static ThumbnailStore thumbnailStore;
+
+    /**
+     * The ThumbnailLoader that shows and makes the thumbnails in the directoryView
+     */
+    private ThumbnailLoader thumbnailLoader;
+
+    /**
+     * The AnchorPane that holds the imageDisplay and the thumbnailGrid
+     */
+    @FXML
+    private AnchorPane previewPane;
+
+    /**
+     * The ToggleButton that switches between the imageDisplay and the thumbnailGrid
+     */
+    @FXML
+    private ToggleButton gridToggle;
+
+    /**
+     * The TextField holding the tag expression to search the library for, ie. "@beach AND NOT @dog"
+     */
+    @FXML
+    private TextField tagSearch;
+
+    /**
+     * The ThumbnailGrid that shows the thumbnails of the gridTreeItem's images in place of the imageDisplay
+     */
+    private ThumbnailGrid thumbnailGrid;
+
+    /**
+     * The DirectoryTreeItem whose images the thumbnailGrid shows, or null if it shows the results of a search
+     */
+    private DirectoryTreeItem gridTreeItem;
+
+    /**
+     * The most bytes of pixels a single preview or thumbnail decode can use.
+     */
+    private static final long decodeMemoryCeiling = 48L * 1024 * 1024;
+
+    /**
+     * The PreviewLoader that decodes the images shown in imageDisplay
+     */
+    private PreviewLoader previewLoader;
+
+    /**
+     * The PreviewPrefetcher that decodes the images next to the selected one ahead of time
+     */
+    private PreviewPrefetcher previewPrefetcher;
+
+    /**
+     * The Tooltip of imageDisplay, which shows how long the preview took to load
+     */
+    private Tooltip previewLatency;
+
+    /**
+     * The scan that is currently running, or null
+     */
+    private Task<Directory> currentScan;
+
+    /**
+     * The TagBatch whose files are being renamed, or null. No tags can be changed until it is committed.
+     */
+    private TagBatch runningBatch;
+
+    /**
+     * Directories scanned by the current scan that the directoryView hasn't been updated with yet
+     */
+    private final ConcurrentLinkedQueue<Directory> scannedDirectories = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a drain of scannedDirectories is already waiting to run on the JavaFX thread
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * Number of directories the current scan has finished
+     */
+    private final AtomicInteger directoriesScanned = new AtomicInteger();
+
+    /**
+     * Number of directories the current scan has found so far, including the ones not scanned yet
+     */
+    private final AtomicInteger directoriesFound = new AtomicInteger();
+
+    /**
+     * Number of images the current scan has found so far
+     */
+    private final AtomicInteger imagesFound = new AtomicInteger();
+
+    /**
+     * Sorts files alphabetically so files appear in the directory in order
+     */
+    // Code adapted from https://stackoverflow.com/questions/1814095/sorting-an-arraylist-of-objects-using-a-custom-sorting-order
+    private static final Comparator<File> fileComparator = new Comparator<File>() {
+        @Override
+        public int compare(final File object1, final File object2) {
+            return object1.getName().compareTo(object2.getName());
+        }
+    };
+
     /**
      * Constructs a new GUIController and instantiates the instance variables.
      */
@@ -149,6 +312,10 @@ public class GUIController implements Initializable {
         currentImage = null;
         indexToRevert = 0;
         favourite = new Favourite();
+        scanCache = new ScanCache(Main.scanCache);
+        thumbnailStore = new ThumbnailStore(Main.thumbnailPack, Main.thumbnailIndex);
+        directoryScanner = new DirectoryScanner(directoryManager, tagManager, scanCache);
+        treeItems = new HashMap<>();
     }
 
 
@@ -160,19 +327,75 @@ public class GUIController implements Initializable {
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        // Finish the renames cut short last time before anything is loaded from the disk.
+        RenameJournal.getRenameJournal().recover();
+        // Each is loaded on its own, so that one that can't be loaded doesn't keep the others from being loaded.
         try {
             tagManager.loadSavedTags();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        try {
             directoryManager.loadSavedDirectories();
-            favourite.loadSavedFavourites();
-        } catch (IOException e) {
         } catch (ClassNotFoundException e) {
+            e.printStackTrace();
         }
+        try {
+            favourite.loadSavedFavourites();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        scanCache.loadScanCache();
+        thumbnailStore.loadThumbnails();
+        PreviewDecoder previewDecoder = new PreviewDecoder(decodeMemoryCeiling);
+        thumbnailLoader = new ThumbnailLoader(thumbnailStore, previewDecoder);
         ObservableList<ImageFile> observableList1 = FXCollections.observableArrayList(favourite.getListOfFavourites());
         favouriteListView.setItems(observableList1);
         ObservableList<Tag> observableList = FXCollections.observableArrayList(tagManager.getListOfTags());
         currentTags.setItems(observableList);
         currentTags.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         imageTags.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        directoryView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        setDirectoryCellFactory();
+        showScanControls(false);
+        // Images from https://www.flaticon.com/authors/smashicons
+        previewLoader = new PreviewLoader(550, 320,
+                new Image(getClass().getResourceAsStream("/images/icons/picture.png")),
+                new PreviewCache(previewCacheBudget), previewDecoder);
+        previewPrefetcher = new PreviewPrefetcher(550, 320, previewLoader.getCache(), previewDecoder);
+        previewLatency = new Tooltip();
+        Tooltip.install(imageDisplay, previewLatency);
+        thumbnailGrid = new ThumbnailGrid(thumbnailLoader,
+                new Image(getClass().getResourceAsStream("/images/icons/picture.png")), ThumbnailLoader.thumbnailSize,
+                imageDisplay.getFitWidth(), imageDisplay.getFitHeight(), this::selectInDirectoryView,
+                imageFile -> {
+                    selectInDirectoryView(imageFile);
+                    gridToggle.setSelected(false);
+                    showGridView(false);
+                });
+        thumbnailGrid.setVisible(false);
+        previewPane.getChildren().add(thumbnailGrid);
+        directoryView.getSelectionModel().selectedItemProperty().addListener((observable, oldItem, newItem) -> {
+            if (newItem != null && newItem.getValue() instanceof ImageFile) {
+                selectImage((ImageFile) newItem.getValue());
+                if (thumbnailGrid.isVisible()) {
+                    if (newItem.getParent() instanceof DirectoryTreeItem && newItem.getParent() != gridTreeItem)
+                        showGrid((DirectoryTreeItem) newItem.getParent());
+                    thumbnailGrid.select((ImageFile) newItem.getValue());
+                } else if (newItem.getParent() != null) {
+                    ObservableList<TreeItem<File>> siblings = newItem.getParent().getChildren();
+                    previewPrefetcher.prefetch(siblings, siblings.indexOf(newItem));
+                }
+            } else if (newItem instanceof DirectoryTreeItem && thumbnailGrid.isVisible()) {
+                showGrid((DirectoryTreeItem) newItem);
+            }
+        });
+        try {
+            directoryWatcher = new DirectoryWatcher(directoryScanner, Platform::runLater, this::updateTreeItem);
+            directoryWatcher.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -188,12 +411,15 @@ public class GUIController implements Initializable {
     @FXML
     @SuppressWarnings("unchecked")
     public void handleKeyPress(KeyEvent e) {
+        if (runningBatch != null)
+            return;
         ObservableList<Tag> currentItems = currentTags.getSelectionModel().getSelectedItems();
         ArrayList<Tag> selectedTags = new ArrayList<>(currentItems);
         if ((currentTags != null) && (currentImage != null)) {
             if ((e.getCode() == KeyCode.BACK_SPACE) || (e.getCode() == KeyCode.DELETE))
                 removeTagFromImageTags(selectedTags);
-            if (e.getCode() == KeyCode.ENTER && currentImage != null) {
+            if (e.getCode() == KeyCode.ENTER && currentImage != null
+                    && !tagSelectedImages(selectedTags, new ArrayList<>())) {
                 currentImage.addTag(selectedTags);
                 imageName.setText("Current Name: " + currentImage.imageFile.getName());
                 updateCurrentTags(currentImage);
@@ -211,9 +437,12 @@ public class GUIController implements Initializable {
      */
     @FXML
     private void addTagToImage(ActionEvent e) {
+        if (runningBatch != null)
+            return;
         ObservableList<Tag> currentItems = currentTags.getSelectionModel().getSelectedItems();
         ArrayList<Tag> selectedTags = new ArrayList<>(currentItems);
-        if ((currentTags != null) && (currentImage != null) && selectedTags.size() != 0) {
+        if ((currentTags != null) && (currentImage != null) && selectedTags.size() != 0
+                && !tagSelectedImages(selectedTags, new ArrayList<>())) {
             currentImage.addTag(selectedTags);
             updateCurrentTags(currentImage);
             updateImageHistory(currentImage);
@@ -246,10 +475,13 @@ public class GUIController implements Initializable {
      */
     @FXML
     public void deleteTagFromImage(KeyEvent e) {
+        if (runningBatch != null)
+            return;
         ArrayList<Tag> tagsToDelete = new ArrayList<>();
         tagsToDelete.addAll(imageTags.getSelectionModel().getSelectedItems());
-        if ((e.getCode() == KeyCode.BACK_SPACE) || (e.getCode() == KeyCode.DELETE)
-                && currentImage != null && tagsToDelete.size() != 0) {
+        if (((e.getCode() == KeyCode.BACK_SPACE) || (e.getCode() == KeyCode.DELETE))
+                && currentImage != null && tagsToDelete.size() != 0
+                && !tagSelectedImages(new ArrayList<>(), tagsToDelete)) {
             currentImage.deleteTag(tagsToDelete);
             updateCurrentTags(currentImage);
             updateImageHistory(currentImage);
@@ -262,6 +494,96 @@ public class GUIController implements Initializable {
 
     }
 
+    /**
+     * Adds and removes the given Tags on every image selected in the directoryView as one TagBatch, if more than one
+     * image is selected. The files are renamed on a background thread, and the views are updated once when the whole
+     * batch is done. Until then the directoryWatcher leaves the files of the batch alone, and the tags of images
+     * can't be changed.
+     *
+     * @param addedTags   the Tags to add
+     * @param removedTags the Tags to remove
+     * @return true if the Tags are being applied to the selected images, and false if fewer than two are selected
+     */
+    private boolean tagSelectedImages(ArrayList<Tag> addedTags, ArrayList<Tag> removedTags) {
+        ArrayList<ImageFile> selectedImages = new ArrayList<>();
+        for (TreeItem<File> item : directoryView.getSelectionModel().getSelectedItems()) {
+            if (item != null && item.getValue() instanceof ImageFile)
+                selectedImages.add((ImageFile) item.getValue());
+        }
+        if (selectedImages.size() < 2)
+            return false;
+        TagBatch batch = new TagBatch(selectedImages, addedTags, removedTags);
+        if (batch.size() == 0)
+            return true;
+        ArrayList<String> paths = batch.getPaths();
+        startBatch(batch, paths);
+        Task<Void> renameTask = new Task<Void>() {
+            @Override
+            protected Void call() {
+                batch.rename();
+                return null;
+            }
+        };
+        renameTask.setOnSucceeded(event -> {
+            ArrayList<ImageFile> renamed = batch.commit();
+            endBatch(paths);
+            scanStatus.setText("Tagged " + renamed.size() + " of " + selectedImages.size() + " images");
+            refreshAfterTagging();
+        });
+        renameTask.setOnFailed(event -> {
+            renameTask.getException().printStackTrace();
+            endBatch(paths);
+        });
+        Thread renameThread = new Thread(renameTask);
+        renameThread.setDaemon(true);
+        renameThread.start();
+        return true;
+    }
+
+    /**
+     * Marks the given TagBatch as running: the directoryWatcher ignores its files, and the views that change tags are
+     * disabled.
+     *
+     * @param batch the TagBatch about to rename its files
+     * @param paths paths of the files it renames, before and after
+     */
+    private void startBatch(TagBatch batch, ArrayList<String> paths) {
+        runningBatch = batch;
+        if (directoryWatcher != null)
+            directoryWatcher.ignore(paths);
+        currentTags.setDisable(true);
+        imageTags.setDisable(true);
+        imageHistory.setDisable(true);
+    }
+
+    /**
+     * Marks the running TagBatch as done, once it has been committed or has failed, and enables tagging again.
+     *
+     * @param paths paths of the files it renamed, before and after
+     */
+    private void endBatch(ArrayList<String> paths) {
+        runningBatch = null;
+        if (directoryWatcher != null)
+            directoryWatcher.stopIgnoring(paths);
+        currentTags.setDisable(false);
+        imageTags.setDisable(false);
+        imageHistory.setDisable(false);
+    }
+
+    /**
+     * Updates every view that shows image names or tags, once, after the tags of one or more images have changed.
+     */
+    private void refreshAfterTagging() {
+        if (currentImage != null) {
+            imageName.setText("Current Name: " + currentImage.imageFile.getName());
+            updateCurrentTags(currentImage);
+            updateImageHistory(currentImage);
+        }
+        updateFavouritesListView(favourite);
+        directoryView.refresh();
+        thumbnailGrid.refresh();
+    }
+
     /**
      * Removes selected tags from the currentTags ListView and the TagManager object and
      * updates the currentTags ListView
@@ -321,7 +643,9 @@ public class GUIController implements Initializable {
     }
 
     /**
-     * Opens the window to select directories when the button "Load Directory" is pressed.
+     * Opens the window to select directories when the button "Load Directory" is pressed. The selected directory is
+     * scanned in the background and the directoryView is filled in as directories are scanned, so the first images
+     * can be tagged while the rest of a large tree is still loading.
      *
      * @param e An ActionEvent representing the Load Directory button being pressed
      */
@@ -333,181 +657,283 @@ public class GUIController implements Initializable {
          */
         DirectoryChooser dc = new DirectoryChooser();
         File selectedDirectory = dc.showDialog(null);
-        if (selectedDirectory != null) {
-            Directory directory = buildDirectory(selectedDirectory.getAbsolutePath());
-            TreeItem<File> root = createTreeItem(directory, 1);
-            directoryView.setRoot(root);
-            directoryView.setEditable(true);
-            ;
-            directoryView.setCellFactory(param -> new TreeCell<File>() {
-                @Override
-                public void updateItem(File file, boolean empty) {
-                    // Images from https://www.flaticon.com/authors/smashicons
-                    Image folderIcon = new Image(getClass().getResourceAsStream("/images/icons/folder.png"));
-                    Image pictureIcon = new Image(getClass().getResourceAsStream("/images/icons/picture.png"));
-                    ImageView imgView = null;
-                    super.updateItem(file, empty);
-                    if (empty) {
-                        setText(null);
-                        setGraphic(null);
-                    } else {
-                        if (file instanceof ImageFile) {
-                            imgView = new ImageView(pictureIcon);
-                            setText(((ImageFile) file).getImageFile().getName());
-                        } else if (file instanceof Directory) {
-                            imgView = new ImageView(folderIcon);
-                            setText(file.getName());
-                        }
-                        setDisclosureNode(null);
-                        setGraphic(imgView);
-                    }
-                }
-            });
-            currentDirectory = directory;
-        }
+        if (selectedDirectory != null)
+            startScan(selectedDirectory.getAbsolutePath());
     }
 
-    private TreeItem<File> createTreeItem(Directory directory, int depth) {
-        // Sorts files alphabetically so files appear in the directory in order.
-        ArrayList<File> files = directory.getFiles();
-        // Code adapted from https://stackoverflow.com/questions/1814095/sorting-an-arraylist-of-objects-using-a-custom-sorting-order
-        Comparator<File> fileComparator = new Comparator<File>() {
+    /**
+     * Cancels the current scan when the button "Cancel" is pressed. What has been scanned so far stays in the
+     * directoryView.
+     *
+     * @param e An ActionEvent representing the Cancel button being pressed
+     */
+    @FXML
+    public void cancelScanAction(ActionEvent e) {
+        if (currentScan != null)
+            currentScan.cancel();
+    }
+
+    /**
+     * Starts scanning the directory at the given path in the background. The directoryView is cleared and shows the
+     * directory right away as an expanded DirectoryTreeItem, which lists its own files without waiting for the scan.
+     *
+     * @param selectedPath path of the directory to scan
+     */
+    private void startScan(String selectedPath) {
+        if (currentScan != null)
+            currentScan.cancel();
+        if (directoryWatcher != null)
+            directoryWatcher.unwatchAll();
+        treeItems.clear();
+        scannedDirectories.clear();
+        directoriesScanned.set(0);
+        directoriesFound.set(1);
+        imagesFound.set(0);
+        Directory placeholder = new Directory(selectedPath);
+        DirectoryTreeItem root = new DirectoryTreeItem(placeholder, directoryScanner, fileComparator,
+                treeItemListener);
+        directoryView.setRoot(root);
+        directoryView.setEditable(true);
+        root.setExpanded(true);
+        currentDirectory = placeholder;
+        Task<Directory> scanTask = new Task<Directory>() {
             @Override
-            public int compare(final File object1, final File object2) {
-                return object1.getName().compareTo(object2.getName());
+            protected Directory call() {
+                return directoryScanner.scan(selectedPath, directory -> publishScannedDirectory(directory),
+                        this::isCancelled);
             }
         };
-        files.sort(fileComparator);
+        scanTask.setOnSucceeded(event -> finishScan(scanTask, "Loaded"));
+        scanTask.setOnCancelled(event -> finishScan(scanTask, "Cancelled after"));
+        scanTask.setOnFailed(event -> {
+            scanTask.getException().printStackTrace();
+            finishScan(scanTask, "Failed after");
+        });
+        currentScan = scanTask;
+        loadDirectory.setDisable(true);
+        showScanControls(true);
+        updateScanStatus("Loading");
+        Thread scanThread = new Thread(scanTask);
+        scanThread.setDaemon(true);
+        scanThread.start();
+    }
 
-        if (files.isEmpty()) {
-            return new TreeItem<>(directory);
-        } else {
-            while (depth >= 0) {
-                TreeItem<File> treeItem = new TreeItem<>(directory);
-                for (File file : files) {
-                    if (file instanceof ImageFile) {
-                        TreeItem imageFile = new TreeItem<>(file);
-                        treeItem.getChildren().add(imageFile);
-                    } else {
-                        Directory dir = buildDirectory(file.getAbsolutePath());
-                        TreeItem<File> fileTreeItem = createTreeItem(dir, depth - 1);
-                        treeItem.getChildren().add(fileTreeItem);
-                    }
-                }
-                return treeItem;
-            }
+    /**
+     * Queues a Directory that the current scan has just scanned for the directoryView, and schedules a drain of the
+     * queue on the JavaFX thread unless one is already waiting. Everything scanned while a drain is waiting goes into
+     * that same drain, so the JavaFX thread gets at most one update per frame however fast directories are scanned.
+     * Called on the scanning threads.
+     *
+     * @param directory the scanned Directory
+     */
+    private void publishScannedDirectory(Directory directory) {
+        for (File file : directory.getFiles()) {
+            if (file instanceof Directory)
+                directoriesFound.incrementAndGet();
+            else
+                imagesFound.incrementAndGet();
         }
-        return new TreeItem<>(directory);
+        directoriesScanned.incrementAndGet();
+        scannedDirectories.add(directory);
+        if (drainScheduled.compareAndSet(false, true))
+            Platform.runLater(this::drainScannedDirectories);
     }
 
     /**
-     * Helper method that takes in a path given as a String. Checks if there is already an existing Directory with
-     * the given path, and returns it if there is. If there isn't, it will create a new Directory object, add
-     * it to the directoryManager and returns it.
-     *
-     * @param selectedPath String of the path we're looking for/building.
-     * @return a Directory object with the given path.
+     * Updates the progress of the scan and the list of tags with every Directory scanned since the last drain. Only
+     * DirectoryTreeItems that already display their files are touched: one that shows another Directory object for
+     * the same path than the one the scan loaded is switched over to it, and everything else is left for when it is
+     * expanded.
      */
-    private Directory buildDirectory(String selectedPath) {
-        if (directoryManager.directoryManagerContains(selectedPath)) {
-            return directoryManager.getDirectory(selectedPath);
-        } else {
-            Directory directory = new Directory(selectedPath);
-            directory.setFiles(getFiles(directory));
-            directoryManager.addDirectory(directory);
-            return directory;
+    private void drainScannedDirectories() {
+        drainScheduled.set(false);
+        boolean changed = false;
+        Directory directory;
+        while ((directory = scannedDirectories.poll()) != null) {
+            changed = true;
+            DirectoryTreeItem treeItem = treeItems.get(directory);
+            if (treeItem != null && treeItem.getValue() != directory)
+                treeItem.reload(directory);
         }
+        if (changed) {
+            updateObservableList(tagManager);
+            directoryView.refresh();
+        }
+        if (currentScan != null)
+            updateScanStatus("Loading");
     }
 
     /**
-     * Returns an ArrayList of File objects that have the correct extensions and are in the given selectedDirectory
+     * Ends the given scan, if it is still the current one: the last scanned directories are shown and the scan
+     * controls are hidden, leaving a summary of what was loaded.
      *
-     * @param selectedDirectory the directory we're finding the Files
-     * @return File objects with the given accepted extensions.
+     * @param scanTask the scan that ended
+     * @param outcome  how the scan ended, shown in front of the summary
      */
-    private ArrayList<File> getFiles(File selectedDirectory) {
-        /*
-         *Code adapted from a post by Deron Eriksson
-         *accessed on 20171116
-         * http://www.avajava.com/tutorials/lessons/how-do-i-use-a-
-         * filenamefilter-to-display-a-subset-of-files-in-a-directory.html
-         */
-        File[] allFiles = selectedDirectory.listFiles(new FilenameFilter() {
+    private void finishScan(Task<Directory> scanTask, String outcome) {
+        if (scanTask != currentScan)
+            return;
+        drainScannedDirectories();
+        currentScan = null;
+        loadDirectory.setDisable(false);
+        showScanControls(false);
+        updateScanStatus(outcome);
+        scanStatus.setVisible(true);
+    }
+
+    /**
+     * Shows or hides the progress bar, status and cancel button of a scan.
+     *
+     * @param visible true to show them, and false to hide them
+     */
+    private void showScanControls(boolean visible) {
+        scanProgress.setVisible(visible);
+        scanStatus.setVisible(visible);
+        cancelScan.setVisible(visible);
+        cancelScan.setDisable(!visible);
+    }
+
+    /**
+     * Shows how many directories and images the current scan has got through. The total number of directories
+     * grows as the scan finds more of them, so the progress bar is an estimate until the scan ends.
+     *
+     * @param outcome what the scan is doing or how it ended, shown in front of the counts
+     */
+    private void updateScanStatus(String outcome) {
+        int scanned = directoriesScanned.get();
+        int found = directoriesFound.get();
+        scanProgress.setProgress((double) scanned / Math.max(found, 1));
+        scanStatus.setText(outcome + " " + scanned + " of " + found + " folders, " + imagesFound.get() + " images");
+    }
+
+    /**
+     * Sets up how the directoryView displays its files: images by their current name with their thumbnail, or a
+     * picture icon until it is made, and directories with a folder icon. The icons are loaded once, and every cell
+     * keeps reusing its own ImageView.
+     */
+    private void setDirectoryCellFactory() {
+        // Images from https://www.flaticon.com/authors/smashicons
+        Image folderIcon = new Image(getClass().getResourceAsStream("/images/icons/folder.png"));
+        Image pictureIcon = new Image(getClass().getResourceAsStream("/images/icons/picture.png"));
+        directoryView.setCellFactory(param -> new TreeCell<File>() {
+            private final ImageView imgView = createIconView(pictureIcon);
+
             @Override
-            public boolean accept(File dir, String name) {
-                if (name.startsWith(".")) {
-                    return false;
-                } else if (new File(dir, name).isDirectory()) {
-                    return true;
-                } else if (name.toLowerCase().endsWith(".jpg")) {
-                    return true;
-                } else if (name.toLowerCase().endsWith(".jpeg")) {
-                    return true;
-                } else if (name.toLowerCase().endsWith(".png")) {
-                    return true;
-                } else if (name.toLowerCase().endsWith(".gif")) {
-                    return true;
-                }
-                return false;
-            }
-        });
-        ArrayList<File> files = new ArrayList<>();
-        if (allFiles != null) {
-            for (File file : allFiles) {
-                if (!file.isDirectory()) {
-                    File imgFile = new ImageFile(file.getPath());
-                    /*
-                    Checks if a file name matches the regular expression for a file name
-                    that contains tags and attempts to auto-tag it
-                     */
-                    if (((ImageFile) imgFile).getImageFile().getName().toLowerCase().matches(regex_format)) {
-                        autoTag((ImageFile) imgFile, tagManager);
-                    }
-                    files.add(imgFile);
+            public void updateItem(File file, boolean empty) {
+                super.updateItem(file, empty);
+                if (empty) {
+                    setText(null);
+                    setGraphic(null);
                 } else {
-                    File directory;
-                    String selectedPath = file.getAbsolutePath();
-                    if (directoryManager.directoryManagerContains(selectedPath))
-                        directory = directoryManager.getDirectory(selectedPath);
-                    else
-                        directory = new Directory(selectedPath);
-                    files.add(directory);
+                    if (file instanceof ImageFile) {
+                        ImageFile imgFile = (ImageFile) file;
+                        Image thumbnail = thumbnailLoader.get(imgFile);
+                        imgView.setImage((thumbnail != null) ? thumbnail : pictureIcon);
+                        if (thumbnail == null) {
+                            thumbnailLoader.request(imgFile, () -> {
+                                if (getItem() == imgFile)
+                                    imgView.setImage(thumbnailLoader.get(imgFile));
+                            });
+                        }
+                        setText(imgFile.getImageFile().getName());
+                    } else if (file instanceof Directory) {
+                        imgView.setImage(folderIcon);
+                        setText(file.getName());
+                    }
+                    setDisclosureNode(null);
+                    setGraphic(imgView);
                 }
             }
+        });
+    }
+
+    /**
+     * Returns a new ImageView that fits what it shows in a box the size of the given icon.
+     *
+     * @param icon the icon whose size the box has
+     * @return the ImageView
+     */
+    private static ImageView createIconView(Image icon) {
+        ImageView imgView = new ImageView();
+        imgView.setFitWidth(icon.getWidth());
+        imgView.setFitHeight(icon.getHeight());
+        imgView.setPreserveRatio(true);
+        return imgView;
+    }
+
+    /**
+     * Remembers the DirectoryTreeItem that displays the files of its Directory and starts watching the Directory, so
+     * that changes made outside the program show up in the directoryView. If the currentDirectory has the same path,
+     * it is replaced by the loaded Directory.
+     *
+     * @param treeItem the DirectoryTreeItem that has just loaded its children
+     */
+    private void registerTreeItem(DirectoryTreeItem treeItem) {
+        treeItems.put(treeItem.getDirectory(), treeItem);
+        if (treeItem.getDirectory().equals(currentDirectory))
+            currentDirectory = treeItem.getDirectory();
+        if (directoryWatcher != null)
+            directoryWatcher.watch(treeItem.getDirectory());
+        if (treeItem == gridTreeItem && thumbnailGrid.isVisible())
+            showGrid(treeItem);
+    }
+
+    /**
+     * Forgets a DirectoryTreeItem that has dropped its children, and stops watching its Directory.
+     *
+     * @param treeItem the DirectoryTreeItem that has just dropped its children
+     */
+    private void unregisterTreeItem(DirectoryTreeItem treeItem) {
+        if (treeItems.get(treeItem.getDirectory()) == treeItem) {
+            treeItems.remove(treeItem.getDirectory());
+            if (directoryWatcher != null)
+                directoryWatcher.unwatch(treeItem.getDirectory());
         }
-        return files;
     }
 
     /**
-     * Takes in an ImageFile object and TagManager object. Extracts Strings that represent Tags in the ImageFile name
-     * and converts them into Tag objects, adds them to the TagManager and actually tags the ImageFile object with
-     * the newly created Tag objects.
+     * Updates the DirectoryTreeItem of a Directory that the directoryWatcher changed. Only the TreeItems of the added
+     * and removed files are touched.
      *
-     * @param imgFil     ImageFile we're tagging and extracting tags from.
-     * @param tagManager TagManager object that we're storing the new Tag objects in.
+     * @param directory the Directory that changed
+     * @param added     the files added to the Directory
+     * @param removed   the files removed from the Directory
      */
-    private void autoTag(ImageFile imgFil, TagManager tagManager) {
-        int indexOfPeriod = imgFil.getImageFile().getName().lastIndexOf('.');
-        String[] extractedTags = imgFil.getImageFile().getName().substring(0, indexOfPeriod).split(" @");
-        String newBaseName = extractedTags[0].trim();
-        imgFil.setBaseName(newBaseName);
-        int i = 1;
-        ArrayList<Tag> tagToAdd = new ArrayList<>();
-        while (i < extractedTags.length) {
-            Tag newTag = new Tag(extractedTags[i].trim());
-            tagManager.addTag(newTag);
-            if (tagManager.getListOfTags().contains(newTag)) {
-                tagToAdd.add(newTag);
-            }
-            imgFil.setCurrentTags(tagToAdd);
-            i++;
+    private void updateTreeItem(Directory directory, ArrayList<File> added, ArrayList<File> removed) {
+        DirectoryTreeItem treeItem = treeItems.get(directory);
+        if (treeItem == null)
+            return;
+        for (File file : removed) {
+            treeItem.removeChild(file);
+        }
+        for (File file : added) {
+            treeItem.addChild(file);
+        }
+        directoryView.refresh();
+        if (treeItem == gridTreeItem && thumbnailGrid.isVisible())
+            showGrid(treeItem);
+    }
+
+    /**
+     * Helper method that takes in a path given as a String. Checks if there is already an existing Directory with
+     * the given path, and returns it if there is. If there isn't, it will list the files of the directory, but not of
+     * its subdirectories, with the directoryScanner, which adds it to the directoryManager, and returns it. This
+     * method reads from the file system, so it should not be called on the JavaFX thread.
+     *
+     * @param selectedPath String of the path we're looking for/building.
+     * @return a Directory object with the given path.
+     */
+    private Directory buildDirectory(String selectedPath) {
+        if (directoryManager.directoryManagerContains(selectedPath)) {
+            return directoryManager.getDirectory(selectedPath);
+        } else {
+            return directoryScanner.list(new Directory(selectedPath));
         }
-        updateObservableList(tagManager);
     }
 
     /**
-     * Displays the image file selected from the ListView directoryView on the ImageView imageDisplay.
-     * Throws a MalformedURLException if the URL from the URI of the ImageFile imgFile is malformed.
+     * Makes the Directory double-clicked in the directoryView the currentDirectory. Images selected in the
+     * directoryView are displayed by selectImage.
      *
      * @param e A event of the mouse being clicked
      * @throws MalformedURLException If the URL form of the URI is malformed
@@ -522,40 +948,12 @@ public class GUIController implements Initializable {
                 if (directoryView.getSelectionModel().getSelectedItem() != null) {
                     isSelected = true;
                 }
-                if (isSelected) {
-                    if (selectedFile instanceof ImageFile) {
-                        currentImage = (ImageFile) selectedFile;
-                        imageName.setText("Current Name: " + currentImage.imageFile.getName());
-                        imageTags.getItems().clear();
-                        updateCurrentTags(currentImage);
-                        updateImageHistory(currentImage);
-                        /*
-                         * Code adapted from Ken Alger on 20151017 from a blog post titled
-                         * "Setting selected image file to Imageview in JavaFX"
-                         * URL: https://teamtreehouse.com/community/setting-selected-image-file-to-imageview-in-javafx
-                         */
-                        String imgPath = null;
-                        try {
-                            imgPath = currentImage.getImageFile().toURI().toURL().toString();
-                        } catch (MalformedURLException e) {
-                            System.out.println(e.getMessage());
-                        }
-                        Image img = new Image(imgPath, 550, 320, true, true);
-                        centerImage(img);
-                        imageDisplay.setImage(img);
-                    } else {
-                        if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
-                            if (mouseEvent.getClickCount() == 2) {
-                                currentDirectory = (Directory) selectedFile;
-                                for (TreeItem<File> treeItem : selectedTreeItem.getChildren()) {
-                                    File treeItemFile = treeItem.getValue();
-                                    if (treeItem.getChildren().isEmpty()) {
-                                        Directory directory = buildDirectory(treeItemFile.getAbsolutePath());
-                                        TreeItem<File> newItem = createTreeItem(directory, 1);
-                                        treeItem.getChildren().setAll(newItem.getChildren());
-                                    }
-                                }
-                            }
+                // Selected images are shown by the selection listener added in initialize.
+                if (isSelected && selectedFile instanceof Directory) {
+                    if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
+                        if (mouseEvent.getClickCount() == 2) {
+                            // The TreeView expands the DirectoryTreeItem, which lists its files itself.
+                            currentDirectory = (Directory) selectedFile;
                         }
                     }
                 }
@@ -563,6 +961,125 @@ public class GUIController implements Initializable {
         });
     }
 
+    /**
+     * Makes the given ImageFile the currentImage and shows its name, tags and history. Its preview is decoded in the
+     * background by the previewLoader, with a placeholder shown until it is ready. Called whenever an image is
+     * selected in the directoryView, with the mouse or the arrow keys.
+     *
+     * @param imageFile the selected ImageFile
+     */
+    private void selectImage(ImageFile imageFile) {
+        currentImage = imageFile;
+        imageName.setText("Current Name: " + currentImage.imageFile.getName());
+        imageTags.getItems().clear();
+        updateCurrentTags(currentImage);
+        updateImageHistory(currentImage);
+        if (!thumbnailGrid.isVisible())
+            showPreview(currentImage);
+    }
+
+    /**
+     * Switches between the imageDisplay and the thumbnailGrid when the gridToggle is pressed.
+     *
+     * @param e ActionEvent of the gridToggle being pressed
+     */
+    @FXML
+    public void toggleGridView(ActionEvent e) {
+        showGridView(gridToggle.isSelected());
+    }
+
+    /**
+     * Shows either the thumbnailGrid, filled with the images of the folder selected in the directoryView, or the
+     * imageDisplay with the preview of the currentImage.
+     *
+     * @param grid true to show the thumbnailGrid, and false to show the imageDisplay
+     */
+    private void showGridView(boolean grid) {
+        thumbnailGrid.setVisible(grid);
+        imageDisplay.setVisible(!grid);
+        if (grid) {
+            previewLoader.cancel();
+            previewPrefetcher.cancel();
+            TreeItem<File> selected = directoryView.getSelectionModel().getSelectedItem();
+            if (selected != null && !(selected instanceof DirectoryTreeItem))
+                selected = selected.getParent();
+            if (selected instanceof DirectoryTreeItem)
+                showGrid((DirectoryTreeItem) selected);
+            thumbnailGrid.select(currentImage);
+        } else if (currentImage != null) {
+            showPreview(currentImage);
+        }
+    }
+
+    /**
+     * Fills the thumbnailGrid with the images of the given DirectoryTreeItem, in the order the directoryView shows
+     * them. The folder is expanded in the directoryView, and one that hasn't been listed yet fills the thumbnailGrid
+     * once it has been.
+     *
+     * @param treeItem the DirectoryTreeItem whose images to show
+     */
+    private void showGrid(DirectoryTreeItem treeItem) {
+        boolean sameFolder = treeItem == gridTreeItem;
+        gridTreeItem = treeItem;
+        // Expanding the DirectoryTreeItem lists it if it hasn't been, which calls showGrid again.
+        treeItem.setExpanded(true);
+        ArrayList<ImageFile> images = new ArrayList<>();
+        for (TreeItem<File> child : treeItem.getChildren()) {
+            if (child.getValue() instanceof ImageFile)
+                images.add((ImageFile) child.getValue());
+        }
+        thumbnailGrid.setImages(images);
+        if (!sameFolder)
+            thumbnailGrid.scrollTo(0);
+    }
+
+    /**
+     * Selects the TreeItem of the given image of the gridTreeItem in the directoryView, which makes it the
+     * currentImage. An image found by a search may not be listed in the directoryView, so it is made the
+     * currentImage directly.
+     *
+     * @param imageFile an image shown in the thumbnailGrid
+     */
+    private void selectInDirectoryView(ImageFile imageFile) {
+        if (gridTreeItem == null) {
+            selectImage(imageFile);
+            thumbnailGrid.select(imageFile);
+            return;
+        }
+        for (TreeItem<File> child : gridTreeItem.getChildren()) {
+            if (child.getValue() == imageFile) {
+                directoryView.getSelectionModel().select(child);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shows the preview of the given ImageFile in imageDisplay once the previewLoader has decoded it or found it in its
+     * PreviewCache, and the time it took in the Tooltip of imageDisplay. Used by both the directoryView and the
+     * favouriteListView, so flipping back to an image either of them showed recently doesn't decode it again.
+     *
+     * @param imageFile the ImageFile to preview
+     */
+    private void showPreview(ImageFile imageFile) {
+        /*
+         * Code adapted from Ken Alger on 20151017 from a blog post titled
+         * "Setting selected image file to Imageview in JavaFX"
+         * URL: https://teamtreehouse.com/community/setting-selected-image-file-to-imageview-in-javafx
+         */
+        previewLoader.load(imageFile, thumbnailLoader.get(imageFile), img -> {
+            centerImage(img);
+            imageDisplay.setImage(img);
+            PreviewCache cache = previewLoader.getCache();
+            if (previewLoader.getDecodeCount() != 0)
+                previewLatency.setText("Loaded in " + previewLoader.getLastLatency() + " ms (average "
+                        + previewLoader.getAverageLatency() + " ms over " + previewLoader.getDecodeCount()
+                        + " images)\nCache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, "
+                        + cache.getEvictions() + " evictions, " + cache.getSize() / 1024 + " of "
+                        + cache.getBudget() / 1024 + " KB");
+        });
+    }
+
     /**
      * Centers an Image in an ImageView
      *
@@ -622,7 +1139,7 @@ public class GUIController implements Initializable {
      */
     @FXML
     public void revertTags(ActionEvent e) {
-        if (currentImage != null) {
+        if (currentImage != null && runningBatch == null) {
             if (currentImage.getImageLog().size() != 0) {
                 currentImage.revert(imageHistory.getSelectionModel().getSelectedItem());
                 updateFavouritesListView(favourite);
@@ -651,6 +1168,33 @@ public class GUIController implements Initializable {
         return favourite;
     }
 
+    /**
+     * Returns the ScanCache object
+     *
+     * @return The ScanCache object
+     */
+    public static ScanCache getScanCache() {
+        return scanCache;
+    }
+
+    /**
+     * Returns the ThumbnailStore object
+     *
+     * @return The ThumbnailStore object
+     */
+    public static ThumbnailStore getThumbnailStore() {
+        return thumbnailStore;
+    }
+
+    /**
+     * Returns the DirectoryWatcher object
+     *
+     * @return The DirectoryWatcher object
+     */
+    public static DirectoryWatcher getDirectoryWatcher() {
+        return directoryWatcher;
+    }
+
     /**
      * Returns the DirectoryManager object
      *
@@ -669,9 +1213,11 @@ public class GUIController implements Initializable {
      */
     @FXML
     private void deleteCurrentTags(ActionEvent e) {
+        if (runningBatch != null)
+            return;
         ArrayList<Tag> tagsToDelete = new ArrayList<>();
         tagsToDelete.addAll(imageTags.getSelectionModel().getSelectedItems());
-        if (currentImage != null && tagsToDelete.size() != 0) {
+        if (currentImage != null && tagsToDelete.size() != 0 && !tagSelectedImages(new ArrayList<>(), tagsToDelete)) {
             currentImage.deleteTag(tagsToDelete);
             imageName.setText("Current Name: " + currentImage.imageFile.getName());
             updateCurrentTags(currentImage);
@@ -701,20 +1247,29 @@ public class GUIController implements Initializable {
      */
     @FXML
     private void moveImageButton(ActionEvent e) {
-        if (currentImage != null) {
+        if (currentImage != null && runningBatch == null) {
             DirectoryChooser dc = new DirectoryChooser();
             File selectedDirectory = dc.showDialog(null);
             if (selectedDirectory != null) {
-                Directory targetDirectory;
-                if (directoryManager.directoryManagerContains(selectedDirectory.getPath()))
-                    targetDirectory = directoryManager.getDirectory(selectedDirectory.getPath());
-                else {
-                    targetDirectory = new Directory(selectedDirectory.getPath());
-                    targetDirectory.setFiles(getFiles(selectedDirectory));
-                    directoryManager.addDirectory(targetDirectory);
-                }
-                File dest = new File(targetDirectory, currentImage.imageFile.getName());
-                directoryManager.moveImageFile(currentImage, currentDirectory, targetDirectory, dest);
+                // The image and its directory are kept, as another may be selected while the target is listed.
+                ImageFile movedImage = currentImage;
+                Directory sourceDirectory = currentDirectory;
+                Task<Directory> listTask = new Task<Directory>() {
+                    @Override
+                    protected Directory call() {
+                        return buildDirectory(selectedDirectory.getPath());
+                    }
+                };
+                listTask.setOnSucceeded(event -> {
+                    Directory targetDirectory = listTask.getValue();
+                    updateObservableList(tagManager);
+                    File dest = new File(targetDirectory, movedImage.imageFile.getName());
+                    directoryManager.moveImageFile(movedImage, sourceDirectory, targetDirectory, dest);
+                });
+                listTask.setOnFailed(event -> listTask.getException().printStackTrace());
+                Thread listThread = new Thread(listTask);
+                listThread.setDaemon(true);
+                listThread.start();
             }
         }
     }
@@ -807,6 +1362,38 @@ public class GUIController implements Initializable {
         }
     }
 
+    /**
+     * Shows every image in the library that matches the tag expression in tagSearch in the thumbnailGrid, using the
+     * TagIndex. An expression that can't be parsed is reported in scanStatus instead.
+     *
+     * @param e ActionEvent of Enter being pressed in tagSearch
+     */
+    @FXML
+    public void searchTags(ActionEvent e) {
+        String expression = tagSearch.getText().trim();
+        if (expression.isEmpty())
+            return;
+        ArrayList<ImageFile> matches;
+        try {
+            matches = TagIndex.getTagIndex().query(expression);
+        } catch (IllegalArgumentException ex) {
+            scanStatus.setText(ex.getMessage());
+            scanStatus.setVisible(true);
+            return;
+        }
+        gridTreeItem = null;
+        gridToggle.setSelected(true);
+        thumbnailGrid.setVisible(true);
+        imageDisplay.setVisible(false);
+        previewLoader.cancel();
+        previewPrefetcher.cancel();
+        thumbnailGrid.setImages(matches);
+        thumbnailGrid.scrollTo(0);
+        thumbnailGrid.select(currentImage);
+        scanStatus.setText(matches.size() + " images match " + expression);
+        scanStatus.setVisible(true);
+    }
+
     /**
      * Displays the selected ImageFile object from the favouriteListView ListView
      *
@@ -827,10 +1414,8 @@ public class GUIController implements Initializable {
             imageTags.getItems().addAll(currentImage.getCurrentTags());
             imageHistory.getItems().clear();
             updateImageHistory(currentImage);
-            String imgPath = currentImage.getImageFile().toURI().toURL().toString();
-            Image img = new Image(imgPath, 550, 320, true, true);
-            centerImage(img);
-            imageDisplay.setImage(img);
+            previewPrefetcher.cancel();
+            showPreview(currentImage);
         }
     }
 }
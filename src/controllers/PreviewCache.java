@@ -0,0 +1,218 @@
+package controllers;
+
+import javafx.scene.image.Image;
+import models.ImageFile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A PreviewCache keeps the most recently shown previews in memory, so that showing an image again, from the
+ * directoryView or the favourites, doesn't decode it from disk again. Previews are keyed by the path and the last
+ * modified time of their ImageFile, so a preview of a file that has been renamed or changed is never handed out.
+ * <p>
+ * The cache is bounded by the number of bytes its decoded pixels take up rather than by the number of previews, and
+ * the least recently used previews are evicted first once it goes over its budget. Previews are added from the decode
+ * threads and looked up on the JavaFX thread, so every method is synchronized.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class PreviewCache {
+
+    /**
+     * Bytes each decoded pixel takes up (ie. 32-bit ARGB).
+     */
+    private static final int bytesPerPixel = 4;
+
+    /**
+     * The cached previews keyed by path and modified time, from least to most recently used.
+     */
+    private final LinkedHashMap<String, Image> previews;
+
+    /**
+     * The most bytes the cached previews can take up.
+     */
+    private long budget;
+
+    /**
+     * Bytes the cached previews take up.
+     */
+    private long size;
+
+    /**
+     * Number of lookups that found a preview.
+     */
+    private long hits;
+
+    /**
+     * Number of lookups that didn't find a preview.
+     */
+    private long misses;
+
+    /**
+     * Number of previews evicted to stay under the budget.
+     */
+    private long evictions;
+
+    /**
+     * Constructs a new, empty PreviewCache whose previews can take up at most the given number of bytes.
+     *
+     * @param budget the most bytes the cached previews can take up
+     */
+    public PreviewCache(long budget) {
+        this.previews = new LinkedHashMap<>(16, 0.75f, true);
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the key the preview of the given ImageFile is cached under.
+     *
+     * @param imageFile the ImageFile
+     * @return the key made of the ImageFile's path and modified time
+     */
+    static String keyOf(ImageFile imageFile) {
+        long modifiedTime = imageFile.getModifiedTime();
+        if (modifiedTime == 0)
+            modifiedTime = imageFile.getImageFile().lastModified();
+        return imageFile.getImageFile().getPath() + '\0' + modifiedTime;
+    }
+
+    /**
+     * Returns the cached preview with the given key and marks it as the most recently used.
+     *
+     * @param key the key of the preview
+     * @return the preview, or null if it isn't cached
+     */
+    public synchronized Image get(String key) {
+        Image image = previews.get(key);
+        if (image == null)
+            misses++;
+        else
+            hits++;
+        return image;
+    }
+
+    /**
+     * Returns whether a preview with the given key is cached, without counting it as a lookup or marking it as used.
+     *
+     * @param key the key of the preview
+     * @return true if the preview is cached, and false if not
+     */
+    public synchronized boolean contains(String key) {
+        return previews.containsKey(key);
+    }
+
+    /**
+     * Adds the given preview under the given key, and evicts the least recently used previews until the cache is
+     * under its budget again. A preview bigger than the whole budget isn't cached.
+     *
+     * @param key   the key of the preview
+     * @param image the decoded preview
+     */
+    public synchronized void put(String key, Image image) {
+        long bytes = bytesOf(image);
+        if (bytes > budget)
+            return;
+        Image previous = previews.put(key, image);
+        if (previous != null)
+            size -= bytesOf(previous);
+        size += bytes;
+        trim();
+    }
+
+    /**
+     * Removes every cached preview. The counters are kept.
+     */
+    public synchronized void clear() {
+        previews.clear();
+        size = 0;
+    }
+
+    /**
+     * Changes the most bytes the cached previews can take up, evicting previews if the cache is now over it.
+     *
+     * @param budget the most bytes the cached previews can take up
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    /**
+     * Returns the most bytes the cached previews can take up.
+     *
+     * @return the budget in bytes
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the bytes the cached previews take up.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of cached previews.
+     *
+     * @return the number of cached previews
+     */
+    public synchronized int getCount() {
+        return previews.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a preview.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find a preview.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of previews evicted to stay under the budget.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Evicts the least recently used previews until the cache is under its budget.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Image>> iterator = previews.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            size -= bytesOf(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the bytes the decoded pixels of the given Image take up.
+     *
+     * @param image the decoded Image
+     * @return the size of its pixels in bytes
+     */
+    private static long bytesOf(Image image) {
+        return (long) Math.ceil(image.getWidth()) * (long) Math.ceil(image.getHeight()) * bytesPerPixel;
+    }
+}
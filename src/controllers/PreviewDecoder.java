@@ -0,0 +1,135 @@
+package controllers;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import models.ImageFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A PreviewDecoder decodes images straight at the size they are shown at, so that a huge panorama or a long animated
+ * GIF never has to fit in the heap at full size. The image is read with ImageIO, skipping source rows and columns so
+ * that what is decoded is at most about twice the size shown in each direction, and is then scaled down to fit. Only
+ * the first frame of an animated GIF is read.
+ * <p>
+ * Every decode has a memory ceiling: an image that would need more than that many bytes even when subsampled isn't
+ * decoded at all, and the caller keeps its placeholder up instead. A PreviewDecoder can be used from any thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class PreviewDecoder {
+
+    /**
+     * Bytes each decoded pixel takes up (ie. 32-bit ARGB).
+     */
+    private static final int bytesPerPixel = 4;
+
+    /**
+     * The most bytes a single decode can use for its pixels.
+     */
+    private final long memoryCeiling;
+
+    /**
+     * Constructs a new PreviewDecoder that won't use more than the given number of bytes for the pixels of a decode.
+     *
+     * @param memoryCeiling the most bytes a single decode can use
+     */
+    public PreviewDecoder(long memoryCeiling) {
+        this.memoryCeiling = memoryCeiling;
+    }
+
+    /**
+     * Decodes the given ImageFile scaled down to fit in a box of the given size, keeping its aspect ratio. An image
+     * smaller than the box is decoded at its own size.
+     *
+     * @param imageFile the ImageFile to decode
+     * @param width     width of the box
+     * @param height    height of the box
+     * @return the decoded Image, or null if the image can't be read or would go over the memory ceiling
+     */
+    public Image decode(ImageFile imageFile, double width, double height) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageFile.getImageFile())) {
+            if (in == null)
+                return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return decode(reader, width, height);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not decode " + imageFile.getImageFile().getName() + ": " + e.getMessage());
+        } catch (OutOfMemoryError e) {
+            System.out.println("Out of memory decoding " + imageFile.getImageFile().getName());
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the first image of the given ImageReader, subsampled so that it is no more than about twice the size of
+     * the box in each direction, and scales it down to fit in the box.
+     *
+     * @param reader ImageReader with its input set
+     * @param width  width of the box
+     * @param height height of the box
+     * @return the decoded Image, or null if it would go over the memory ceiling
+     * @throws IOException if the image can't be read
+     */
+    private Image decode(ImageReader reader, double width, double height) throws IOException {
+        // The ImageIO readers report the stored size, which is what subsampling works on.
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+        double scale = Math.min(1, Math.min(width / sourceWidth, height / sourceHeight));
+        int targetWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int targetHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        int xSubsampling = Math.max(1, sourceWidth / targetWidth / 2);
+        int ySubsampling = Math.max(1, sourceHeight / targetHeight / 2);
+        long decodedBytes = (long) ceilDiv(sourceWidth, xSubsampling) * ceilDiv(sourceHeight, ySubsampling)
+                * bytesPerPixel;
+        if (decodedBytes + (long) targetWidth * targetHeight * bytesPerPixel > memoryCeiling)
+            return null;
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(xSubsampling, ySubsampling, 0, 0);
+        BufferedImage decoded = reader.read(0, param);
+
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(decoded, 0, 0, targetWidth, targetHeight, null);
+        graphics.dispose();
+
+        int[] pixels = ((DataBufferInt) scaled.getRaster().getDataBuffer()).getData();
+        WritableImage image = new WritableImage(targetWidth, targetHeight);
+        image.getPixelWriter().setPixels(0, 0, targetWidth, targetHeight, PixelFormat.getIntArgbInstance(), pixels,
+                0, targetWidth);
+        return image;
+    }
+
+    /**
+     * Returns the given dividend divided by the given divisor, rounded up.
+     *
+     * @param dividend the dividend
+     * @param divisor  the divisor
+     * @return the quotient rounded up
+     */
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+}
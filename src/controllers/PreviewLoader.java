@@ -0,0 +1,229 @@
+package controllers;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import models.ImageFile;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A PreviewLoader decodes the previews shown in the imageDisplay on a small background pool, so that clicking or
+ * arrow-keying through large images never blocks the JavaFX thread. A placeholder is handed over as soon as a preview
+ * is asked for, and the decoded Image replaces it when it is ready. Asking for another preview cancels the one before,
+ * so a decode that is no longer wanted never reaches the screen and, if it hasn't started yet, never runs. Decoded
+ * previews are kept in a PreviewCache, and a preview found there is shown straight away without touching the disk.
+ * <p>
+ * The PreviewLoader also keeps track of how long previews take from being asked for to being shown. Every method must
+ * be called on the JavaFX thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class PreviewLoader {
+
+    /**
+     * Number of threads previews are decoded on.
+     */
+    private static final int threads = 2;
+
+    /**
+     * The most decodes that can wait for a thread; the oldest waiting decode is dropped when another one comes in.
+     */
+    private static final int queueLimit = 4;
+
+    /**
+     * The pool previews are decoded on.
+     */
+    private final ThreadPoolExecutor decoders;
+
+    /**
+     * Width of the box previews are scaled to fit in.
+     */
+    private final double width;
+
+    /**
+     * Height of the box previews are scaled to fit in.
+     */
+    private final double height;
+
+    /**
+     * The Image shown while a preview is being decoded.
+     */
+    private final Image placeholder;
+
+    /**
+     * The PreviewCache decoded previews are kept in.
+     */
+    private final PreviewCache cache;
+
+    /**
+     * The PreviewDecoder previews are decoded with.
+     */
+    private final PreviewDecoder decoder;
+
+    /**
+     * Counts the previews asked for, so that a decode can tell whether it has been superseded.
+     */
+    private volatile long generation;
+
+    /**
+     * The decode of the preview that was asked for last, or null.
+     */
+    private Future<?> currentDecode;
+
+    /**
+     * Number of previews shown.
+     */
+    private int decodeCount;
+
+    /**
+     * Total time in milliseconds the shown previews took.
+     */
+    private long totalLatency;
+
+    /**
+     * Time in milliseconds the last shown preview took.
+     */
+    private long lastLatency;
+
+    /**
+     * Constructs a new PreviewLoader that scales previews to fit in a box of the given size.
+     *
+     * @param width       width of the box
+     * @param height      height of the box
+     * @param placeholder Image to show while a preview is being decoded
+     * @param cache       PreviewCache to keep decoded previews in
+     * @param decoder     PreviewDecoder to decode previews with
+     */
+    public PreviewLoader(double width, double height, Image placeholder, PreviewCache cache,
+                         PreviewDecoder decoder) {
+        this.width = width;
+        this.height = height;
+        this.placeholder = placeholder;
+        this.cache = cache;
+        this.decoder = decoder;
+        this.decoders = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), runnable -> {
+            Thread thread = new Thread(runnable, "preview-decoder");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * Asks for the preview of the given ImageFile. A cached preview is handed to the Consumer straight away. Otherwise
+     * the placeholder is handed over straight away, and the decoded preview later on the JavaFX thread, unless another
+     * preview is asked for first. An image that can't be decoded, or is too big for the PreviewDecoder's memory
+     * ceiling, leaves the placeholder up.
+     *
+     * @param imageFile the ImageFile to preview
+     * @param display   Consumer that shows the Image it is handed
+     */
+    public void load(ImageFile imageFile, Consumer<Image> display) {
+        load(imageFile, null, display);
+    }
+
+    /**
+     * Asks for the preview of the given ImageFile in the same way as load(ImageFile, Consumer), showing the given
+     * Image instead of the placeholder while it is decoded (ie. its stored thumbnail).
+     *
+     * @param imageFile   the ImageFile to preview
+     * @param placeholder Image to show while the preview is decoded, or null to show the usual placeholder
+     * @param display     Consumer that shows the Image it is handed
+     */
+    public void load(ImageFile imageFile, Image placeholder, Consumer<Image> display) {
+        cancel();
+        long requested = ++generation;
+        long startTime = System.nanoTime();
+        String key = PreviewCache.keyOf(imageFile);
+        Image cached = cache.get(key);
+        if (cached != null) {
+            shown(startTime);
+            display.accept(cached);
+            return;
+        }
+        display.accept((placeholder != null) ? placeholder : this.placeholder);
+        currentDecode = decoders.submit(() -> {
+            if (requested != generation)
+                return;
+            // The PreviewPrefetcher may have decoded it since.
+            Image image = cache.contains(key) ? cache.get(key) : null;
+            if (image == null) {
+                image = decoder.decode(imageFile, width, height);
+                if (image == null)
+                    return;
+                cache.put(key, image);
+            }
+            Image decoded = image;
+            Platform.runLater(() -> {
+                if (requested != generation)
+                    return;
+                currentDecode = null;
+                shown(startTime);
+                display.accept(decoded);
+            });
+        });
+    }
+
+    /**
+     * Records how long a preview that is about to be shown took.
+     *
+     * @param startTime value of System.nanoTime() when the preview was asked for
+     */
+    private void shown(long startTime) {
+        lastLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        totalLatency += lastLatency;
+        decodeCount++;
+    }
+
+    /**
+     * Cancels the preview that was asked for last, if it hasn't been shown yet.
+     */
+    public void cancel() {
+        generation++;
+        if (currentDecode != null) {
+            currentDecode.cancel(false);
+            currentDecode = null;
+        }
+    }
+
+    /**
+     * Returns how long the last shown preview took, from being asked for to being shown.
+     *
+     * @return the latency in milliseconds
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Returns how long the shown previews took on average, from being asked for to being shown.
+     *
+     * @return the average latency in milliseconds, or 0 if no preview has been shown
+     */
+    public long getAverageLatency() {
+        return (decodeCount == 0) ? 0 : totalLatency / decodeCount;
+    }
+
+    /**
+     * Returns the number of previews shown.
+     *
+     * @return the number of previews shown
+     */
+    public int getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * Returns the PreviewCache decoded previews are kept in.
+     *
+     * @return the PreviewCache
+     */
+    public PreviewCache getCache() {
+        return cache;
+    }
+}
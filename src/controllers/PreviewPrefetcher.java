@@ -0,0 +1,216 @@
+package controllers;
+
+import javafx.scene.control.TreeItem;
+import javafx.scene.image.Image;
+import models.ImageFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A PreviewPrefetcher decodes the previews of the images next to the selected one into the PreviewCache, so that
+ * walking through a folder with the arrow keys finds the next preview already decoded. Prefetching runs on a single
+ * thread of the lowest priority, nearest neighbours first, starting on the side the user is moving towards.
+ * <p>
+ * The number of neighbours prefetched on each side follows how fast the user is moving: enough to cover the images
+ * they would reach in the next prefetchWindow milliseconds. Selecting another image cancels whatever is still left
+ * to prefetch for the one before, and jumping to another folder or further than was prefetched starts the speed over.
+ * Every method must be called on the JavaFX thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class PreviewPrefetcher {
+
+    /**
+     * How far ahead in milliseconds the prefetched neighbours should last the user.
+     */
+    private static final long prefetchWindow = 1500;
+
+    /**
+     * The fewest neighbours prefetched on each side.
+     */
+    private static final int minNeighbours = 1;
+
+    /**
+     * The most neighbours prefetched on each side.
+     */
+    private static final int maxNeighbours = 8;
+
+    /**
+     * Weight of the latest time between selections in the running average.
+     */
+    private static final double smoothing = 0.3;
+
+    /**
+     * Time in milliseconds between selections past which the user is taken to have stopped browsing.
+     */
+    private static final long idleTime = 5000;
+
+    /**
+     * The thread previews are prefetched on.
+     */
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "preview-prefetcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Width of the box previews are scaled to fit in.
+     */
+    private final double width;
+
+    /**
+     * Height of the box previews are scaled to fit in.
+     */
+    private final double height;
+
+    /**
+     * The PreviewCache previews are prefetched into.
+     */
+    private final PreviewCache cache;
+
+    /**
+     * The PreviewDecoder previews are decoded with.
+     */
+    private final PreviewDecoder decoder;
+
+    /**
+     * Counts the prefetches asked for, so that queued decodes can tell whether they have been superseded.
+     */
+    private volatile long generation;
+
+    /**
+     * The decodes that were queued for the image selected last.
+     */
+    private final ArrayList<Future<?>> pending;
+
+    /**
+     * Average time in milliseconds between selections, or 0 before the second selection.
+     */
+    private double averageInterval;
+
+    /**
+     * Value of System.currentTimeMillis() at the last selection, or 0 before the first.
+     */
+    private long lastSelection;
+
+    /**
+     * The siblings of the image selected last, or null.
+     */
+    private List<TreeItem<File>> lastSiblings;
+
+    /**
+     * Index of the image selected last in its siblings.
+     */
+    private int lastIndex;
+
+    /**
+     * Constructs a new PreviewPrefetcher that prefetches previews the size the PreviewLoader decodes them at.
+     *
+     * @param width   width of the box previews are scaled to fit in
+     * @param height  height of the box previews are scaled to fit in
+     * @param cache   PreviewCache to prefetch previews into
+     * @param decoder PreviewDecoder to decode previews with
+     */
+    public PreviewPrefetcher(double width, double height, PreviewCache cache, PreviewDecoder decoder) {
+        this.width = width;
+        this.height = height;
+        this.cache = cache;
+        this.decoder = decoder;
+        this.pending = new ArrayList<>();
+    }
+
+    /**
+     * Prefetches the images next to the one at the given index in the given siblings, skipping subdirectories, and
+     * cancels the prefetches for the image selected before.
+     *
+     * @param siblings the children of the TreeItem of a Directory, in the order they are shown
+     * @param index    index of the selected image in siblings
+     */
+    public void prefetch(List<TreeItem<File>> siblings, int index) {
+        cancel();
+        long now = System.currentTimeMillis();
+        int direction = 1;
+        if (siblings == lastSiblings && Math.abs(index - lastIndex) <= getNeighbours() + 1) {
+            if (index < lastIndex)
+                direction = -1;
+            long interval = now - lastSelection;
+            if (interval < idleTime)
+                averageInterval = (averageInterval == 0) ? interval
+                        : smoothing * interval + (1 - smoothing) * averageInterval;
+        } else {
+            averageInterval = 0;
+        }
+        lastSelection = now;
+        lastSiblings = siblings;
+        lastIndex = index;
+
+        int neighbours = getNeighbours();
+        long requested = generation;
+        int ahead = index;
+        int behind = index;
+        for (int distance = 1; distance <= neighbours; distance++) {
+            ahead = queueNext(siblings, ahead, direction, requested);
+            behind = queueNext(siblings, behind, -direction, requested);
+        }
+    }
+
+    /**
+     * Cancels whatever is left to prefetch.
+     */
+    public void cancel() {
+        generation++;
+        for (Future<?> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Returns how many neighbours on each side are prefetched at the speed the user is moving.
+     *
+     * @return the number of neighbours
+     */
+    public int getNeighbours() {
+        if (averageInterval == 0)
+            return minNeighbours;
+        int neighbours = (int) Math.ceil(prefetchWindow / Math.max(averageInterval, 1));
+        return Math.max(minNeighbours, Math.min(maxNeighbours, neighbours));
+    }
+
+    /**
+     * Queues the decode of the next image from the given index in the given direction, unless it is cached already.
+     *
+     * @param siblings  the children of the TreeItem of a Directory, in the order they are shown
+     * @param index     index to start looking from
+     * @param direction 1 to look forwards, and -1 to look backwards
+     * @param requested the generation the decode belongs to
+     * @return index of the image found, or an index outside siblings if there is none
+     */
+    private int queueNext(List<TreeItem<File>> siblings, int index, int direction, long requested) {
+        do {
+            index += direction;
+        } while (index >= 0 && index < siblings.size() && !(siblings.get(index).getValue() instanceof ImageFile));
+        if (index < 0 || index >= siblings.size())
+            return index;
+        ImageFile imageFile = (ImageFile) siblings.get(index).getValue();
+        String key = PreviewCache.keyOf(imageFile);
+        if (cache.contains(key))
+            return index;
+        pending.add(prefetcher.submit(() -> {
+            if (requested != generation || cache.contains(key))
+                return;
+            Image image = decoder.decode(imageFile, width, height);
+            if (image != null)
+                cache.put(key, image);
+        }));
+        return index;
+    }
+}
@@ -0,0 +1,256 @@
+package controllers;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import models.ImageFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A ThumbnailGrid shows the thumbnails of a folder's images in rows. It is a ListView of rows with a fixed cell height,
+ * so only the rows on screen have cells, and the cells and their ImageViews are reused as the grid is scrolled instead
+ * of being created for each image. A row only asks the ThumbnailLoader for the thumbnails of its own images and of the
+ * images in the rows next to it, so scrolling through a large folder only makes the thumbnails that are seen.
+ * <p>
+ * Clicking a thumbnail selects its image, and double-clicking it opens the image. Every method must be called on the
+ * JavaFX thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class ThumbnailGrid extends ListView<List<ImageFile>> {
+
+    /**
+     * Space in pixels around each thumbnail.
+     */
+    private static final int padding = 4;
+
+    /**
+     * Number of rows above and below a row whose thumbnails are asked for along with its own.
+     */
+    private static final int rowsAround = 2;
+
+    /**
+     * Style of the thumbnail of the selected image.
+     */
+    private static final String selectedStyle = "-fx-background-color: #9fc6f0;";
+
+    /**
+     * The ThumbnailLoader thumbnails are taken from.
+     */
+    private final ThumbnailLoader thumbnailLoader;
+
+    /**
+     * The Image shown for an image that doesn't have its thumbnail yet.
+     */
+    private final Image placeholder;
+
+    /**
+     * Width and height in pixels of the box each thumbnail is shown in.
+     */
+    private final int thumbnailSize;
+
+    /**
+     * Number of thumbnails in each row.
+     */
+    private final int columns;
+
+    /**
+     * Consumer told about the image clicked.
+     */
+    private final Consumer<ImageFile> onSelect;
+
+    /**
+     * Consumer told about the image double-clicked.
+     */
+    private final Consumer<ImageFile> onOpen;
+
+    /**
+     * The images shown, in order.
+     */
+    private ArrayList<ImageFile> images;
+
+    /**
+     * The selected image, or null.
+     */
+    private ImageFile selected;
+
+    /**
+     * Constructs a new, empty ThumbnailGrid of the given size.
+     *
+     * @param thumbnailLoader ThumbnailLoader to take thumbnails from
+     * @param placeholder     Image to show for an image that doesn't have its thumbnail yet
+     * @param thumbnailSize   width and height of the box each thumbnail is shown in
+     * @param width           width of the grid
+     * @param height          height of the grid
+     * @param onSelect        Consumer told about the image clicked
+     * @param onOpen          Consumer told about the image double-clicked
+     */
+    public ThumbnailGrid(ThumbnailLoader thumbnailLoader, Image placeholder, int thumbnailSize, double width,
+                         double height, Consumer<ImageFile> onSelect, Consumer<ImageFile> onOpen) {
+        this.thumbnailLoader = thumbnailLoader;
+        this.placeholder = placeholder;
+        this.thumbnailSize = thumbnailSize;
+        // Leave room for the vertical scroll bar.
+        this.columns = Math.max(1, (int) ((width - 20) / (thumbnailSize + 2 * padding)));
+        this.onSelect = onSelect;
+        this.onOpen = onOpen;
+        this.images = new ArrayList<>();
+        setPrefSize(width, height);
+        setFixedCellSize(thumbnailSize + 2 * padding);
+        setFocusTraversable(false);
+        setCellFactory(param -> new RowCell());
+    }
+
+    /**
+     * Shows the given images, in order.
+     *
+     * @param images the images to show
+     */
+    public void setImages(List<ImageFile> images) {
+        this.images = new ArrayList<>(images);
+        ObservableList<List<ImageFile>> rows = FXCollections.observableArrayList();
+        for (int start = 0; start < this.images.size(); start += columns) {
+            rows.add(this.images.subList(start, Math.min(start + columns, this.images.size())));
+        }
+        setItems(rows);
+    }
+
+    /**
+     * Marks the given image as selected and scrolls to it if it is shown.
+     *
+     * @param imageFile the image to select, or null
+     */
+    public void select(ImageFile imageFile) {
+        selected = imageFile;
+        int index = images.indexOf(imageFile);
+        if (index >= 0)
+            scrollTo(index / columns);
+        refresh();
+    }
+
+    /**
+     * Asks for the thumbnails of the images in the given row that don't have one yet.
+     *
+     * @param rowIndex index of the row
+     */
+    private void requestRow(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= getItems().size())
+            return;
+        for (ImageFile imageFile : getItems().get(rowIndex)) {
+            thumbnailLoader.request(imageFile, null);
+        }
+    }
+
+    /**
+     * A RowCell shows one row of thumbnails with a fixed set of ImageViews, which are given the images of whichever
+     * row the cell is showing.
+     */
+    private class RowCell extends ListCell<List<ImageFile>> {
+
+        /**
+         * The box around each thumbnail.
+         */
+        private final StackPane[] slots;
+
+        /**
+         * The ImageView of each thumbnail.
+         */
+        private final ImageView[] views;
+
+        /**
+         * The image shown in each slot, or null.
+         */
+        private final ImageFile[] shown;
+
+        /**
+         * Constructs a new RowCell with a slot for every column.
+         */
+        RowCell() {
+            slots = new StackPane[columns];
+            views = new ImageView[columns];
+            shown = new ImageFile[columns];
+            HBox row = new HBox();
+            row.setAlignment(Pos.CENTER_LEFT);
+            for (int i = 0; i < columns; i++) {
+                int column = i;
+                views[i] = new ImageView();
+                views[i].setFitWidth(thumbnailSize);
+                views[i].setFitHeight(thumbnailSize);
+                views[i].setPreserveRatio(true);
+                slots[i] = new StackPane(views[i]);
+                slots[i].setPadding(new Insets(padding));
+                slots[i].setPrefSize(thumbnailSize + 2 * padding, thumbnailSize + 2 * padding);
+                slots[i].setOnMouseClicked(event -> {
+                    if (shown[column] == null || event.getButton() != MouseButton.PRIMARY)
+                        return;
+                    if (event.getClickCount() == 2)
+                        onOpen.accept(shown[column]);
+                    else
+                        onSelect.accept(shown[column]);
+                });
+                row.getChildren().add(slots[i]);
+            }
+            setGraphic(row);
+            setText(null);
+            setPadding(Insets.EMPTY);
+        }
+
+        /**
+         * Shows the thumbnails of the given row in the slots, and asks for the ones that aren't ready yet along with
+         * those of the rows around it.
+         *
+         * @param rowImages the images of the row
+         * @param empty     whether the cell is showing no row
+         */
+        @Override
+        protected void updateItem(List<ImageFile> rowImages, boolean empty) {
+            super.updateItem(rowImages, empty);
+            for (int i = 0; i < columns; i++) {
+                ImageFile imageFile = (!empty && rowImages != null && i < rowImages.size()) ? rowImages.get(i) : null;
+                shown[i] = imageFile;
+                showThumbnail(i);
+            }
+            if (!empty && rowImages != null) {
+                for (int offset = 1; offset <= rowsAround; offset++) {
+                    requestRow(getIndex() + offset);
+                    requestRow(getIndex() - offset);
+                }
+            }
+        }
+
+        /**
+         * Shows the thumbnail of the image in the given slot, or the placeholder while it is made.
+         *
+         * @param slot index of the slot
+         */
+        private void showThumbnail(int slot) {
+            ImageFile imageFile = shown[slot];
+            if (imageFile == null) {
+                views[slot].setImage(null);
+                slots[slot].setStyle(null);
+                return;
+            }
+            slots[slot].setStyle(imageFile.equals(selected) ? selectedStyle : null);
+            Image thumbnail = thumbnailLoader.get(imageFile);
+            views[slot].setImage((thumbnail != null) ? thumbnail : placeholder);
+            if (thumbnail == null) {
+                thumbnailLoader.request(imageFile, () -> {
+                    if (shown[slot] == imageFile)
+                        showThumbnail(slot);
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package controllers;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import models.ImageFile;
+import models.ThumbnailStore;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A ThumbnailLoader hands out the thumbnails kept in a ThumbnailStore as Images, and makes the thumbnails of images
+ * that don't have one yet on a background thread when they are asked for. Only the cells on or near the screen ask
+ * for thumbnails, so scrolling through a large folder never queues up the whole folder. Images made from the
+ * ThumbnailStore are kept in a PreviewCache of their own, so scrolling past an image again doesn't even read its
+ * pixels again.
+ * <p>
+ * get and request must be called on the JavaFX thread; thumbnails are made on a single thread, and the stale ones
+ * are compacted out of the ThumbnailStore whenever there are no more to make.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class ThumbnailLoader {
+
+    /**
+     * Width and height of the box thumbnails are scaled to fit in.
+     */
+    public static final int thumbnailSize = 64;
+
+    /**
+     * The most bytes of thumbnails kept in memory as Images.
+     */
+    private static final long cacheBudget = 16L * 1024 * 1024;
+
+    /**
+     * The most requests that can wait; the oldest is dropped when another one comes in.
+     */
+    private static final int maxRequests = 512;
+
+    /**
+     * Stands in for the Runnable of requests that don't need to know when their thumbnail is ready.
+     */
+    private static final Runnable noCallback = () -> {
+    };
+
+    /**
+     * The thread thumbnails are made on.
+     */
+    private static final ExecutorService generator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-generator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The ThumbnailStore thumbnails are kept in.
+     */
+    private final ThumbnailStore store;
+
+    /**
+     * The Images made from the ThumbnailStore.
+     */
+    private final PreviewCache images;
+
+    /**
+     * The PreviewDecoder thumbnails are decoded with.
+     */
+    private final PreviewDecoder decoder;
+
+    /**
+     * The ImageFiles waiting for their thumbnails, latest request first.
+     */
+    private final LinkedBlockingDeque<ImageFile> requests;
+
+    /**
+     * What to run once the thumbnail of each waiting ImageFile is ready.
+     */
+    private final ConcurrentHashMap<ImageFile, Runnable> waiting;
+
+    /**
+     * Whether the generator is making the requested thumbnails.
+     */
+    private final AtomicBoolean draining;
+
+    /**
+     * Keys of the images whose thumbnails couldn't be made.
+     */
+    private final Set<String> failed;
+
+    /**
+     * Constructs a new ThumbnailLoader for the given ThumbnailStore.
+     *
+     * @param store   the ThumbnailStore thumbnails are kept in
+     * @param decoder PreviewDecoder to decode thumbnails with
+     */
+    public ThumbnailLoader(ThumbnailStore store, PreviewDecoder decoder) {
+        this.store = store;
+        this.decoder = decoder;
+        this.images = new PreviewCache(cacheBudget);
+        this.requests = new LinkedBlockingDeque<>();
+        this.waiting = new ConcurrentHashMap<>();
+        this.draining = new AtomicBoolean();
+        this.failed = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Returns the thumbnail of the given ImageFile, without decoding it.
+     *
+     * @param imageFile the ImageFile
+     * @return the thumbnail, or null if the ImageFile doesn't have an up to date one yet
+     */
+    public Image get(ImageFile imageFile) {
+        String key = PreviewCache.keyOf(imageFile);
+        Image image = images.get(key);
+        if (image != null)
+            return image;
+        ThumbnailStore.Thumbnail thumbnail = store.get(imageFile);
+        if (thumbnail == null)
+            return null;
+        WritableImage writableImage = new WritableImage(thumbnail.getWidth(), thumbnail.getHeight());
+        writableImage.getPixelWriter().setPixels(0, 0, thumbnail.getWidth(), thumbnail.getHeight(),
+                PixelFormat.getIntArgbInstance(), thumbnail.getPixels(), thumbnail.getWidth());
+        images.put(key, writableImage);
+        return writableImage;
+    }
+
+    /**
+     * Asks for the thumbnail of the given ImageFile to be made, if it doesn't have an up to date one yet. The latest
+     * requests are made first, since they are for the cells on screen, and the oldest are dropped once more than
+     * maxRequests are waiting. The Runnable is run on the JavaFX thread once the thumbnail is ready. An image whose
+     * thumbnail couldn't be made isn't tried again.
+     *
+     * @param imageFile the ImageFile
+     * @param done      Runnable to run once the thumbnail is ready, or null
+     */
+    public void request(ImageFile imageFile, Runnable done) {
+        if (failed.contains(PreviewCache.keyOf(imageFile)) || store.contains(imageFile))
+            return;
+        if (waiting.put(imageFile, (done != null) ? done : noCallback) != null)
+            requests.remove(imageFile);
+        requests.offerFirst(imageFile);
+        while (requests.size() > maxRequests) {
+            ImageFile dropped = requests.pollLast();
+            if (dropped != null)
+                waiting.remove(dropped);
+        }
+        if (draining.compareAndSet(false, true))
+            generator.execute(this::drain);
+    }
+
+    /**
+     * Makes the requested thumbnails, latest first, until there are none left, and then compacts the ThumbnailStore
+     * if it has to be.
+     */
+    private void drain() {
+        while (true) {
+            ImageFile imageFile = requests.pollFirst();
+            if (imageFile == null) {
+                draining.set(false);
+                // Another request may have come in before draining was cleared.
+                if (requests.isEmpty() || !draining.compareAndSet(false, true)) {
+                    store.compactIfNeeded();
+                    return;
+                }
+                continue;
+            }
+            Runnable done = waiting.remove(imageFile);
+            if ((store.contains(imageFile) || make(imageFile)) && done != null && done != noCallback)
+                Platform.runLater(done);
+        }
+    }
+
+    /**
+     * Decodes the given ImageFile at thumbnail size and adds it to the ThumbnailStore.
+     *
+     * @param imageFile the ImageFile
+     * @return true if the thumbnail was made, and false if the image couldn't be decoded or was too big
+     */
+    private boolean make(ImageFile imageFile) {
+        Image image = decoder.decode(imageFile, thumbnailSize, thumbnailSize);
+        if (image == null) {
+            failed.add(PreviewCache.keyOf(imageFile));
+            return false;
+        }
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        store.put(imageFile, width, height, pixels);
+        return true;
+    }
+}
@@ -0,0 +1,205 @@
+package models;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A CatalogInput reads a catalog file written by CatalogOutput. The whole file is read into memory at once, and the
+ * string table, tag table and TagSet table are decoded when it is opened: every Tag is interned once and every TagSet
+ * is made once, so the images that share a set of Tags share one TagSet as soon as they are read. The body is then
+ * read with the same calls, in the same order, that it was written with.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ * @see CatalogOutput
+ */
+public class CatalogInput {
+
+    /**
+     * The bytes of the catalog file.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Index of the next byte to read.
+     */
+    private int position;
+
+    /**
+     * The string table; index 0 is null.
+     */
+    private final String[] strings;
+
+    /**
+     * The interned Tags of the tag table.
+     */
+    private final Tag[] tags;
+
+    /**
+     * The shared TagSets of the TagSet table.
+     */
+    private final TagSet[] tagSets;
+
+    /**
+     * Reads the catalog file at the given path and decodes its tables.
+     *
+     * @param path path of the catalog file
+     * @throws IOException if the file can't be read, isn't a catalog file, is in a version this program can't read, or
+     *                     is cut short
+     */
+    public CatalogInput(String path) throws IOException {
+        this.bytes = Files.readAllBytes(Paths.get(path));
+        if (bytes.length < 8 || readInt() != CatalogOutput.magic)
+            throw new IOException(path + " is not a catalog file");
+        int version = readInt();
+        if (version != CatalogOutput.version)
+            throw new IOException(path + " has catalog version " + version + ", which can't be read");
+        this.strings = new String[readVarInt() + 1];
+        for (int i = 1; i < strings.length; i++) {
+            int length = readVarInt();
+            if (position + length > bytes.length)
+                throw new EOFException();
+            strings[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        this.tags = new Tag[readVarInt()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = TagManager.intern(readString());
+        }
+        this.tagSets = new TagSet[readVarInt()];
+        for (int i = 0; i < tagSets.length; i++) {
+            int[] ids = new int[readVarInt()];
+            int index = 0;
+            for (int j = 0; j < ids.length; j++) {
+                index += readVarInt();
+                if (index < 0 || index >= tags.length)
+                    throw new IOException("Tag " + index + " is out of the tag table");
+                ids[j] = tags[index].getId();
+            }
+            // The Tags are sorted by their place in the tag table, which needn't be the order of their IDs.
+            Arrays.sort(ids);
+            tagSets[i] = TagSet.of(ids);
+        }
+    }
+
+    /**
+     * Reads a big-endian int, as the header is written.
+     *
+     * @return the int
+     * @throws IOException if the file ends first
+     */
+    private int readInt() throws IOException {
+        return (next() << 24) | (next() << 16) | (next() << 8) | next();
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return the byte as an unsigned value
+     * @throws IOException if the file ends first
+     */
+    private int next() throws IOException {
+        if (position >= bytes.length)
+            throw new EOFException();
+        return bytes[position++] & 0xff;
+    }
+
+    /**
+     * Reads a varint written by CatalogOutput.writeVarInt.
+     *
+     * @return the int
+     * @throws IOException if the file ends first
+     */
+    int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    /**
+     * Reads a varint written by CatalogOutput.writeVarLong.
+     *
+     * @return the long
+     * @throws IOException if the file ends first
+     */
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = next();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Reads a String written by CatalogOutput.writeString.
+     *
+     * @return the String, or null
+     * @throws IOException if the file ends first or the index is out of the string table
+     */
+    String readString() throws IOException {
+        int index = readVarInt();
+        if (index < 0 || index >= strings.length)
+            throw new IOException("String " + index + " is out of the string table");
+        return strings[index];
+    }
+
+    /**
+     * Reads a String written by CatalogOutput.writeNumbered.
+     *
+     * @return the String, or null
+     * @throws IOException if the file ends first or an index is out of the string table
+     */
+    String readNumbered() throws IOException {
+        String prefix = readString();
+        int digits = readVarInt();
+        if (digits == 0)
+            return prefix;
+        if (prefix == null || digits > CatalogOutput.maxDigits)
+            throw new IOException("Bad number of " + digits + " digits");
+        // The number is written out with as many leading zeros as it had.
+        char[] number = new char[digits];
+        long value = readVarLong();
+        for (int i = digits - 1; i >= 0; i--) {
+            number[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (value != 0)
+            throw new IOException("Number has more than " + digits + " digits");
+        String suffix = readString();
+        if (suffix == null)
+            throw new IOException("Number has no suffix");
+        return new StringBuilder(prefix.length() + digits + suffix.length()).append(prefix).append(number)
+                .append(suffix).toString();
+    }
+
+    /**
+     * Reads a TagSet written by CatalogOutput.writeTagSet.
+     *
+     * @return the shared TagSet
+     * @throws IOException if the file ends first or the index is out of the TagSet table
+     */
+    TagSet readTagSet() throws IOException {
+        int index = readVarInt();
+        if (index < 0 || index >= tagSets.length)
+            throw new IOException("TagSet " + index + " is out of the TagSet table");
+        return tagSets[index];
+    }
+
+    /**
+     * Reads a Tag written by CatalogOutput.writeTag.
+     *
+     * @return the interned Tag
+     * @throws IOException if the file ends first or the index is out of the tag table
+     */
+    Tag readTag() throws IOException {
+        int index = readVarInt();
+        if (index < 0 || index >= tags.length)
+            throw new IOException("Tag " + index + " is out of the tag table");
+        return tags[index];
+    }
+}
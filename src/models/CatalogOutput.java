@@ -0,0 +1,305 @@
+package models;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A CatalogOutput writes the saved state of the program (ie. the Tags, the Directories and the favourites) in the
+ * catalog format that CatalogInput reads. Every String is written once, to a string table, and is referred to by its
+ * index everywhere else; every Tag is written once, to a tag table, and every distinct set of Tags once, to a table
+ * of TagSets; and every number is written as a varint, so small numbers and indexes take one or two bytes.
+ * <p>
+ * A catalog file holds, in order: the magic number and the format version as two ints, the string table, the tag
+ * table, the TagSet table, and the body. The body is written first, into memory, while the tables are filled in, and
+ * the whole file is written by writeTo once the body is done.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ * @see CatalogInput
+ */
+public class CatalogOutput {
+
+    /**
+     * Number written at the start of every catalog file (ie. "ITCG").
+     */
+    static final int magic = 0x49544347;
+
+    /**
+     * Version of the catalog format, written after the magic number.
+     */
+    static final int version = 1;
+
+    /**
+     * Most digits in a row that writeNumbered writes as a number, so that it fits in a long.
+     */
+    static final int maxDigits = 18;
+
+    /**
+     * Index in the string table of each String written so far. The indexes start at 1, since null is written as 0.
+     */
+    private final HashMap<String, Integer> strings;
+
+    /**
+     * The Strings of the string table, in order of their indexes.
+     */
+    private final ArrayList<String> stringTable;
+
+    /**
+     * One more than the index in the tag table of the Tag with each interned ID, or 0 for a Tag not written yet. The
+     * IDs are small and dense, so they index the array directly.
+     */
+    private int[] tags;
+
+    /**
+     * Index in the string table of the name of each Tag of the tag table, in order.
+     */
+    private final ArrayList<Integer> tagTable;
+
+    /**
+     * Index in the TagSet table of each TagSet written so far.
+     */
+    private final HashMap<TagSet, Integer> tagSets;
+
+    /**
+     * The TagSets of the TagSet table, each as the sorted indexes of its Tags in the tag table.
+     */
+    private final ArrayList<int[]> tagSetTable;
+
+    /**
+     * The body written so far.
+     */
+    private byte[] body;
+
+    /**
+     * Number of bytes of body in use.
+     */
+    private int length;
+
+    /**
+     * Constructs a new, empty CatalogOutput.
+     */
+    public CatalogOutput() {
+        this.strings = new HashMap<>();
+        this.stringTable = new ArrayList<>();
+        this.tags = new int[64];
+        this.tagTable = new ArrayList<>();
+        this.tagSets = new HashMap<>();
+        this.tagSetTable = new ArrayList<>();
+        this.body = new byte[4096];
+    }
+
+    /**
+     * Writes the given non-negative int as a varint.
+     *
+     * @param value the int to write
+     */
+    void writeVarInt(int value) {
+        writeVarLong(value & 0xffffffffL);
+    }
+
+    /**
+     * Writes the given long as a varint: seven bits a byte, lowest first, with the top bit set on every byte but the
+     * last. A negative long takes ten bytes.
+     *
+     * @param value the long to write
+     */
+    void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            body[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        body[length++] = (byte) value;
+    }
+
+    /**
+     * Writes the given bytes as they are.
+     *
+     * @param bytes the bytes to write
+     */
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, body, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * Grows the body if it has less than the given number of bytes left.
+     *
+     * @param bytes number of bytes about to be written
+     */
+    private void ensure(int bytes) {
+        if (length + bytes > body.length)
+            body = Arrays.copyOf(body, Math.max(2 * body.length, length + bytes));
+    }
+
+    /**
+     * Writes the given String as its index in the string table, adding it to the table if it isn't there yet.
+     *
+     * @param value the String to write, or null
+     */
+    void writeString(String value) {
+        writeVarInt(indexOf(value));
+    }
+
+    /**
+     * Writes the given String split around its last run of digits (ie. "IMG_" and 1234, or "(dev=803,ino=" and
+     * 1051 and ")"), so that Strings that only differ in a number, like file names from a camera or file keys, share
+     * the rest in the string table and their numbers take a few bytes each. A String without digits, or with too many
+     * in a row, is written whole.
+     *
+     * @param value the String to write, or null
+     */
+    void writeNumbered(String value) {
+        int end = (value == null) ? 0 : value.length();
+        while (end > 0 && !isDigit(value.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && isDigit(value.charAt(start - 1))) {
+            start--;
+        }
+        if (end == start || end - start > maxDigits) {
+            writeString(value);
+            writeVarInt(0);
+            return;
+        }
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            number = 10 * number + (value.charAt(i) - '0');
+        }
+        writeString(value.substring(0, start));
+        writeVarInt(end - start);
+        writeVarLong(number);
+        writeString(value.substring(end));
+    }
+
+    /**
+     * Returns whether the given char is an ASCII digit.
+     *
+     * @param c the char
+     * @return true if c is one of 0 to 9, and false if not
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Writes the given TagSet as its index in the TagSet table, adding it and its Tags to the tables if they aren't
+     * there yet.
+     *
+     * @param tagSet the TagSet to write
+     */
+    void writeTagSet(TagSet tagSet) {
+        Integer index = tagSets.get(tagSet);
+        if (index == null) {
+            int[] ids = tagSet.getIds();
+            int[] indexes = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                indexes[i] = indexOf(TagManager.getTag(ids[i]));
+            }
+            Arrays.sort(indexes);
+            index = tagSetTable.size();
+            tagSetTable.add(indexes);
+            tagSets.put(tagSet, index);
+        }
+        writeVarInt(index);
+    }
+
+    /**
+     * Writes the given Tag as its index in the tag table, adding it to the table if it isn't there yet.
+     *
+     * @param tag the Tag to write
+     */
+    void writeTag(Tag tag) {
+        writeVarInt(indexOf(tag));
+    }
+
+    /**
+     * Returns the index of the given String in the string table, adding it if it isn't there yet.
+     *
+     * @param value the String, or null
+     * @return 0 for null, or one more than the String's place in the table
+     */
+    private int indexOf(String value) {
+        if (value == null)
+            return 0;
+        Integer index = strings.get(value);
+        if (index == null) {
+            stringTable.add(value);
+            index = stringTable.size();
+            strings.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the given Tag in the tag table, adding it if it isn't there yet.
+     *
+     * @param tag the Tag
+     * @return the Tag's place in the table
+     */
+    private int indexOf(Tag tag) {
+        int id = tag.getId();
+        if (id >= tags.length)
+            tags = Arrays.copyOf(tags, Math.max(2 * tags.length, id + 1));
+        if (tags[id] == 0) {
+            tagTable.add(indexOf(tag.getName()));
+            tags[id] = tagTable.size();
+        }
+        return tags[id] - 1;
+    }
+
+    /**
+     * Writes the catalog to the file at the given path. The catalog is written to a temporary file next to it, forced
+     * to disk, and then moved over the file, so a crash while saving leaves the last saved catalog as it was.
+     *
+     * @param path path of the catalog file
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(String path) throws IOException {
+        CatalogOutput tables = new CatalogOutput();
+        tables.writeVarInt(stringTable.size());
+        for (String value : stringTable) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            tables.writeVarInt(bytes.length);
+            tables.writeBytes(bytes);
+        }
+        tables.writeVarInt(tagTable.size());
+        for (int name : tagTable) {
+            tables.writeVarInt(name);
+        }
+        tables.writeVarInt(tagSetTable.size());
+        for (int[] indexes : tagSetTable) {
+            // The indexes are sorted, so each is written as its distance from the one before.
+            tables.writeVarInt(indexes.length);
+            int previous = 0;
+            for (int index : indexes) {
+                tables.writeVarInt(index - previous);
+                previous = index;
+            }
+        }
+        File temporary = new File(path + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(ByteBuffer.allocate(8).putInt(magic).putInt(version).array());
+            out.write(tables.body, 0, tables.length);
+            out.write(body, 0, length);
+            out.getChannel().force(false);
+        }
+        try {
+            Files.move(temporary.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * A CompressedBitmap is a set of non-negative ints stored in chunks of 65536 values. A sparse chunk keeps its values
+ * in a sorted array and a dense chunk keeps them as a bitmap, so a set uses at most about two bytes per value and
+ * AND, OR and AND NOT of two sets work a chunk at a time.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+class CompressedBitmap {
+
+    /**
+     * The most values a chunk keeps in a sorted array before it turns into a bitmap.
+     */
+    private static final int arrayLimit = 4096;
+
+    /**
+     * The high 16 bits of the values in each chunk, in increasing order.
+     */
+    private char[] keys;
+
+    /**
+     * The chunks, in the same order as keys.
+     */
+    private Chunk[] chunks;
+
+    /**
+     * Number of chunks in use.
+     */
+    private int size;
+
+    /**
+     * Constructs a new, empty CompressedBitmap.
+     */
+    CompressedBitmap() {
+        this.keys = new char[4];
+        this.chunks = new Chunk[4];
+    }
+
+    /**
+     * Adds the given value to this set.
+     *
+     * @param value a non-negative int
+     */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new Chunk());
+        }
+        chunks[index].add((char) value);
+    }
+
+    /**
+     * Removes the given value from this set.
+     *
+     * @param value a non-negative int
+     */
+    void remove(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index >= 0) {
+            chunks[index].remove((char) value);
+            if (chunks[index].cardinality == 0)
+                removeChunk(index);
+        }
+    }
+
+    /**
+     * Returns whether the given value is in this set.
+     *
+     * @param value a non-negative int
+     * @return true if the value is in this set, and false if not
+     */
+    boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    /**
+     * Returns the number of values in this set.
+     *
+     * @return the number of values
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the values in this set in increasing order.
+     *
+     * @return the values in this set
+     */
+    int[] toArray() {
+        int[] values = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n = chunks[i].copyTo(values, n, keys[i] << 16);
+        }
+        return values;
+    }
+
+    /**
+     * Returns a new set of the values that are in both this set and the other.
+     *
+     * @param other the other set
+     * @return this AND other
+     */
+    CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendIfNotEmpty(keys[i], Chunk.combine(chunks[i], other.chunks[j], Operation.AND));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new set of the values that are in this set, the other, or both.
+     *
+     * @param other the other set
+     * @return this OR other
+     */
+    CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendIfNotEmpty(keys[i], chunks[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendIfNotEmpty(other.keys[j], other.chunks[j].copy());
+                j++;
+            } else {
+                result.appendIfNotEmpty(keys[i], Chunk.combine(chunks[i], other.chunks[j], Operation.OR));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new set of the values that are in this set but not in the other.
+     *
+     * @param other the other set
+     * @return this AND NOT other
+     */
+    CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i])
+                result.appendIfNotEmpty(keys[i], Chunk.combine(chunks[i], other.chunks[j], Operation.AND_NOT));
+            else
+                result.appendIfNotEmpty(keys[i], chunks[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Adds a chunk after every chunk already in this set, unless it is empty.
+     *
+     * @param key   the high 16 bits of the values in the chunk, greater than every key in this set
+     * @param chunk the chunk to add
+     */
+    private void appendIfNotEmpty(char key, Chunk chunk) {
+        if (chunk.cardinality != 0)
+            insertChunk(size, key, chunk);
+    }
+
+    /**
+     * Inserts a chunk at the given position.
+     *
+     * @param index position of the chunk
+     * @param key   the high 16 bits of the values in the chunk
+     * @param chunk the chunk to insert
+     */
+    private void insertChunk(int index, char key, Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        size++;
+    }
+
+    /**
+     * Removes the chunk at the given position.
+     *
+     * @param index position of the chunk
+     */
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        size--;
+        chunks[size] = null;
+    }
+
+    /**
+     * The ways two chunks can be combined.
+     */
+    private enum Operation {
+        AND, OR, AND_NOT
+    }
+
+    /**
+     * The low 16 bits of the values in one chunk, kept either in a sorted array or in a bitmap.
+     */
+    private static class Chunk {
+
+        /**
+         * The values in increasing order, or null if this chunk is a bitmap.
+         */
+        private char[] values;
+
+        /**
+         * The bitmap of values, or null if this chunk is a sorted array.
+         */
+        private long[] bits;
+
+        /**
+         * Number of values in this chunk.
+         */
+        private int cardinality;
+
+        /**
+         * Constructs a new, empty Chunk that keeps its values in a sorted array.
+         */
+        Chunk() {
+            this.values = new char[4];
+        }
+
+        /**
+         * Adds the given value to this chunk.
+         *
+         * @param value the low 16 bits of the value
+         */
+        void add(char value) {
+            if (bits != null) {
+                if ((bits[value >>> 6] & (1L << value)) == 0) {
+                    bits[value >>> 6] |= 1L << value;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+                return;
+            if (cardinality == arrayLimit) {
+                toBits();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.max(Math.min(cardinality * 2, arrayLimit), 4));
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        /**
+         * Removes the given value from this chunk.
+         *
+         * @param value the low 16 bits of the value
+         */
+        void remove(char value) {
+            if (bits != null) {
+                if ((bits[value >>> 6] & (1L << value)) != 0) {
+                    bits[value >>> 6] &= ~(1L << value);
+                    cardinality--;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+        }
+
+        /**
+         * Returns whether the given value is in this chunk.
+         *
+         * @param value the low 16 bits of the value
+         * @return true if the value is in this chunk, and false if not
+         */
+        boolean contains(char value) {
+            if (bits != null)
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        /**
+         * Copies the values of this chunk into the given array.
+         *
+         * @param target array to copy to
+         * @param offset position in the array to start at
+         * @param high   the high 16 bits of the values, already shifted
+         * @return the position after the last copied value
+         */
+        int copyTo(int[] target, int offset, int high) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    target[offset++] = high | values[i];
+                }
+            } else {
+                for (int word = 0; word < bits.length; word++) {
+                    long remaining = bits[word];
+                    while (remaining != 0) {
+                        target[offset++] = high | (word << 6) | Long.numberOfTrailingZeros(remaining);
+                        remaining &= remaining - 1;
+                    }
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * Returns a copy of this chunk.
+         *
+         * @return the copy
+         */
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.values = (values == null) ? null : Arrays.copyOf(values, Math.max(cardinality, 4));
+            copy.bits = (bits == null) ? null : bits.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        /**
+         * Turns this chunk from a sorted array into a bitmap.
+         */
+        private void toBits() {
+            bits = asBits();
+            values = null;
+        }
+
+        /**
+         * Returns the values of this chunk as a bitmap, without changing this chunk.
+         *
+         * @return the bitmap of values
+         */
+        private long[] asBits() {
+            if (bits != null)
+                return bits;
+            long[] words = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        /**
+         * Combines two chunks with the given operation into a new chunk. Two sorted arrays are merged; otherwise the
+         * bitmaps are combined a word at a time, and a sparse result is turned back into a sorted array.
+         *
+         * @param first     the first chunk
+         * @param second    the second chunk
+         * @param operation how to combine them
+         * @return the combined chunk
+         */
+        static Chunk combine(Chunk first, Chunk second, Operation operation) {
+            Chunk result = new Chunk();
+            if (first.bits == null && second.bits == null) {
+                char[] merged = new char[Math.max(first.cardinality + second.cardinality, 4)];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while (i < first.cardinality || j < second.cardinality) {
+                    if (j == second.cardinality || (i < first.cardinality && first.values[i] < second.values[j])) {
+                        if (operation != Operation.AND)
+                            merged[n++] = first.values[i];
+                        i++;
+                    } else if (i == first.cardinality || first.values[i] > second.values[j]) {
+                        if (operation == Operation.OR)
+                            merged[n++] = second.values[j];
+                        j++;
+                    } else {
+                        if (operation != Operation.AND_NOT)
+                            merged[n++] = first.values[i];
+                        i++;
+                        j++;
+                    }
+                }
+                result.values = merged;
+                result.cardinality = n;
+                if (result.cardinality > arrayLimit)
+                    result.toBits();
+                return result;
+            }
+            long[] firstBits = first.asBits();
+            long[] secondBits = second.asBits();
+            long[] words = new long[1024];
+            for (int k = 0; k < words.length; k++) {
+                if (operation == Operation.AND)
+                    words[k] = firstBits[k] & secondBits[k];
+                else if (operation == Operation.OR)
+                    words[k] = firstBits[k] | secondBits[k];
+                else
+                    words[k] = firstBits[k] & ~secondBits[k];
+                result.cardinality += Long.bitCount(words[k]);
+            }
+            result.bits = words;
+            result.values = null;
+            if (result.cardinality <= arrayLimit) {
+                result.values = new char[Math.max(result.cardinality, 4)];
+                int[] unpacked = new int[result.cardinality];
+                result.copyTo(unpacked, 0, 0);
+                for (int k = 0; k < unpacked.length; k++) {
+                    result.values[k] = (char) unpacked[k];
+                }
+                result.bits = null;
+            }
+            return result;
+        }
+    }
+}
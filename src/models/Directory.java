@@ -1,6 +1,7 @@
 package models;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -12,11 +13,32 @@ import java.util.ArrayList;
  */
 public class Directory extends File implements Serializable {
 
+    /**
+     * Serialization version of Directory, kept at the version the first release saved, so that directory files saved
+     * before modifiedTime was added still load.
+     */
+    private static final long serialVersionUID = -4332554605584565298L;
+
+    /**
+     * Catalog entry type of an ImageFile in files.
+     */
+    private static final int imageEntry = 0;
+
+    /**
+     * Catalog entry type of a subdirectory in files.
+     */
+    private static final int directoryEntry = 1;
+
     /**
      * ArrayList of ImageFile objects in this Directory.
      */
     private ArrayList<File> files;
 
+    /**
+     * Last modified time of this Directory in milliseconds, as read when it was scanned.
+     */
+    private long modifiedTime;
+
     /**
      * Constructs a Directory object from the path given in the parameter by calling the super constructor
      * in the File class.
@@ -46,6 +68,24 @@ public class Directory extends File implements Serializable {
         this.files = files;
     }
 
+    /**
+     * Getter for the last modified time of this Directory as read when it was scanned.
+     *
+     * @return the last modified time in milliseconds, or 0 if it is unknown
+     */
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    /**
+     * Setter for the last modified time of this Directory.
+     *
+     * @param modifiedTime the last modified time in milliseconds
+     */
+    void setModifiedTime(long modifiedTime) {
+        this.modifiedTime = modifiedTime;
+    }
+
     /**
      * Adds a file to Directory's ArrayList of ImageFiles, files.
      *
@@ -64,6 +104,77 @@ public class Directory extends File implements Serializable {
         files.remove(file);
     }
 
+    /**
+     * Returns the file in Directory's ArrayList of files that currently has the given name. An ImageFile is matched
+     * by the name of the file it manipulates, so it is found under its name after any renames.
+     *
+     * @param name the current name of the file
+     * @return the File with the given name, or null if there isn't one
+     */
+    File findFile(String name) {
+        for (File file : files) {
+            String fileName = (file instanceof ImageFile) ? ((ImageFile) file).getImageFile().getName() : file.getName();
+            if (fileName.equals(name))
+                return file;
+        }
+        return null;
+    }
+
+    /**
+     * Writes this Directory to the given catalog: its path, its modified time and its files. A subdirectory is written
+     * as its path and modified time only, since it is written on its own if it has been loaded.
+     *
+     * @param out the catalog to write to
+     */
+    void writeTo(CatalogOutput out) {
+        out.writeString(getPath());
+        out.writeVarLong(modifiedTime);
+        int count = 0;
+        for (File file : files) {
+            if (file instanceof ImageFile || file instanceof Directory)
+                count++;
+        }
+        out.writeVarInt(count);
+        for (File file : files) {
+            if (file instanceof ImageFile) {
+                out.writeVarInt(imageEntry);
+                ((ImageFile) file).writeTo(out, getPath());
+            } else if (file instanceof Directory) {
+                out.writeVarInt(directoryEntry);
+                out.writeString(file.getPath());
+                out.writeVarLong(((Directory) file).getModifiedTime());
+            }
+        }
+    }
+
+    /**
+     * Reads a Directory written by writeTo from the given catalog. Its subdirectories are read as new Directories
+     * without files, which the DirectoryManager replaces with the Directories it has for the same paths.
+     *
+     * @param in the catalog to read from
+     * @return the Directory
+     * @throws IOException if the catalog can't be read
+     */
+    static Directory readFrom(CatalogInput in) throws IOException {
+        Directory directory = new Directory(in.readString());
+        directory.modifiedTime = in.readVarLong();
+        int count = in.readVarInt();
+        directory.files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int entry = in.readVarInt();
+            if (entry == imageEntry) {
+                directory.files.add(ImageFile.readFrom(in, directory.getPath()));
+            } else if (entry == directoryEntry) {
+                Directory subdirectory = new Directory(in.readString());
+                subdirectory.modifiedTime = in.readVarLong();
+                directory.files.add(subdirectory);
+            } else {
+                throw new IOException("Unknown entry " + entry + " in " + directory.getPath());
+            }
+        }
+        return directory;
+    }
+
     /**
      * Overrides the existing equals method. Compares the paths of this DirectoryFile and other Object (if it is a
      * Directory) and returns true or false based on whether they're the same or not.
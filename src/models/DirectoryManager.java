@@ -2,6 +2,7 @@ package models;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import views.*;
 
@@ -13,26 +14,74 @@ import views.*;
  */
 public class DirectoryManager implements Serializable {
 
+    /**
+     * Serialization version of DirectoryManager, kept at the version the first release had.
+     */
+    private static final long serialVersionUID = -4658258914932254556L;
+
     /**
      * ArrayList of all the existing Directory objects.
      */
     private ArrayList<Directory> listOfDirectories;
 
+    /**
+     * Every Directory in listOfDirectories, keyed by its path.
+     */
+    private transient HashMap<String, Directory> directoriesByPath;
+
+    /**
+     * Every Directory in listOfDirectories, stored by the segments of its path.
+     */
+    private transient PathTrie directoryTrie;
+
+    /**
+     * Whether the directories were loaded from the serialized directory file of an earlier version, which is only
+     * deleted once they have been written to the catalog file.
+     */
+    private transient boolean serializedLoaded;
+
+    /**
+     * Whether the serialized directory file of an earlier version couldn't be loaded. The directories aren't written to
+     * the catalog file then, so that the serialized file is still read the next time rather than hidden behind the
+     * catalog file.
+     */
+    private transient boolean serializedUnreadable;
+
     /**
      * Constructs a new DirectoryManager by creating an empty ArrayList to store Directory objects in.
      */
     public DirectoryManager() {
         listOfDirectories = new ArrayList<>();
+        buildIndex();
+    }
+
+    /**
+     * Rebuilds the path index and the path trie from listOfDirectories.
+     */
+    private void buildIndex() {
+        directoriesByPath = new HashMap<>();
+        directoryTrie = new PathTrie();
+        for (Directory dir : listOfDirectories) {
+            directoriesByPath.put(dir.getPath(), dir);
+            directoryTrie.put(dir);
+        }
     }
 
     /**
      * Adds a Directory object to the ArrayList listOfDirectories if it doesn't already exist.
      *
      * @param directory Directory object to add to listOfDirectories
+     * @return the Directory now in listOfDirectories for the path, which is the given one unless another Directory
+     * with the same path was already there
      */
-    public void addDirectory(Directory directory) {
-        if (!(listOfDirectories.contains(directory)))
-            listOfDirectories.add(directory);
+    public synchronized Directory addDirectory(Directory directory) {
+        Directory existing = directoriesByPath.get(directory.getPath());
+        if (existing != null)
+            return existing;
+        listOfDirectories.add(directory);
+        directoriesByPath.put(directory.getPath(), directory);
+        directoryTrie.put(directory);
+        return directory;
     }
 
     /**
@@ -42,12 +91,8 @@ public class DirectoryManager implements Serializable {
      * @param path the Path of the Directory passed as a String
      * @return true or false based on whether or not listOfDirectories contains the given path.
      */
-    public boolean directoryManagerContains(String path) {
-        for (Directory dir : listOfDirectories) {
-            if (dir.getPath().equals(path))
-                return true;
-        }
-        return false;
+    public synchronized boolean directoryManagerContains(String path) {
+        return directoriesByPath.containsKey(path);
     }
 
     /**
@@ -57,12 +102,19 @@ public class DirectoryManager implements Serializable {
      * @param path the Path of the Directory passed as a String
      * @return a Directory object if listOfDirectories contains the path passed inside the parameter.
      */
-    public Directory getDirectory(String path) {
-        for (Directory dir : listOfDirectories) {
-            if (dir.getPath().equals(path))
-                return dir;
-        }
-        return null;
+    public synchronized Directory getDirectory(String path) {
+        return directoriesByPath.get(path);
+    }
+
+    /**
+     * Returns every Directory in listOfDirectories whose path is the given path or is under it, ie. all directories
+     * under /photos/2018.
+     *
+     * @param path the Path of the Directory passed as a String
+     * @return ArrayList of the Directory objects at or under the given path, in no particular order.
+     */
+    public synchronized ArrayList<Directory> getDirectoriesUnder(String path) {
+        return directoryTrie.getAllUnder(path);
     }
 
     /**
@@ -75,40 +127,128 @@ public class DirectoryManager implements Serializable {
     }
 
     /**
-     * Loads the serialized directory file, and restores the last state of DirectoryManager.
+     * Loads the directory catalog file, and restores the last state of DirectoryManager. If there is no catalog file
+     * yet, the serialized directory file of an earlier version is loaded instead; it is replaced by the catalog file
+     * when the directories are next written.
      *
      * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
      */
     @SuppressWarnings("unchecked")
     public void loadSavedDirectories() throws ClassNotFoundException {
-        // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
-        // 2017-11-19
-        File fileExists = new File(Main.serializedDirectories);
         try {
-            if (fileExists.isFile()) {
+            if (new File(Main.directoryCatalog).isFile()) {
+                listOfDirectories = readCatalog(new CatalogInput(Main.directoryCatalog));
+            } else {
+                // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
+                // 2017-11-19
+                File fileExists = new File(Main.serializedDirectories);
+                if (!fileExists.isFile())
+                    return;
+                // Cleared once the file has been read.
+                serializedUnreadable = true;
                 FileInputStream fileIn = new FileInputStream(fileExists.getPath());
                 ObjectInputStream in = new ObjectInputStream(fileIn);
                 listOfDirectories = ((ArrayList<Directory>) in.readObject());
                 in.close();
                 fileIn.close();
+                serializedUnreadable = false;
+                serializedLoaded = true;
+            }
+            buildIndex();
+            TagIndex.getTagIndex().addAll(listOfDirectories);
+            loadHistories(System.currentTimeMillis() - HistoryLog.retention);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the Directories from the given catalog, and replaces every subdirectory in their files with the
+     * Directory read for the same path, if there is one, as they were shared when they were written.
+     *
+     * @param in the catalog to read from
+     * @return the Directories
+     * @throws IOException if the catalog can't be read
+     */
+    static ArrayList<Directory> readCatalog(CatalogInput in) throws IOException {
+        int count = in.readVarInt();
+        ArrayList<Directory> directories = new ArrayList<>(count);
+        HashMap<String, Directory> byPath = new HashMap<>(2 * count);
+        for (int i = 0; i < count; i++) {
+            Directory directory = Directory.readFrom(in);
+            directories.add(directory);
+            byPath.put(directory.getPath(), directory);
+        }
+        for (Directory directory : directories) {
+            ArrayList<File> files = directory.getFiles();
+            for (int i = 0; i < files.size(); i++) {
+                if (files.get(i) instanceof Directory) {
+                    Directory known = byPath.get(files.get(i).getPath());
+                    if (known != null)
+                        files.set(i, known);
+                }
             }
+        }
+        return directories;
+    }
+
+    /**
+     * Collapses the changes made before the given time in the history of every image into a single checkpoint each,
+     * and moves histories saved with the directories by an earlier version to the HistoryLog.
+     *
+     * @param before the time in milliseconds before which changes are collapsed
+     * @see ImageFile#compactHistory(long)
+     * @see ImageFile#spillHistory(ArrayList)
+     */
+    private void loadHistories(long before) {
+        ArrayList<Log> spilled = new ArrayList<>();
+        for (Directory directory : listOfDirectories) {
+            for (File file : directory.getFiles()) {
+                if (file instanceof ImageFile) {
+                    ((ImageFile) file).compactHistory(before);
+                    ((ImageFile) file).spillHistory(spilled);
+                }
+            }
+        }
+        if (spilled.isEmpty())
+            return;
+        // The HistoryLog is kept in order of time, so the Logs of every image are appended together.
+        spilled.sort((first, second) -> Long.compare(first.getTime(), second.getTime()));
+        HistoryLog history = HistoryLog.getHistoryLog();
+        try {
+            int start = 0;
+            for (int end = 1; end <= spilled.size(); end++) {
+                if (end == spilled.size() || spilled.get(end).getTime() != spilled.get(start).getTime()) {
+                    history.append(new ArrayList<>(spilled.subList(start, end)), spilled.get(start).getTime());
+                    start = end;
+                }
+            }
+            history.force();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Writes to the serialized directory file, saving the current state of DirectoryManager.
+     * Writes to the directory catalog file, saving the current state of DirectoryManager, and deletes the serialized
+     * directory file of an earlier version if the directories were loaded from it. Nothing is written if there is a
+     * serialized directory file that couldn't be loaded, which is kept to be read again.
      */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void writeSavedDirectories() {
-        // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
-        // 2017-11-19
+        if (serializedUnreadable)
+            return;
+        CatalogOutput out = new CatalogOutput();
+        synchronized (this) {
+            out.writeVarInt(listOfDirectories.size());
+            for (Directory directory : listOfDirectories) {
+                directory.writeTo(out);
+            }
+        }
         try {
-            FileOutputStream fileOut = new FileOutputStream(Main.serializedDirectories);
-            ObjectOutputStream out = new ObjectOutputStream(fileOut);
-            out.writeObject(listOfDirectories);
-            out.close();
-            fileOut.close();
+            out.writeTo(Main.directoryCatalog);
+            if (serializedLoaded)
+                new File(Main.serializedDirectories).delete();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,415 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * DirectoryScanner walks a directory tree in parallel and builds the Directory and ImageFile objects for it. Every
+ * subdirectory is scanned by its own task on a ForkJoinPool, so idle worker threads steal the subfolders of busy
+ * ones. Scanning is meant to run off the JavaFX thread; the finished Directory is handed back to the caller.
+ * <p>
+ * A scan can also be streamed: every Directory is handed to a Listener as soon as its own files are loaded, before
+ * its subdirectories are, so that the caller can show the top of a large tree while the rest is still being scanned.
+ * A streamed scan can be cancelled, in which case the directories not scanned yet are left without their files.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class DirectoryScanner {
+
+    /**
+     * A Listener is handed every Directory of a streamed scan as soon as its files are loaded.
+     */
+    public interface Listener {
+
+        /**
+         * Called on a scanning thread once the given Directory has its files, and before its subdirectories do. The
+         * Directory's list of files is not changed by the scan after this call.
+         *
+         * @param directory the scanned Directory
+         */
+        void directoryScanned(Directory directory);
+    }
+
+    /**
+     * The FileNameParser of each scanning thread.
+     */
+    private static final ThreadLocal<FileNameParser> parsers = ThreadLocal.withInitial(FileNameParser::new);
+
+    /**
+     * The ImageProber of each scanning thread.
+     */
+    private static final ThreadLocal<ImageProber> probers = ThreadLocal.withInitial(ImageProber::new);
+
+    /**
+     * Fewest images probed by one task; a directory with more is split between several tasks.
+     */
+    private static final int probeChunk = 64;
+
+    /**
+     * The pool that all scanning tasks run on. Shared by every DirectoryScanner.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    /**
+     * The DirectoryManager that already scanned Directory objects are looked up in and new ones are added to.
+     */
+    private final DirectoryManager directoryManager;
+
+    /**
+     * The TagManager that tags found in file names are added to.
+     */
+    private final TagManager tagManager;
+
+    /**
+     * The ScanCache that unchanged directories are rebuilt from instead of being listed again.
+     */
+    private final ScanCache scanCache;
+
+    /**
+     * Constructs a new DirectoryScanner that registers what it finds in the given managers.
+     *
+     * @param directoryManager DirectoryManager to look up and store Directory objects in
+     * @param tagManager       TagManager to store tags found in file names in
+     * @param scanCache        ScanCache to rebuild unchanged directories from and to record listed ones in
+     */
+    public DirectoryScanner(DirectoryManager directoryManager, TagManager tagManager, ScanCache scanCache) {
+        this.directoryManager = directoryManager;
+        this.tagManager = tagManager;
+        this.scanCache = scanCache;
+    }
+
+    /**
+     * Scans the directory at the given path and all of its subdirectories, and returns the Directory for it. Every
+     * Directory in the returned tree has its files loaded, and is added to the DirectoryManager and the TagIndex as
+     * soon as it is scanned. This method blocks until the whole tree is scanned, so it should not be called on the
+     * JavaFX thread.
+     *
+     * @param path path of the directory to scan
+     * @return the Directory object for the given path
+     */
+    public Directory scan(String path) {
+        return scan(path, null, null);
+    }
+
+    /**
+     * Scans the directory at the given path and all of its subdirectories, handing every Directory to the given
+     * Listener as soon as its files are loaded. The scan stops early once the given cancellation check returns true;
+     * the directories that weren't scanned by then are left without their files and out of the DirectoryManager.
+     * This method blocks until the scan has finished or stopped, so it should not be called on the JavaFX thread.
+     *
+     * @param path      path of the directory to scan
+     * @param listener  Listener handed every scanned Directory, or null
+     * @param cancelled returns true once the scan should stop, or null if it can't be cancelled
+     * @return the Directory object for the given path
+     */
+    public Directory scan(String path, Listener listener, BooleanSupplier cancelled) {
+        Directory directory = directoryManager.getDirectory(path);
+        if (directory == null)
+            directory = new Directory(path);
+        return pool.invoke(new ScanTask(directory, listener, cancelled));
+    }
+
+    /**
+     * Loads the files of the given Directory, but not of its subdirectories, and adds it to the DirectoryManager and
+     * the TagIndex. If the DirectoryManager already has a Directory with the same path, that one is returned instead.
+     * The directory's own modified time is always read first, and its files are only rebuilt from the ScanCache if
+     * that time matches the cached one. This method reads from the file system, so it should not be called on the
+     * JavaFX thread.
+     *
+     * @param directory the Directory to load
+     * @return the Directory in the DirectoryManager for the path, with its files loaded
+     */
+    public Directory list(Directory directory) {
+        Directory known = directoryManager.getDirectory(directory.getPath());
+        if (known != null)
+            return known;
+        // The time read when the parent was listed may have come from the ScanCache, and be older than the directory.
+        directory.setModifiedTime(readModifiedTime(directory));
+        ArrayList<File> files = scanCache.getFiles(directory, tagManager);
+        if (files == null) {
+            files = getFiles(directory);
+            scanCache.putFiles(directory, files);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i) instanceof Directory) {
+                known = directoryManager.getDirectory(files.get(i).getPath());
+                if (known != null)
+                    files.set(i, known);
+            }
+        }
+        directory.setFiles(files);
+        known = directoryManager.addDirectory(directory);
+        if (known == directory)
+            TagIndex.getTagIndex().addDirectory(directory);
+        return known;
+    }
+
+    /**
+     * Reads the last modified time of the given directory with a single stat.
+     *
+     * @param directory the directory
+     * @return the last modified time in milliseconds, or 0 if it can't be read
+     */
+    private static long readModifiedTime(File directory) {
+        try {
+            return Files.readAttributes(directory.toPath(), BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // A directory that can't be read isn't found in the ScanCache, and is listed as it is.
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the Directory the DirectoryManager has for the path of the given Directory, if its files have been
+     * loaded already.
+     *
+     * @param directory a Directory, which may not have its files loaded
+     * @return the loaded Directory for its path, or null if it hasn't been loaded yet
+     */
+    public Directory getListed(Directory directory) {
+        return directoryManager.getDirectory(directory.getPath());
+    }
+
+    /**
+     * Returns whether the given file name is one of the image formats the program accepts.
+     *
+     * @param name name of the file
+     * @return true if the name ends with .jpg, .jpeg, .png or .gif (ignoring case), and false if not
+     */
+    static boolean isImageName(String name) {
+        String lowerCase = name.toLowerCase();
+        return lowerCase.endsWith(".jpg") || lowerCase.endsWith(".jpeg") || lowerCase.endsWith(".png")
+                || lowerCase.endsWith(".gif");
+    }
+
+    /**
+     * Returns an ArrayList of File objects that have the correct extensions and are in the given directory.
+     * Subdirectories are returned as Directory objects without their files loaded. The attributes of every entry are
+     * read once, with a single stat, and are kept on the ImageFile or Directory so that nothing needs to go back to
+     * the filesystem for them later. The headers of the images are then probed for their sizes in parallel. Symbolic
+     * links are skipped so that a link cannot make the scan loop.
+     *
+     * @param selectedDirectory the directory we're finding the Files in
+     * @return File objects with the given accepted extensions.
+     */
+    ArrayList<File> getFiles(File selectedDirectory) {
+        ArrayList<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(selectedDirectory.toPath())) {
+            for (Path entry : stream) {
+                File file = readEntry(entry);
+                if (file != null)
+                    files.add(file);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            e.printStackTrace();
+        }
+        ProbeTask probeTask = new ProbeTask(files, 0, files.size());
+        if (ForkJoinTask.inForkJoinPool())
+            probeTask.invoke();
+        else
+            pool.invoke(probeTask);
+        return files;
+    }
+
+    /**
+     * Reads the attributes of the given directory entry once and creates the Directory or ImageFile for it, with the
+     * size of an image probed from its header. Hidden entries, symbolic links, files that aren't images and entries
+     * that can't be read are left out.
+     *
+     * @param entry path of the directory entry
+     * @return a Directory without its files loaded, an ImageFile, or null if the entry is left out
+     */
+    File createEntry(Path entry) {
+        File file = readEntry(entry);
+        if (file instanceof ImageFile)
+            probe((ImageFile) file);
+        return file;
+    }
+
+    /**
+     * Reads the attributes of the given directory entry once and creates the Directory or ImageFile for it, without
+     * probing the image. Hidden entries, symbolic links, files that aren't images and entries that can't be read are
+     * left out.
+     *
+     * @param entry path of the directory entry
+     * @return a Directory without its files loaded, an ImageFile, or null if the entry is left out
+     */
+    private File readEntry(Path entry) {
+        String name = entry.getFileName().toString();
+        if (name.startsWith("."))
+            return null;
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            // The entry was removed or can't be read while we were listing, so it is left out.
+            return null;
+        }
+        if (attributes.isDirectory()) {
+            Directory directory = new Directory(entry.toAbsolutePath().toString());
+            directory.setModifiedTime(attributes.lastModifiedTime().toMillis());
+            return directory;
+        } else if (attributes.isRegularFile() && isImageName(name)) {
+            return createImageFile(entry.toString(), attributes);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the width and height of the given ImageFile from its header with this thread's ImageProber.
+     *
+     * @param imgFile the ImageFile to probe
+     */
+    private static void probe(ImageFile imgFile) {
+        ImageProber prober = probers.get();
+        if (prober.probe(imgFile.getImageFile().toPath()))
+            imgFile.setDimensions(prober.getWidth(), prober.getHeight());
+    }
+
+    /**
+     * Creates the ImageFile for the image at the given path, using the attributes already read for it, and auto-tags
+     * it with the tags in its name, which are added to the TagManager.
+     *
+     * @param path       path of the image
+     * @param attributes the attributes read for the image
+     * @return the new ImageFile
+     */
+    private ImageFile createImageFile(String path, BasicFileAttributes attributes) {
+        ImageFile imgFile = new ImageFile(path);
+        imgFile.setAttributes(attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+        FileNameParser parser = parsers.get();
+        if (parser.parse(imgFile.getImageFile().getName(), tagManager)) {
+            imgFile.setParsedName(parser.getBaseName(), parser.getTagIds());
+        }
+        return imgFile;
+    }
+
+    /**
+     * A ProbeTask probes the images in a range of a directory's files, splitting the range in half between two
+     * ProbeTasks while it is bigger than probeChunk.
+     */
+    @SuppressWarnings("serial")
+    private static class ProbeTask extends RecursiveAction {
+
+        /**
+         * The files of the directory.
+         */
+        private final ArrayList<File> files;
+
+        /**
+         * Index of the first file this task probes.
+         */
+        private final int start;
+
+        /**
+         * Index just past the last file this task probes.
+         */
+        private final int end;
+
+        /**
+         * Constructs a new ProbeTask for the given range of files.
+         *
+         * @param files the files of the directory
+         * @param start index of the first file to probe
+         * @param end   index just past the last file to probe
+         */
+        ProbeTask(ArrayList<File> files, int start, int end) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Probes every ImageFile in this task's range, or splits the range if it is too big.
+         */
+        @Override
+        protected void compute() {
+            if (end - start > probeChunk) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ProbeTask(files, start, middle), new ProbeTask(files, middle, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                if (files.get(i) instanceof ImageFile)
+                    probe((ImageFile) files.get(i));
+            }
+        }
+    }
+
+    /**
+     * A ScanTask scans one directory and forks a new ScanTask for each of its subdirectories.
+     */
+    @SuppressWarnings("serial")
+    private class ScanTask extends RecursiveTask<Directory> {
+
+        /**
+         * The Directory this task scans, which may not have its files yet.
+         */
+        private final Directory directory;
+
+        /**
+         * The Listener handed every scanned Directory, or null.
+         */
+        private final Listener listener;
+
+        /**
+         * Returns true once the scan should stop, or null if it can't be cancelled.
+         */
+        private final BooleanSupplier cancelled;
+
+        /**
+         * Constructs a new ScanTask for the given Directory.
+         *
+         * @param directory the Directory to scan
+         * @param listener  Listener handed every scanned Directory, or null
+         * @param cancelled returns true once the scan should stop, or null
+         */
+        ScanTask(Directory directory, Listener listener, BooleanSupplier cancelled) {
+            this.directory = directory;
+            this.listener = listener;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Scans this task's directory and joins the scans of its subdirectories. A Directory that the
+         * DirectoryManager already knows keeps its files, and only its subdirectories are scanned again. A new
+         * Directory whose modified time matches the ScanCache is rebuilt from the cache instead of being listed.
+         * The list of files isn't changed by the scan after the Directory is handed to the Listener.
+         *
+         * @return the Directory for this task's path
+         */
+        @Override
+        protected Directory compute() {
+            if (cancelled != null && cancelled.getAsBoolean())
+                return directory;
+            Directory listed = list(directory);
+            if (listener != null)
+                listener.directoryScanned(listed);
+            ArrayList<ScanTask> subtasks = new ArrayList<>();
+            for (File file : listed.getFiles()) {
+                if (file instanceof Directory) {
+                    ScanTask subtask = new ScanTask((Directory) file, listener, cancelled);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            }
+            for (ScanTask subtask : subtasks) {
+                subtask.join();
+            }
+            return listed;
+        }
+    }
+}
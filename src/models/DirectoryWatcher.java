@@ -0,0 +1,331 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A DirectoryWatcher keeps loaded Directory objects up to date with the file system. It watches every registered
+ * Directory with a WatchService on a background thread, coalesces bursts of events, and turns them into incremental
+ * addFile/removeFile calls on the Directory instead of a full rescan.
+ * <p>
+ * Changes to a Directory are applied through the Executor given to the constructor (ie. the JavaFX thread), and the
+ * Listener is told what was added and removed so that only the affected parts of the view need to be updated.
+ * <p>
+ * Files that a TagBatch is renaming are ignored until the batch has been committed, since their ImageFiles are only
+ * given their new names then; otherwise a renamed file could be taken for a new one in the meantime.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class DirectoryWatcher implements Runnable {
+
+    /**
+     * A Listener is told about the changes a DirectoryWatcher applied to a Directory.
+     */
+    public interface Listener {
+
+        /**
+         * Called after files were added to or removed from the given Directory.
+         *
+         * @param directory the Directory that changed
+         * @param added     the files added to the Directory
+         * @param removed   the files removed from the Directory
+         */
+        void directoryChanged(Directory directory, ArrayList<File> added, ArrayList<File> removed);
+    }
+
+    /**
+     * How long in milliseconds the watched directories have to be quiet before a burst of events is applied.
+     */
+    private static final long quietPeriod = 200;
+
+    /**
+     * The WatchService all directories are registered with.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The Directory each WatchKey was registered for.
+     */
+    private final HashMap<WatchKey, Directory> watchedDirectories;
+
+    /**
+     * The DirectoryScanner used to create the entries for new files.
+     */
+    private final DirectoryScanner directoryScanner;
+
+    /**
+     * The Executor that changes to Directory objects are applied on.
+     */
+    private final Executor executor;
+
+    /**
+     * The Listener told about every applied change.
+     */
+    private final Listener listener;
+
+    /**
+     * Paths of the files that are being renamed by a TagBatch, whose changes aren't applied.
+     */
+    private final HashSet<String> ignoredPaths;
+
+    /**
+     * Constructs a new DirectoryWatcher. Nothing is watched until start is called and directories are registered.
+     *
+     * @param directoryScanner DirectoryScanner used to create the entries for new files
+     * @param executor         Executor that changes to Directory objects are applied on
+     * @param listener         Listener told about every applied change
+     * @throws IOException if the WatchService can't be created
+     */
+    public DirectoryWatcher(DirectoryScanner directoryScanner, Executor executor, Listener listener)
+            throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watchedDirectories = new HashMap<>();
+        this.directoryScanner = directoryScanner;
+        this.executor = executor;
+        this.listener = listener;
+        this.ignoredPaths = new HashSet<>();
+    }
+
+    /**
+     * Starts watching on a new background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching the given Directory for created, deleted and modified files. Does nothing if it is already
+     * watched.
+     *
+     * @param directory the Directory to watch
+     */
+    public void watch(Directory directory) {
+        synchronized (watchedDirectories) {
+            if (watchedDirectories.containsValue(directory))
+                return;
+            try {
+                WatchKey key = directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, directory);
+            } catch (IOException | ClosedWatchServiceException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops watching the given Directory. Does nothing if it isn't watched.
+     *
+     * @param directory the Directory to stop watching
+     */
+    public void unwatch(Directory directory) {
+        synchronized (watchedDirectories) {
+            Iterator<Map.Entry<WatchKey, Directory>> entries = watchedDirectories.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<WatchKey, Directory> entry = entries.next();
+                if (entry.getValue().equals(directory)) {
+                    entry.getKey().cancel();
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaves the files at the given paths alone until stopIgnoring is called with them (ie. while a TagBatch renames
+     * them).
+     *
+     * @param paths paths of the files to ignore
+     */
+    public void ignore(Collection<String> paths) {
+        synchronized (ignoredPaths) {
+            ignoredPaths.addAll(paths);
+        }
+    }
+
+    /**
+     * Applies changes to the files at the given paths again.
+     *
+     * @param paths paths of the files that were ignored
+     */
+    public void stopIgnoring(Collection<String> paths) {
+        synchronized (ignoredPaths) {
+            ignoredPaths.removeAll(paths);
+        }
+    }
+
+    /**
+     * Returns whether the file with the given name in the given Directory is ignored.
+     *
+     * @param directory the Directory
+     * @param name      name of the file
+     * @return true if changes to the file aren't applied, and false if they are
+     */
+    private boolean isIgnored(Directory directory, String name) {
+        synchronized (ignoredPaths) {
+            return !ignoredPaths.isEmpty() && ignoredPaths.contains(new File(directory.getPath(), name).getPath());
+        }
+    }
+
+    /**
+     * Stops watching every Directory.
+     */
+    public void unwatchAll() {
+        synchronized (watchedDirectories) {
+            for (WatchKey key : watchedDirectories.keySet()) {
+                key.cancel();
+            }
+            watchedDirectories.clear();
+        }
+    }
+
+    /**
+     * Stops watching and ends the background thread.
+     */
+    public void close() {
+        unwatchAll();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits for events and applies each burst of them once the watched directories have been quiet for the
+     * quietPeriod. Runs until the DirectoryWatcher is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                LinkedHashMap<Directory, HashSet<String>> pending = new LinkedHashMap<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collectEvents(key, pending);
+                    key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+                }
+                for (Map.Entry<Directory, HashSet<String>> entry : pending.entrySet()) {
+                    applyChanges(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed.
+        }
+    }
+
+    /**
+     * Adds the names of the files that the events of the given WatchKey are about to the pending changes of its
+     * Directory. A null set of names means the events overflowed and the whole Directory has to be compared.
+     *
+     * @param key     the WatchKey with events
+     * @param pending the names of the changed files for each Directory
+     */
+    private void collectEvents(WatchKey key, LinkedHashMap<Directory, HashSet<String>> pending) {
+        Directory directory;
+        synchronized (watchedDirectories) {
+            directory = watchedDirectories.get(key);
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null)
+                continue;
+            if (!pending.containsKey(directory))
+                pending.put(directory, new HashSet<>());
+            HashSet<String> names = pending.get(directory);
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                pending.put(directory, null);
+            } else if (names != null) {
+                names.add(((Path) event.context()).getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Reads the current state of the changed files in the given Directory, and then compares it to the Directory on
+     * the executor, adding, removing and updating files so the Directory matches the file system again. A file the
+     * Directory already has under the same name (ie. after a rename done by this program) is left alone, and so is a
+     * file that is ignored when the changes are applied.
+     *
+     * @param directory the Directory with changed files
+     * @param names     names of the changed files, or null to compare every file
+     */
+    private void applyChanges(Directory directory, HashSet<String> names) {
+        HashMap<String, File> current = new HashMap<>();
+        if (names == null) {
+            for (File file : directoryScanner.getFiles(directory)) {
+                current.put(currentName(file), file);
+            }
+        } else {
+            for (String name : names) {
+                File file = directoryScanner.createEntry(Paths.get(directory.getPath(), name));
+                if (file != null)
+                    current.put(name, file);
+            }
+        }
+        executor.execute(() -> {
+            HashSet<String> changedNames = (names == null) ? new HashSet<>(current.keySet()) : names;
+            if (names == null) {
+                for (File file : directory.getFiles()) {
+                    changedNames.add(currentName(file));
+                }
+            }
+            ArrayList<File> added = new ArrayList<>();
+            ArrayList<File> removed = new ArrayList<>();
+            for (String name : changedNames) {
+                if (isIgnored(directory, name))
+                    continue;
+                File existing = directory.findFile(name);
+                File found = current.get(name);
+                if (existing == null && found != null) {
+                    directory.addFile(found);
+                    added.add(found);
+                    if (found instanceof ImageFile)
+                        TagIndex.getTagIndex().add((ImageFile) found);
+                } else if (existing != null && found == null) {
+                    directory.removeFile(existing);
+                    removed.add(existing);
+                    if (existing instanceof ImageFile)
+                        TagIndex.getTagIndex().remove((ImageFile) existing);
+                } else if (existing instanceof ImageFile && found instanceof ImageFile) {
+                    ImageFile image = (ImageFile) found;
+                    ((ImageFile) existing).setAttributes(image.getFileSize(), image.getModifiedTime(),
+                            image.getFileKey());
+                    ((ImageFile) existing).setDimensions(image.getWidth(), image.getHeight());
+                }
+            }
+            if (!added.isEmpty() || !removed.isEmpty())
+                listener.directoryChanged(directory, added, removed);
+        });
+    }
+
+    /**
+     * Returns the name the given file currently has on disk.
+     *
+     * @param file an ImageFile or Directory
+     * @return the current name of the file
+     */
+    private static String currentName(File file) {
+        return (file instanceof ImageFile) ? ((ImageFile) file).getImageFile().getName() : file.getName();
+    }
+}
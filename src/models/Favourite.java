@@ -13,11 +13,29 @@ import java.util.ArrayList;
  */
 public class Favourite implements Serializable {
 
+    /**
+     * Serialization version of Favourite, kept at the version the first release had.
+     */
+    private static final long serialVersionUID = -8479982328317446389L;
+
     /**
      * An ArrayList of all the images the user has designated as a Favourite
      */
     private ArrayList<ImageFile> listOfFavourites;
 
+    /**
+     * Whether the favourites were loaded from the serialized favourite file of an earlier version, which is only
+     * deleted once they have been written to the catalog file.
+     */
+    private transient boolean serializedLoaded;
+
+    /**
+     * Whether the serialized favourite file of an earlier version couldn't be loaded. The favourites aren't written to
+     * the catalog file then, so that the serialized file is still read the next time rather than hidden behind the
+     * catalog file.
+     */
+    private transient boolean serializedUnreadable;
+
     /**
      * Creates a new Favourites object that will never be used, since
      * no object is ever needed to access the Favourite class' methods
@@ -60,35 +78,61 @@ public class Favourite implements Serializable {
     }
 
     /**
-     * Loads the serialized favourite file, and restores the last state of Favourite ArrayList.
+     * Loads the favourite catalog file, and restores the last state of Favourite ArrayList. If there is no catalog
+     * file yet, the serialized favourite file of an earlier version is loaded instead; it is replaced by the catalog
+     * file when the favourites are next written.
      *
      * @throws IOException            if IOException occurs, it's then thrown
      * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
      */
     @SuppressWarnings("unchecked")
     public void loadSavedFavourites() throws IOException, ClassNotFoundException {
-        // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
-        // 2017-11-19
-        File fileExists = new File(Main.serializedFavourites);
-        if (fileExists.isFile()) {
+        if (new File(Main.favouriteCatalog).isFile()) {
+            CatalogInput in = new CatalogInput(Main.favouriteCatalog);
+            int count = in.readVarInt();
+            ArrayList<ImageFile> favourites = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                favourites.add(ImageFile.readFrom(in, null));
+            }
+            listOfFavourites = favourites;
+        } else {
+            // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
+            // 2017-11-19
+            File fileExists = new File(Main.serializedFavourites);
+            if (!fileExists.isFile())
+                return;
+            // Cleared once the file has been read.
+            serializedUnreadable = true;
             FileInputStream fileIn = new FileInputStream(fileExists.getPath());
             ObjectInputStream in = new ObjectInputStream(fileIn);
             listOfFavourites = ((ArrayList<ImageFile>) in.readObject());
             in.close();
             fileIn.close();
+            serializedUnreadable = false;
+            serializedLoaded = true;
+        }
+        // The same histories are saved with the directories, and are moved to the HistoryLog from there.
+        for (ImageFile imageFile : listOfFavourites) {
+            imageFile.spillHistory(new ArrayList<>());
         }
     }
 
     /**
-     * Writes to the serialized Favourite file, saving the current state of Favourite.
+     * Writes to the favourite catalog file, saving the current state of Favourite, and deletes the serialized
+     * favourite file of an earlier version if the favourites were loaded from it. Nothing is written if there is a
+     * serialized favourite file that couldn't be loaded, which is kept to be read again.
      */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void writeSavedFavourites() throws IOException {
-        // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
-        // 2017-11-19
-        FileOutputStream fileOut = new FileOutputStream(Main.serializedFavourites);
-        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-        out.writeObject(listOfFavourites);
-        out.close();
-        fileOut.close();
+        if (serializedUnreadable)
+            return;
+        CatalogOutput out = new CatalogOutput();
+        out.writeVarInt(listOfFavourites.size());
+        for (ImageFile imageFile : listOfFavourites) {
+            imageFile.writeTo(out, null);
+        }
+        out.writeTo(Main.favouriteCatalog);
+        if (serializedLoaded)
+            new File(Main.serializedFavourites).delete();
     }
 }
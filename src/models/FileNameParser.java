@@ -0,0 +1,226 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * A FileNameParser pulls the base name, the tags and the extension out of an image's file name in a single pass over
+ * its characters, without regular expressions. A name carries tags when it looks like "base @tag1 @tag2.jpg": after
+ * the base name comes a space and an @, the tags contain no illegal filename characters or periods, and the name
+ * ends with a .jpg, .jpeg, .png or .gif extension.
+ * <p>
+ * A FileNameParser reuses its buffers from one name to the next, so parsing a name whose tags are already interned
+ * allocates nothing but the base name and the array of tag IDs. It is not thread safe; every thread should use its
+ * own.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+class FileNameParser {
+
+    /**
+     * Buffer that the normalized name of each tag is built in.
+     */
+    private final StringBuilder tagName;
+
+    /**
+     * Buffer for the IDs of the tags found in the last parsed name.
+     */
+    private int[] tagIds;
+
+    /**
+     * Number of tag IDs in tagIds.
+     */
+    private int tagCount;
+
+    /**
+     * Base name found in the last parsed name.
+     */
+    private String baseName;
+
+    /**
+     * Constructs a new FileNameParser.
+     */
+    FileNameParser() {
+        this.tagName = new StringBuilder();
+        this.tagIds = new int[8];
+    }
+
+    /**
+     * Parses the given file name. If it carries tags, the tags are added to the TagManager and the base name and the
+     * IDs of the tags that are in the TagManager's list of tags are kept for getBaseName and getTagIds.
+     *
+     * @param fileName   the file name to parse
+     * @param tagManager TagManager to add the tags to
+     * @return true if the name carries tags, and false if not
+     */
+    boolean parse(String fileName, TagManager tagManager) {
+        int stemEnd = fileName.lastIndexOf('.');
+        if (stemEnd < 0 || !hasImageExtension(fileName, stemEnd + 1) || !hasTags(fileName, stemEnd))
+            return false;
+        tagCount = 0;
+        int partStart = 0;
+        int partEnd = nextSeparator(fileName, 0, stemEnd);
+        baseName = trimmed(fileName, partStart, partEnd);
+        while (partEnd < stemEnd) {
+            partStart = partEnd + 2;
+            partEnd = nextSeparator(fileName, partStart, stemEnd);
+            if (partEnd == stemEnd && partStart == stemEnd)
+                break;
+            normalizeInto(fileName, partStart, partEnd);
+            Tag tag = tagManager.addTagName(tagName);
+            if (tag != null)
+                addTagId(tag.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the base name found in the last name that carried tags, without the tags or surrounding whitespace.
+     *
+     * @return the base name
+     */
+    String getBaseName() {
+        return baseName;
+    }
+
+    /**
+     * Returns the sorted, distinct IDs of the tags found in the last name that carried tags.
+     *
+     * @return a new array of tag IDs in increasing order
+     */
+    int[] getTagIds() {
+        int[] ids = Arrays.copyOf(tagIds, tagCount);
+        Arrays.sort(ids);
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (size == 0 || ids[size - 1] != ids[i])
+                ids[size++] = ids[i];
+        }
+        return (size == ids.length) ? ids : Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Returns whether the name ends, after its last period, with jpg, jpeg, png or gif in any case.
+     *
+     * @param fileName the file name
+     * @param start    index just after the last period
+     * @return true if the extension is an accepted image extension, and false if not
+     */
+    private static boolean hasImageExtension(String fileName, int start) {
+        int length = fileName.length() - start;
+        return (length == 3 && (fileName.regionMatches(true, start, "jpg", 0, 3)
+                || fileName.regionMatches(true, start, "png", 0, 3)
+                || fileName.regionMatches(true, start, "gif", 0, 3)))
+                || (length == 4 && fileName.regionMatches(true, start, "jpeg", 0, 4));
+    }
+
+    /**
+     * Returns whether the part of the name before the extension ends in tags: some whitespace followed by an @ after
+     * the first character, then at least one more character, with no illegal filename characters or periods before
+     * the last character, and a last character that isn't whitespace.
+     *
+     * @param fileName the file name
+     * @param stemEnd  index of the last period
+     * @return true if the name carries tags, and false if not
+     */
+    private static boolean hasTags(String fileName, int stemEnd) {
+        if (stemEnd < 3 || isWhitespace(fileName.charAt(stemEnd - 1)))
+            return false;
+        for (int i = stemEnd - 3; i >= 1; i--) {
+            if (i + 2 < stemEnd - 1 && isIllegal(fileName.charAt(i + 2)))
+                return false;
+            if (fileName.charAt(i + 1) == '@' && isWhitespace(fileName.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the next " @" separator at or after start, or end if there isn't one before end.
+     *
+     * @param fileName the file name
+     * @param start    index to search from
+     * @param end      index to stop at
+     * @return index of the space of the next separator, or end
+     */
+    private static int nextSeparator(String fileName, int start, int end) {
+        for (int i = start; i + 1 < end; i++) {
+            if (fileName.charAt(i) == ' ' && fileName.charAt(i + 1) == '@')
+                return i;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the given part of the name without surrounding whitespace.
+     *
+     * @param fileName the file name
+     * @param start    index of the start of the part
+     * @param end      index just after the part
+     * @return the trimmed part
+     */
+    private static String trimmed(String fileName, int start, int end) {
+        while (start < end && fileName.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && fileName.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return fileName.substring(start, end);
+    }
+
+    /**
+     * Builds the normalized tag name for the given part of the name in tagName: surrounding whitespace is removed,
+     * and runs of spaces are replaced by a single space, in the same way as the Tag constructor does.
+     *
+     * @param fileName the file name
+     * @param start    index of the start of the tag
+     * @param end      index just after the tag
+     */
+    private void normalizeInto(String fileName, int start, int end) {
+        while (start < end && fileName.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && fileName.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        tagName.setLength(0);
+        for (int i = start; i < end; i++) {
+            char c = fileName.charAt(i);
+            if (c != ' ' || fileName.charAt(i - 1) != ' ')
+                tagName.append(c);
+        }
+    }
+
+    /**
+     * Adds a tag ID to the IDs found in the current name.
+     *
+     * @param id the tag ID
+     */
+    private void addTagId(int id) {
+        if (tagCount == tagIds.length)
+            tagIds = Arrays.copyOf(tagIds, tagCount * 2);
+        tagIds[tagCount++] = id;
+    }
+
+    /**
+     * Returns whether a character is whitespace in the same sense as \s in a regular expression.
+     *
+     * @param c the character
+     * @return true if c is a space, tab, line break, vertical tab or form feed, and false if not
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Returns whether a character may not appear inside a tag in a file name.
+     *
+     * @param c the character
+     * @return true if c is a period or an illegal filename character, and false if not
+     */
+    private static boolean isIllegal(char c) {
+        return c == '.' || c == '\\' || c == '/' || c == ':' || c == '*' || c == '?' || c == '"' || c == '<'
+                || c == '>' || c == '|';
+    }
+}
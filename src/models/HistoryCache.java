@@ -0,0 +1,118 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A HistoryCache keeps the histories of the most recently viewed images in memory, for images whose imageLog is only
+ * kept in the HistoryLog. A history that isn't cached is read from the HistoryLog when it is asked for, once every
+ * change appended so far has been written to it, and the least recently used history is dropped once more than
+ * capacity are cached. A change made to an image whose history is cached is added to it as well, so the cached
+ * history never has to be read again.
+ * <p>
+ * Histories are looked up and changed on the JavaFX thread and by TagBatch, so every method is synchronized.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class HistoryCache {
+
+    /**
+     * Most histories kept in memory.
+     */
+    private static final int capacity = 16;
+
+    /**
+     * The HistoryCache shared by the whole program.
+     */
+    private static final HistoryCache historyCache = new HistoryCache(HistoryLog.getHistoryLog(),
+            LogAppender.getLogAppender(), capacity);
+
+    /**
+     * The HistoryLog the histories are read from.
+     */
+    private final HistoryLog history;
+
+    /**
+     * The LogAppender that writes changes to the HistoryLog.
+     */
+    private final LogAppender appender;
+
+    /**
+     * Most histories kept in memory.
+     */
+    private final int size;
+
+    /**
+     * The cached histories keyed by ImageFile, from least to most recently used.
+     */
+    private final LinkedHashMap<ImageFile, ArrayList<Log>> histories;
+
+    /**
+     * Constructs a new, empty HistoryCache that reads from the given HistoryLog.
+     *
+     * @param history  the HistoryLog the histories are read from
+     * @param appender the LogAppender that writes changes to the HistoryLog
+     * @param capacity most histories kept in memory
+     */
+    HistoryCache(HistoryLog history, LogAppender appender, int capacity) {
+        this.history = history;
+        this.appender = appender;
+        this.size = capacity;
+        this.histories = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the HistoryCache shared by the whole program.
+     *
+     * @return the shared HistoryCache
+     */
+    public static HistoryCache getHistoryCache() {
+        return historyCache;
+    }
+
+    /**
+     * Returns the history of the given ImageFile, reading it from the HistoryLog if it isn't cached, and marks it as
+     * the most recently used.
+     *
+     * @param imageFile the ImageFile
+     * @return the Logs of its changes, oldest first; the list must not be changed
+     */
+    public synchronized ArrayList<Log> get(ImageFile imageFile) {
+        ArrayList<Log> imageLog = histories.get(imageFile);
+        if (imageLog != null)
+            return imageLog;
+        // A change that is still queued wouldn't be in the HistoryLog yet.
+        appender.flush();
+        imageLog = history.getHistory(imageFile);
+        histories.put(imageFile, imageLog);
+        Iterator<Map.Entry<ImageFile, ArrayList<Log>>> eldest = histories.entrySet().iterator();
+        while (histories.size() > size) {
+            eldest.next();
+            eldest.remove();
+        }
+        return imageLog;
+    }
+
+    /**
+     * Adds the given change to the history of the given ImageFile, if it is cached. Must be called before the Log is
+     * given to the LogAppender.
+     *
+     * @param imageFile the ImageFile that was changed
+     * @param log       the Log of the change
+     */
+    synchronized void add(ImageFile imageFile, Log log) {
+        ArrayList<Log> imageLog = histories.get(imageFile);
+        if (imageLog != null)
+            imageLog.add(log);
+    }
+
+    /**
+     * Drops every cached history.
+     */
+    public synchronized void clear() {
+        histories.clear();
+    }
+}
@@ -0,0 +1,815 @@
+package models;
+
+import views.Main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * A HistoryLog keeps every tag change of every image in a compact binary log on disk, so that the history of one
+ * image can be read without going through the changes of all the others. It is kept in two files that are only
+ * appended to: a record file of fixed-size records, one for each change, and a string file that holds the names, tags
+ * and image keys the records point to. Both are read through MappedByteBuffers.
+ * <p>
+ * Each record points to the record of the change before it to the same image, and an index held in memory maps the
+ * key of every image to its latest record, so reading the k changes of an image only reads those k records. Records
+ * are appended in order of time, so the changes between two times are found with a binary search. The index is built
+ * again from the records when the log is opened. An image is keyed by its file key (ie. device and inode) if it has
+ * one, which stays the same when it is renamed, and by its path otherwise; a record holds the key of the image before
+ * and after the change, so an image keyed by its path is followed across renames as well.
+ * <p>
+ * Changes older than the retention window are compacted away: all of the changes an image had before then are
+ * collapsed into a single checkpoint record, from its name and tags before the first of them to those after the last,
+ * and the newer records are kept as they are. Compaction writes new files next to the old ones and moves them into
+ * place, and both files carry the generation of the compaction that wrote them, so a compaction cut short by a crash
+ * is either finished or thrown away when the log is next opened. The LogAppender compacts the shared HistoryLog from
+ * its thread, and only once the log has doubled in size since it was last compacted.
+ * <p>
+ * A record or string cut short by a crash is dropped when the log is opened. Every public method is synchronized; the
+ * LogAppender appends to the shared HistoryLog from its thread.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class HistoryLog {
+
+    /**
+     * Version of the file formats, written at the start of both files.
+     */
+    private static final int version = 2;
+
+    /**
+     * Bytes of the version and the generation at the start of each file.
+     */
+    private static final int headerSize = 8;
+
+    /**
+     * Milliseconds changes are kept for before they are collapsed into a checkpoint (ie. 30 days).
+     */
+    static final long retention = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Fewest records the log has before it is compacted.
+     */
+    private static final int minimumToCompact = 1024;
+
+    /**
+     * Suffix of the files a compaction writes before they are moved into place.
+     */
+    private static final String compactSuffix = ".compact";
+
+    /**
+     * Bytes of each record: time, previous record, old and new key, old and new name, old and new tags.
+     */
+    private static final int recordSize = 36;
+
+    /**
+     * Offset in a record of the index of the record before it to the same image.
+     */
+    private static final int prevField = 8;
+
+    /**
+     * Offset in a record of the key of the image before the change.
+     */
+    private static final int oldKeyField = 12;
+
+    /**
+     * Offset in a record of the key of the image after the change.
+     */
+    private static final int newKeyField = 16;
+
+    /**
+     * Offset in a record of the name of the image before the change.
+     */
+    private static final int oldNameField = 20;
+
+    /**
+     * Offset in a record of the name of the image after the change.
+     */
+    private static final int newNameField = 24;
+
+    /**
+     * Offset in a record of the tags of the image before the change.
+     */
+    private static final int oldTagsField = 28;
+
+    /**
+     * Offset in a record of the tags of the image after the change.
+     */
+    private static final int newTagsField = 32;
+
+    /**
+     * Marks a record that has no record before it.
+     */
+    private static final int none = -1;
+
+    /**
+     * Separates the Tag names of a set of tags in the string file.
+     */
+    private static final char tagSeparator = '\0';
+
+    /**
+     * The HistoryLog shared by the whole program.
+     */
+    private static final HistoryLog historyLog = new HistoryLog(Main.historyRecords, Main.historyStrings);
+
+    /**
+     * Path of the record file.
+     */
+    private final String recordPath;
+
+    /**
+     * Path of the string file.
+     */
+    private final String stringPath;
+
+    /**
+     * Index of the latest record of each image, keyed by the key of the image.
+     */
+    private final HashMap<String, Integer> latest;
+
+    /**
+     * Offset in the string file of each set of tags written, so that a set is only written once.
+     */
+    private final HashMap<TagSet, Integer> tagSetIds;
+
+    /**
+     * Channel of the record file, or null if the log isn't open.
+     */
+    private FileChannel records;
+
+    /**
+     * Channel of the string file, or null if the log isn't open.
+     */
+    private FileChannel strings;
+
+    /**
+     * Read-only mapping of the record file, or null if it isn't mapped.
+     */
+    private MappedByteBuffer recordView;
+
+    /**
+     * Read-only mapping of the string file, or null if it isn't mapped.
+     */
+    private MappedByteBuffer stringView;
+
+    /**
+     * Number of records.
+     */
+    private int count;
+
+    /**
+     * Length of the string file.
+     */
+    private long stringsLength;
+
+    /**
+     * Time of the latest record.
+     */
+    private long lastTime;
+
+    /**
+     * Generation of the open files, which goes up with each compaction.
+     */
+    private int generation;
+
+    /**
+     * Number of records after the last compaction, or 0 if the log hasn't been compacted since it was opened.
+     */
+    private int compactedCount;
+
+    /**
+     * Constructs a new HistoryLog kept in the files at the given paths. The files are opened when the log is first
+     * used.
+     *
+     * @param recordPath path of the record file
+     * @param stringPath path of the string file
+     */
+    HistoryLog(String recordPath, String stringPath) {
+        this.recordPath = recordPath;
+        this.stringPath = stringPath;
+        this.latest = new HashMap<>();
+        this.tagSetIds = new HashMap<>();
+    }
+
+    /**
+     * Returns the HistoryLog shared by the whole program.
+     *
+     * @return the shared HistoryLog
+     */
+    public static HistoryLog getHistoryLog() {
+        return historyLog;
+    }
+
+    /**
+     * Returns the key the history of an image with the given file key and file is kept under.
+     *
+     * @param fileKey the file key of the image, or null if it doesn't have one
+     * @param file    the file of the image
+     * @return the file key if there is one, and the absolute path of the file otherwise
+     */
+    static String keyOf(String fileKey, File file) {
+        return (fileKey != null) ? fileKey : file.getAbsolutePath();
+    }
+
+    /**
+     * Appends a record for each of the given Logs, all made at the given time. Logs without image keys are skipped.
+     * Nothing is forced to disk; see force.
+     *
+     * @param logs the Logs to append
+     * @param time when the changes were made, in milliseconds
+     * @throws IOException if the log can't be written
+     */
+    public synchronized void append(ArrayList<Log> logs, long time) throws IOException {
+        open();
+        // Records are kept in order of time even if the clock goes back.
+        time = Math.max(time, lastTime);
+        ByteArrayOutputStream newStrings = new ByteArrayOutputStream();
+        ByteBuffer newRecords = ByteBuffer.allocate(logs.size() * recordSize);
+        HashMap<String, Integer> pendingKeys = new HashMap<>();
+        int added = 0;
+        for (Log log : logs) {
+            if (log.getOldKey() == null || log.getNewKey() == null)
+                continue;
+            Integer previous = pendingKeys.containsKey(log.getOldKey()) ? pendingKeys.get(log.getOldKey())
+                    : latest.get(log.getOldKey());
+            int prev = (previous == null) ? none : previous;
+            int oldKey = reuse(prev, newKeyField, log.getOldKey(), newStrings, newRecords);
+            int newKey = log.getNewKey().equals(log.getOldKey()) ? oldKey
+                    : addString(log.getNewKey(), newStrings);
+            int oldName = reuse(prev, newNameField, log.getOldName(), newStrings, newRecords);
+            int newName = addString(log.getNewName(), newStrings);
+            int oldTags = addTagSet(log.getOldTagSet(), newStrings);
+            int newTags = addTagSet(log.getNewTagSet(), newStrings);
+            newRecords.putLong(time).putInt(prev).putInt(oldKey).putInt(newKey).putInt(oldName).putInt(newName)
+                    .putInt(oldTags).putInt(newTags);
+            if (!log.getNewKey().equals(log.getOldKey()))
+                pendingKeys.put(log.getOldKey(), null);
+            pendingKeys.put(log.getNewKey(), count + added);
+            added++;
+        }
+        if (added == 0)
+            return;
+        // The strings go first, so that a record never points past the end of the string file.
+        writeFully(strings, ByteBuffer.wrap(newStrings.toByteArray()), stringsLength);
+        stringsLength += newStrings.size();
+        newRecords.flip();
+        writeFully(records, newRecords, headerSize + (long) count * recordSize);
+        count += added;
+        lastTime = time;
+        for (String key : pendingKeys.keySet()) {
+            Integer index = pendingKeys.get(key);
+            if (index == null)
+                latest.remove(key);
+            else
+                latest.put(key, index);
+        }
+    }
+
+    /**
+     * Forces what was appended to disk.
+     *
+     * @throws IOException if the files can't be forced
+     */
+    public synchronized void force() throws IOException {
+        if (records == null)
+            return;
+        strings.force(false);
+        records.force(false);
+    }
+
+    /**
+     * Returns every change made to the given ImageFile, oldest first, read from the log.
+     *
+     * @param imageFile the ImageFile
+     * @return the Logs of the changes, each with the time it was made
+     */
+    public synchronized ArrayList<Log> getHistory(ImageFile imageFile) {
+        ArrayList<Log> history = new ArrayList<>();
+        try {
+            open();
+            Integer index = latest.get(keyOf(imageFile.getFileKey(), imageFile.getImageFile()));
+            if (index == null && imageFile.getFileKey() != null)
+                index = latest.get(keyOf(null, imageFile.getImageFile()));
+            for (int i = (index == null) ? none : index; i != none; i = recordView().getInt(offsetOf(i) + prevField)) {
+                history.add(readLog(i));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Returns every change made from the first given time up to but not including the second, oldest first.
+     *
+     * @param from the earliest time, in milliseconds
+     * @param to   the time after the latest, in milliseconds
+     * @return the Logs of the changes, each with the time it was made
+     */
+    public synchronized ArrayList<Log> getHistory(long from, long to) {
+        ArrayList<Log> history = new ArrayList<>();
+        try {
+            open();
+            for (int i = firstAtOrAfter(from); i < count && timeOf(i) < to; i++) {
+                history.add(readLog(i));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return history;
+    }
+
+    /**
+     * Returns the number of records in the log.
+     *
+     * @return the number of records
+     */
+    public synchronized int size() {
+        try {
+            open();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return count;
+    }
+
+    /**
+     * Compacts the log if it has at least doubled in size since it was last compacted.
+     *
+     * @param before the time in milliseconds before which changes are collapsed
+     */
+    public synchronized void compactIfNeeded(long before) {
+        try {
+            open();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (count >= Math.max(minimumToCompact, 2 * compactedCount))
+            compact(before);
+    }
+
+    /**
+     * Collapses the changes every image had before the given time into a single checkpoint record each, and rewrites
+     * the log with the checkpoints followed by the newer records.
+     *
+     * @param before the time in milliseconds before which changes are collapsed
+     */
+    public synchronized void compact(long before) {
+        try {
+            open();
+            int cut = firstAtOrAfter(before);
+            // The first and last record of each image before the cut, keyed by the key of the image after the last.
+            HashMap<String, int[]> chains = new HashMap<>();
+            for (int i = 0; i < cut; i++) {
+                ByteBuffer view = recordView();
+                String oldKey = readString(view.getInt(offsetOf(i) + oldKeyField));
+                String newKey = readString(view.getInt(offsetOf(i) + newKeyField));
+                int[] chain = chains.remove(oldKey);
+                if (chain == null)
+                    chain = new int[]{i, i};
+                chain[1] = i;
+                chains.put(newKey, chain);
+            }
+            compactedCount = count;
+            if (chains.size() == cut)
+                return;
+            ArrayList<int[]> checkpoints = new ArrayList<>(chains.values());
+            checkpoints.sort((first, second) -> Integer.compare(first[1], second[1]));
+            writeCompacted(checkpoints, cut);
+            compactedCount = count;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the given checkpoints and the records from the given index on to new files, and moves them into place.
+     *
+     * @param checkpoints the first and last record collapsed into each checkpoint, in order of the last
+     * @param cut         index of the first record kept as it is
+     * @throws IOException if the files can't be written
+     */
+    private void writeCompacted(ArrayList<int[]> checkpoints, int cut) throws IOException {
+        File recordFile = new File(recordPath + compactSuffix);
+        File stringFile = new File(stringPath + compactSuffix);
+        int[] newIndex = new int[count];
+        Arrays.fill(newIndex, none);
+        HashMap<Integer, Integer> newIds = new HashMap<>();
+        try (DataOutputStream recordOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(recordFile)));
+             DataOutputStream stringOut = new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(stringFile)))) {
+            recordOut.writeInt(version);
+            recordOut.writeInt(generation + 1);
+            stringOut.writeInt(version);
+            stringOut.writeInt(generation + 1);
+            int written = 0;
+            ByteBuffer view = recordView();
+            for (int[] checkpoint : checkpoints) {
+                int first = offsetOf(checkpoint[0]);
+                int last = offsetOf(checkpoint[1]);
+                recordOut.writeLong(view.getLong(last));
+                recordOut.writeInt(none);
+                for (int field = oldKeyField; field < recordSize; field += 8) {
+                    recordOut.writeInt(copyString(view.getInt(first + field), newIds, stringOut));
+                    recordOut.writeInt(copyString(view.getInt(last + field + 4), newIds, stringOut));
+                }
+                newIndex[checkpoint[1]] = written++;
+            }
+            for (int i = cut; i < count; i++) {
+                int offset = offsetOf(i);
+                int prev = view.getInt(offset + prevField);
+                recordOut.writeLong(view.getLong(offset));
+                recordOut.writeInt((prev == none) ? none : newIndex[prev]);
+                for (int field = oldKeyField; field < recordSize; field += 4) {
+                    recordOut.writeInt(copyString(view.getInt(offset + field), newIds, stringOut));
+                }
+                newIndex[i] = written++;
+            }
+        }
+        try (FileChannel channel = new RandomAccessFile(recordFile, "rw").getChannel()) {
+            channel.force(true);
+        }
+        try (FileChannel channel = new RandomAccessFile(stringFile, "rw").getChannel()) {
+            channel.force(true);
+        }
+        close();
+        // The string file goes first; open finishes moving the record file if this is cut short in between.
+        Files.move(stringFile.toPath(), new File(stringPath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.move(recordFile.toPath(), new File(recordPath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    /**
+     * Copies the string at the given offset of the string file to the end of a new string file, unless it was copied
+     * before.
+     *
+     * @param id        offset of the string in the string file
+     * @param newIds    offset in the new string file of each string copied so far
+     * @param stringOut the new string file
+     * @return offset of the string in the new string file
+     * @throws IOException if a string file can't be read or written
+     */
+    private int copyString(int id, HashMap<Integer, Integer> newIds, DataOutputStream stringOut) throws IOException {
+        Integer newId = newIds.get(id);
+        if (newId != null)
+            return newId;
+        byte[] bytes = readString(id).getBytes(StandardCharsets.UTF_8);
+        newId = stringOut.size();
+        stringOut.writeInt(bytes.length);
+        stringOut.write(bytes);
+        newIds.put(id, newId);
+        return newId;
+    }
+
+    /**
+     * Closes the files of the log. The log is opened again when it is next used.
+     */
+    public synchronized void close() {
+        try {
+            if (records != null) {
+                force();
+                records.close();
+                strings.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        records = null;
+        strings = null;
+        recordView = null;
+        stringView = null;
+        latest.clear();
+        tagSetIds.clear();
+    }
+
+    /**
+     * Opens the files of the log, unless they are open, dropping whatever was cut short at their ends and building the
+     * index of the latest record of each image.
+     *
+     * @throws IOException if the files can't be opened
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void open() throws IOException {
+        if (records != null)
+            return;
+        new File(recordPath).getParentFile().mkdirs();
+        finishCompaction();
+        records = new RandomAccessFile(recordPath, "rw").getChannel();
+        strings = new RandomAccessFile(stringPath, "rw").getChannel();
+        generation = generationOf(records);
+        compactedCount = 0;
+        if (generation < 0 || generation != generationOf(strings)) {
+            // A new log, or one in another format, is started over.
+            generation = 0;
+            startFile(records, generation);
+            startFile(strings, generation);
+        }
+        stringsLength = strings.size();
+        count = (int) ((records.size() - headerSize) / recordSize);
+        recordView = null;
+        stringView = null;
+        lastTime = 0;
+        for (int i = 0; i < count; i++) {
+            int offset = offsetOf(i);
+            ByteBuffer view = recordView();
+            boolean valid = view.getInt(offset + prevField) < i;
+            for (int field = oldKeyField; field < recordSize && valid; field += 4) {
+                valid = view.getInt(offset + field) + 4 <= stringsLength;
+            }
+            if (!valid) {
+                count = i;
+                break;
+            }
+            String oldKey = readString(view.getInt(offset + oldKeyField));
+            String newKey = readString(view.getInt(offset + newKeyField));
+            if (!newKey.equals(oldKey))
+                latest.remove(oldKey);
+            latest.put(newKey, i);
+            lastTime = view.getLong(offset);
+        }
+        records.truncate(headerSize + (long) count * recordSize);
+        recordView = null;
+    }
+
+    /**
+     * Finishes a compaction that was cut short after the new string file was moved into place, by moving the new
+     * record file into place as well, and otherwise throws away the files of a compaction that was cut short.
+     *
+     * @throws IOException if the files can't be read or moved
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void finishCompaction() throws IOException {
+        File recordFile = new File(recordPath + compactSuffix);
+        File stringFile = new File(stringPath + compactSuffix);
+        if (recordFile.isFile() && !stringFile.exists()) {
+            int recordGeneration;
+            int stringGeneration;
+            try (FileChannel channel = new RandomAccessFile(recordFile, "r").getChannel()) {
+                recordGeneration = generationOf(channel);
+            }
+            try (FileChannel channel = new RandomAccessFile(stringPath, "rw").getChannel()) {
+                stringGeneration = generationOf(channel);
+            }
+            if (recordGeneration >= 0 && recordGeneration == stringGeneration) {
+                Files.move(recordFile.toPath(), new File(recordPath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        recordFile.delete();
+        stringFile.delete();
+    }
+
+    /**
+     * Returns the generation the given file was written in, if it starts with the version of the format.
+     *
+     * @param channel the file
+     * @return the generation, or -1 if the file is new or in another format
+     * @throws IOException if the file can't be read
+     */
+    private static int generationOf(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        if (channel.read(header, 0) != headerSize || header.getInt(0) != version)
+            return -1;
+        return header.getInt(4);
+    }
+
+    /**
+     * Empties the given file and writes the version of the format and the given generation to it.
+     *
+     * @param channel    the file
+     * @param generation the generation
+     * @throws IOException if the file can't be written
+     */
+    private static void startFile(FileChannel channel, int generation) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(0, version);
+        header.putInt(4, generation);
+        writeFully(channel, header, 0);
+    }
+
+    /**
+     * Writes all of the given buffer to the given file at the given position.
+     *
+     * @param channel  the file
+     * @param buffer   the bytes to write
+     * @param position position to write at
+     * @throws IOException if the file can't be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    /**
+     * Returns the offset in the string file held by a field of the given record, if it is that of the given string, so
+     * that a string that didn't change isn't written again; and otherwise adds the string.
+     *
+     * @param record     index of the record, or none
+     * @param field      offset of the field in the record
+     * @param string     the string
+     * @param newStrings the strings being added
+     * @param newRecords the records being added
+     * @return offset of the string in the string file
+     * @throws IOException if the string file can't be read
+     */
+    private int reuse(int record, int field, String string, ByteArrayOutputStream newStrings, ByteBuffer newRecords)
+            throws IOException {
+        if (record != none) {
+            int id = (record < count) ? recordView().getInt(offsetOf(record) + field)
+                    : newRecords.getInt((record - count) * recordSize + field);
+            if (string.equals(readString(id, newStrings)))
+                return id;
+        }
+        return addString(string, newStrings);
+    }
+
+    /**
+     * Adds the given string to the strings being added.
+     *
+     * @param string     the string
+     * @param newStrings the strings being added
+     * @return offset the string will have in the string file
+     */
+    private int addString(String string, ByteArrayOutputStream newStrings) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        int id = (int) (stringsLength + newStrings.size());
+        newStrings.write(bytes.length >>> 24);
+        newStrings.write(bytes.length >>> 16);
+        newStrings.write(bytes.length >>> 8);
+        newStrings.write(bytes.length);
+        newStrings.write(bytes, 0, bytes.length);
+        return id;
+    }
+
+    /**
+     * Adds the names of the Tags in the given TagSet to the strings being added, unless the same TagSet was written
+     * before.
+     *
+     * @param tagSet     the TagSet
+     * @param newStrings the strings being added
+     * @return offset of the names in the string file
+     */
+    private int addTagSet(TagSet tagSet, ByteArrayOutputStream newStrings) {
+        Integer id = tagSetIds.get(tagSet);
+        if (id != null)
+            return id;
+        StringBuilder names = new StringBuilder();
+        for (Tag tag : tagSet.toTags()) {
+            if (names.length() != 0)
+                names.append(tagSeparator);
+            names.append(tag.getName());
+        }
+        id = addString(names.toString(), newStrings);
+        tagSetIds.put(tagSet, id);
+        return id;
+    }
+
+    /**
+     * Reads the given record as a Log.
+     *
+     * @param index index of the record
+     * @return the Log, with its time and image keys
+     * @throws IOException if the files can't be read
+     */
+    private Log readLog(int index) throws IOException {
+        ByteBuffer view = recordView();
+        int offset = offsetOf(index);
+        Log log = new Log(readString(view.getInt(offset + oldNameField)),
+                readString(view.getInt(offset + newNameField)), readTagSet(view.getInt(offset + oldTagsField)),
+                readTagSet(view.getInt(offset + newTagsField)));
+        log.setKeys(readString(view.getInt(offset + oldKeyField)), readString(view.getInt(offset + newKeyField)));
+        log.setTime(view.getLong(offset));
+        return log;
+    }
+
+    /**
+     * Reads the set of tags at the given offset of the string file.
+     *
+     * @param id offset of the names of the Tags
+     * @return the shared TagSet of the Tags
+     * @throws IOException if the string file can't be read
+     */
+    private TagSet readTagSet(int id) throws IOException {
+        String names = readString(id);
+        if (names.isEmpty())
+            return TagSet.empty;
+        ArrayList<Tag> tags = new ArrayList<>();
+        int start = 0;
+        for (int end = names.indexOf(tagSeparator); end >= 0; end = names.indexOf(tagSeparator, start)) {
+            tags.add(new Tag(names.substring(start, end)));
+            start = end + 1;
+        }
+        tags.add(new Tag(names.substring(start)));
+        TagSet tagSet = TagSet.of(tags);
+        tagSetIds.putIfAbsent(tagSet, id);
+        return tagSet;
+    }
+
+    /**
+     * Reads the string at the given offset of the string file.
+     *
+     * @param id offset of the string
+     * @return the string
+     * @throws IOException if the string file can't be read
+     */
+    private String readString(int id) throws IOException {
+        if (stringView == null || id + 4 > stringView.capacity())
+            stringView = strings.map(FileChannel.MapMode.READ_ONLY, 0, stringsLength);
+        int length = stringView.getInt(id);
+        if (id + 4 + length > stringView.capacity())
+            stringView = strings.map(FileChannel.MapMode.READ_ONLY, 0, stringsLength);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = stringView.duplicate();
+        view.position(id + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the string at the given offset, which may be in the string file or among the strings being added.
+     *
+     * @param id         offset of the string
+     * @param newStrings the strings being added
+     * @return the string
+     * @throws IOException if the string file can't be read
+     */
+    private String readString(int id, ByteArrayOutputStream newStrings) throws IOException {
+        if (id < stringsLength)
+            return readString(id);
+        ByteBuffer pending = ByteBuffer.wrap(newStrings.toByteArray());
+        int start = (int) (id - stringsLength);
+        return new String(pending.array(), start + 4, pending.getInt(start), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the mapping of the record file, mapping it again if records were appended since it was mapped.
+     *
+     * @return the mapped records
+     * @throws IOException if the record file can't be mapped
+     */
+    private ByteBuffer recordView() throws IOException {
+        long size = headerSize + (long) count * recordSize;
+        if (recordView == null || recordView.capacity() < size)
+            recordView = records.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return recordView;
+    }
+
+    /**
+     * Returns the offset of the given record in the record file.
+     *
+     * @param index index of the record
+     * @return offset of the record
+     */
+    private static int offsetOf(int index) {
+        return headerSize + index * recordSize;
+    }
+
+    /**
+     * Returns the time of the given record.
+     *
+     * @param index index of the record
+     * @return the time in milliseconds
+     * @throws IOException if the record file can't be mapped
+     */
+    private long timeOf(int index) throws IOException {
+        return recordView().getLong(offsetOf(index));
+    }
+
+    /**
+     * Returns the index of the first record made at or after the given time.
+     *
+     * @param time the time in milliseconds
+     * @return index of the record, or the number of records if there is none
+     * @throws IOException if the record file can't be mapped
+     */
+    private int firstAtOrAfter(long time) throws IOException {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timeOf(middle) < time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
@@ -1,32 +1,80 @@
 package models;
 
-import views.Main;
-
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
 import java.io.File;
 
 /**
  * The ImageFile class implements Serializable. ImageFile constructs a new image and stores all the previous tags in
- * Log objects inside the ArrayList imageLog, and stores the new tags in an ArrayList called currentTags.
+ * Log objects, and stores its current tags in a shared TagSet called tags.
+ * <p>
+ * The Logs aren't held or saved by the ImageFile: they are only kept in the HistoryLog, and read from there through
+ * the HistoryCache when they are asked for, so the saved directories don't grow with the history. An imageLog saved
+ * with the directories by an earlier version is moved to the HistoryLog when they are loaded.
  *
  * @author Cici Zhang
  * @version 2.0
  */
 public class ImageFile extends File implements Serializable {
 
+    /**
+     * Serialization version of ImageFile, kept at the version the first release saved. Fields added since then are
+     * left at their defaults when an older file is read.
+     */
+    private static final long serialVersionUID = 5862716727711103061L;
+
+    /**
+     * Catalog flag set when the file this ImageFile manipulates has a different name from the one it was created with.
+     */
+    private static final int renamedFlag = 1;
+
+    /**
+     * Catalog flag set when the file this ImageFile manipulates is in a different directory from the one it was
+     * created in.
+     */
+    private static final int movedFlag = 2;
+
+    /**
+     * Catalog flag set when the current name doesn't start with the base name, so it is written whole.
+     */
+    private static final int fullNameFlag = 4;
+
+    /**
+     * Catalog flag set when the current name is the base name followed by the current Tags and the extension, so it
+     * is written as the Tags in the order they are named, and the Tags aren't written again.
+     */
+    private static final int taggedNameFlag = 8;
+
+    /**
+     * Catalog flag set when this ImageFile was created in a different directory from the one it is written with.
+     */
+    private static final int otherDirectoryFlag = 16;
+
     /**
      * A File for this ImageFile to manipulate.
      */
     public File imageFile;
 
     /**
-     * ArrayList of Log objects that tracks the past and current Tags of this ImageFile object.
+     * ArrayList of Log objects that tracks the past and current Tags of this ImageFile object as an earlier version
+     * saved it, or null once it has been moved to the HistoryLog.
      */
     private ArrayList<Log> imageLog;
 
     /**
-     * ArrayList of Tag objects that this ImageFile object is currently tagged with.
+     * The shared TagSet of the Tag objects that this ImageFile object is currently tagged with. It holds the interned
+     * IDs of the Tags, which are only valid while the program runs, so the Tag names are serialized instead.
+     */
+    private transient TagSet tags;
+
+    /**
+     * ArrayList of Tag objects that this ImageFile object is currently tagged with. Only filled in while this
+     * ImageFile is being serialized, so that saved files keep the same format.
      */
     private ArrayList<Tag> currentTags;
 
@@ -41,8 +89,34 @@ public class ImageFile extends File implements Serializable {
     private final String extension;
 
     /**
-     * Constructs a new image with imageLog that keeps track of all past changes of Tags, currentTags that keeps
-     * track of all the current Tags on the image. And takes in a parameter called path which is the path
+     * Size of this ImageFile in bytes, as read when it was scanned.
+     */
+    private long fileSize;
+
+    /**
+     * Last modified time of this ImageFile in milliseconds, as read when it was scanned.
+     */
+    private long modifiedTime;
+
+    /**
+     * String form of the key that identifies this ImageFile on its file system (ie. device and inode), or null if the
+     * file system doesn't provide one.
+     */
+    private String fileKey;
+
+    /**
+     * Width of this ImageFile in pixels as shown, read from its header when it was scanned, or 0 if unknown.
+     */
+    private int width;
+
+    /**
+     * Height of this ImageFile in pixels as shown, read from its header when it was scanned, or 0 if unknown.
+     */
+    private int height;
+
+    /**
+     * Constructs a new image with tags that keeps track of all the current Tags on the image, whose past changes of
+     * Tags are kept in the HistoryLog. And takes in a parameter called path which is the path
      * of the image on the computer.
      *
      * @param path The path of the image on the computer. Calls to the super method in the File class.
@@ -52,96 +126,163 @@ public class ImageFile extends File implements Serializable {
     public ImageFile(String path) {
         super(path);
         this.imageFile = new File(path);
-        this.imageLog = new ArrayList<>();
-        this.currentTags = new ArrayList<>();
-        this.baseName = this.imageFile.getName().substring(0, this.imageFile.getName().lastIndexOf('.'));
-        this.extension = this.imageFile.getName().substring(this.imageFile.getName().lastIndexOf('.'));
+        this.tags = TagSet.empty;
+        String name = this.imageFile.getName();
+        this.baseName = name.substring(0, name.lastIndexOf('.'));
+        this.extension = name.substring(name.lastIndexOf('.'));
+    }
+
+    /**
+     * Constructs an image read from a catalog, whose base name and extension are already known.
+     *
+     * @param parent    path of the directory the image was created in, or null
+     * @param name      name the image was created with
+     * @param baseName  base name of the image
+     * @param extension extension of the image
+     */
+    private ImageFile(String parent, String name, String baseName, String extension) {
+        super(parent, name);
+        this.imageFile = new File(getPath());
+        this.tags = TagSet.empty;
+        this.baseName = baseName;
+        this.extension = extension;
     }
 
     /**
-     * Adds an ArrayList of additional Tag objects to currentTags. It checks if there is already an existing tag
-     * inside newTags, if so it will delete it from newTags. After checking all new tags, it will update the imageLog
-     * and add the currentTags with newTags
+     * Adds an ArrayList of additional Tag objects to the current tags. Tags this ImageFile already has and repeated
+     * tags are ignored. If any tags are left, it will update the imageLog and rename the file.
      *
-     * @param additionalTags An ArrayList of Tag objects that we want to add to the already existing currentTags
+     * @param additionalTags An ArrayList of Tag objects that we want to add to the already existing current tags
      * @see Tag
      * @see Log
      */
     public void addTag(ArrayList<Tag> additionalTags) {
-        ArrayList<Tag> nonRepeatingInputs = new ArrayList<>();
-        for (int i = 0; i < additionalTags.size(); i++) {
-            boolean exists = true;
-            if (nonRepeatingInputs.size() != 0) {
-                for (int j = 0; j < nonRepeatingInputs.size(); j++)
-                    if (!additionalTags.get(i).getName().equals(nonRepeatingInputs.get(j).getName()))
-                        exists = false;
-            } else nonRepeatingInputs.add(additionalTags.get(i));
-            if (!exists) nonRepeatingInputs.add(additionalTags.get(i));
-        }
-        ArrayList<Tag> repeats = new ArrayList<>();
-        for (Tag tag : nonRepeatingInputs) {
-            if (this.currentTags.contains(tag)) {
-                repeats.add(tag);
-            }
-        }
-        nonRepeatingInputs.removeAll(repeats);
-
-        ArrayList<Tag> newTags = new ArrayList<>(this.currentTags);
-        if (nonRepeatingInputs.size() != 0) {
-            newTags.addAll(nonRepeatingInputs);
-            renameFile(newTags);
+        int[] newTagIds = union(this.tags.getIds(), toIds(additionalTags));
+        if (newTagIds.length != this.tags.size()) {
+            renameFile(TagSet.of(newTagIds), additionalTags);
         }
     }
 
     /**
-     * Deletes an ArrayList of Tags the user wants to delete from currentTags, and documents the change in the
+     * Deletes an ArrayList of Tags the user wants to delete from the current tags, and documents the change in the
      * imageLog.
      *
-     * @param deletedTags An ArrayList of tags the user wants to delete from the currentTags
+     * @param deletedTags An ArrayList of tags the user wants to delete from the current tags
      * @see Log
      * @see Tag
      */
     public void deleteTag(ArrayList<Tag> deletedTags) {
-        ArrayList<Tag> newTags = new ArrayList<>(this.currentTags);
-        newTags.removeAll(deletedTags);
-        renameFile(newTags);
+        int[] newTagIds = difference(this.tags.getIds(), toIds(deletedTags));
+        if (newTagIds.length != this.tags.size()) {
+            renameFile(TagSet.of(newTagIds), new ArrayList<>());
+        }
     }
 
     /**
-     * Renames this ImageFile to include the Tag Names in updatedTags.
+     * Renames this ImageFile to include the names of the Tags in the given TagSet. The rename goes through the
+     * RenameJournal, and the current Tags, the imageLog and the master log are only updated once the file has been
+     * renamed on disk.
      *
-     * @param updatedTags ArrayList of Tag objects of which the names will be added to the current ImageFile name
+     * @param updatedTags TagSet of the Tag objects of which the names will be added to the current ImageFile name
+     * @param order       Tags in the order they are named after the ones already in the name
      */
-    private void renameFile(ArrayList<Tag> updatedTags) {
-        ArrayList<Tag> oldTags = new ArrayList<>(currentTags);
-        currentTags = updatedTags;
-        String newName = generateNewName(updatedTags);
-        ArrayList<Tag> newTags = new ArrayList<>(currentTags);
-        Log newLog = new Log(this.imageFile.getName(), newName, oldTags, newTags);
-        imageLog.add(newLog);
-        newLog.writeToLogFile(new File(Main.logPath));
-        File dest = new File(this.imageFile.getParent(), newName);
-        boolean success = this.imageFile.renameTo(dest);
-        if (success)
-            this.imageFile = dest;
+    private void renameFile(TagSet updatedTags, ArrayList<Tag> order) {
+        File dest = new File(this.imageFile.getParent(), generateNewName(updatedTags, order));
+        ArrayList<File> sources = new ArrayList<>(1);
+        ArrayList<File> destinations = new ArrayList<>(1);
+        sources.add(this.imageFile);
+        destinations.add(dest);
+        RenameJournal journal = RenameJournal.getRenameJournal();
+        long batch;
+        try {
+            batch = journal.begin(sources, destinations);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        boolean success = RenameJournal.move(this.imageFile, dest);
+        journal.commit(batch, new boolean[]{success});
+        if (success) {
+            Log newLog = new Log(this.imageFile.getName(), dest.getName(), tags, updatedTags);
+            newLog.setKeys(HistoryLog.keyOf(fileKey, this.imageFile), HistoryLog.keyOf(fileKey, dest));
+            applyRename(dest, updatedTags, newLog);
+            LogAppender.getLogAppender().append(newLog, () -> journal.finish(batch));
+        } else {
+            journal.finish(batch);
+        }
     }
 
     /**
-     * Helper method for renameFile that generates what the new name of this ImageFile should be.
+     * Makes this ImageFile the file it was renamed to with the Tags in the given TagSet, and adds the Log of the
+     * change to its imageLog. Used by TagBatch once the file has been renamed on disk.
      *
-     * @param updatedTags ArrayList of Tag objects of which the names will be added to current name of the ImageFile
+     * @param dest        the file this ImageFile was renamed to
+     * @param updatedTags TagSet of the Tags in its new name
+     * @param log         the Log of the change
+     */
+    void applyRename(File dest, TagSet updatedTags, Log log) {
+        int[] oldTagIds = tags.getIds();
+        tags = updatedTags;
+        TagIndex.getTagIndex().update(this, oldTagIds, tags.getIds());
+        if (imageLog != null)
+            imageLog.add(log);
+        else
+            HistoryCache.getHistoryCache().add(this, log);
+        this.imageFile = dest;
+    }
+
+    /**
+     * Helper method for renameFile that generates what the new name of this ImageFile should be. The Tags already in
+     * the current name keep their order, and the others are named after them: first in the given order, then any
+     * left in the order of their IDs.
+     *
+     * @param updatedTags TagSet of the Tag objects of which the names will be added to current name of the ImageFile
+     * @param order       Tags in the order they are named after the ones already in the name
      * @return String of the new name of this ImageFile
      */
-    private String generateNewName(ArrayList<Tag> updatedTags) {
+    String generateNewName(TagSet updatedTags, ArrayList<Tag> order) {
+        ArrayList<Tag> candidates = namedTags(this.imageFile.getName());
+        candidates.addAll(order);
+        candidates.addAll(updatedTags.toTags());
+        ArrayList<Tag> named = new ArrayList<>(updatedTags.size());
+        for (Tag tag : candidates) {
+            if (updatedTags.contains(tag) && !named.contains(tag))
+                named.add(tag);
+        }
         StringBuilder sb = new StringBuilder();
         int i = 0;
-        while (i < updatedTags.size()) {
-            sb.append(" ").append(updatedTags.get(i).toString());
+        while (i < named.size()) {
+            sb.append(" ").append(named.get(i).toString());
             i++;
         }
         return this.baseName + sb.toString() + this.extension;
     }
 
+    /**
+     * Returns the interned Tags named in the given file name (ie. the " @tag1 @tag2" before the extension), in the
+     * order they are named. Names that aren't interned are left out.
+     *
+     * @param name the file name
+     * @return ArrayList of the Tags in the name
+     */
+    static ArrayList<Tag> namedTags(String name) {
+        ArrayList<Tag> tags = new ArrayList<>();
+        int end = name.lastIndexOf('.');
+        if (end < 0)
+            end = name.length();
+        int start = name.indexOf(" @");
+        while (start >= 0 && start < end) {
+            int next = name.indexOf(" @", start + 2);
+            if (next < 0 || next > end)
+                next = end;
+            Tag tag = TagManager.getInterned(Tag.normalize(name.substring(start + 2, next)));
+            if (tag != null)
+                tags.add(tag);
+            start = (next < end) ? next : -1;
+        }
+        return tags;
+    }
+
     /**
      * Returns a String representation of this ImageFile object using the file name.
      * This method overrides the toString method in the File class which creates a string
@@ -160,26 +301,100 @@ public class ImageFile extends File implements Serializable {
      * @return ArrayList of Tag objects that are currently associated with this ImageFile.
      */
     public ArrayList<Tag> getCurrentTags() {
-        return currentTags;
+        return tags.toTags();
+    }
+
+    /**
+     * Getter for the interned IDs of the current Tags on this ImageFile.
+     *
+     * @return the IDs of the current Tags in increasing order; the array must not be changed
+     */
+    int[] getCurrentTagIds() {
+        return tags.getIds();
+    }
+
+    /**
+     * Getter for the shared TagSet of the current Tags on this ImageFile.
+     *
+     * @return the TagSet of the current Tags
+     */
+    TagSet getTagSet() {
+        return tags;
+    }
+
+    /**
+     * Returns whether this ImageFile is currently tagged with the given Tag.
+     *
+     * @param tag the Tag to look for
+     * @return true if the Tag is one of the current Tags, and false if not
+     */
+    public boolean hasTag(Tag tag) {
+        return tags.contains(tag);
     }
 
     /**
      * Reverts the set of tags on this ImageFile object to an older set
-     * of tags and renames the file to represents these changes
+     * of tags and renames the file to represents these changes. Tags that come back are named in the order they had
+     * in the old name.
      */
     public void revert(Log revertLog) {
-        if (!revertLog.getOldTags().equals(this.currentTags)) {
-            renameFile(revertLog.getOldTags());
+        if (revertLog.getOldTagSet() != this.tags) {
+            renameFile(revertLog.getOldTagSet(), namedTags(revertLog.getOldName()));
+        }
+    }
+
+    /**
+     * Collapses the Logs in the imageLog made before the given time into a single checkpoint Log, which goes from the
+     * name and Tags before the first of them to the name and Tags after the last. Reverting to the checkpoint reverts
+     * to the Tags this ImageFile had before the collapsed changes.
+     *
+     * @param before the time in milliseconds before which changes are collapsed
+     */
+    void compactHistory(long before) {
+        if (imageLog == null)
+            return;
+        int cut = 0;
+        while (cut < imageLog.size() && imageLog.get(cut).getTime() < before) {
+            cut++;
         }
+        if (cut < 2)
+            return;
+        Log first = imageLog.get(0);
+        Log last = imageLog.get(cut - 1);
+        Log checkpoint = new Log(first.getOldName(), last.getNewName(), first.getOldTagSet(), last.getNewTagSet());
+        checkpoint.setTime(last.getTime());
+        imageLog.subList(1, cut).clear();
+        imageLog.set(0, checkpoint);
     }
 
     /**
-     * Returns the imageLog for this ImageFile object
+     * Moves the Logs of a saved imageLog to the given list, with the keys of the image before and after each change,
+     * and stops holding it. Logs are only moved if the HistoryLog has nothing for this
+     * ImageFile yet (ie. they were saved before it was kept).
      *
-     * @return the imageLog for this ImageFile object
+     * @param spilled the list to add the Logs that still have to be appended to the HistoryLog to
+     */
+    void spillHistory(ArrayList<Log> spilled) {
+        if (imageLog == null)
+            return;
+        if (!imageLog.isEmpty() && HistoryLog.getHistoryLog().getHistory(this).isEmpty()) {
+            String parent = this.imageFile.getParent();
+            for (Log log : imageLog) {
+                log.setKeys(HistoryLog.keyOf(fileKey, new File(parent, log.getOldName())),
+                        HistoryLog.keyOf(fileKey, new File(parent, log.getNewName())));
+                spilled.add(log);
+            }
+        }
+        imageLog = null;
+    }
+
+    /**
+     * Returns the imageLog for this ImageFile object, reading it from the HistoryLog if it has been moved there
+     *
+     * @return the imageLog for this ImageFile object; the list must not be changed
      */
     public ArrayList<Log> getImageLog() {
-        return this.imageLog;
+        return (this.imageLog != null) ? this.imageLog : HistoryCache.getHistoryCache().get(this);
     }
 
     /**
@@ -208,8 +423,22 @@ public class ImageFile extends File implements Serializable {
      * @param tagsToAdd new Tags we want to replace old tags with.
      */
     public void setCurrentTags(ArrayList<Tag> tagsToAdd) {
-        this.currentTags.clear();
-        this.currentTags.addAll(tagsToAdd);
+        int[] oldTagIds = this.tags.getIds();
+        this.tags = TagSet.of(tagsToAdd);
+        TagIndex.getTagIndex().update(this, oldTagIds, this.tags.getIds());
+    }
+
+    /**
+     * Sets the base name and the current Tags of this ImageFile to what was parsed from its file name.
+     *
+     * @param baseName the base name without Tags or extension
+     * @param tagIds   sorted IDs of the Tags in the file name
+     */
+    void setParsedName(String baseName, int[] tagIds) {
+        int[] oldTagIds = this.tags.getIds();
+        this.baseName = baseName;
+        this.tags = TagSet.of(tagIds);
+        TagIndex.getTagIndex().update(this, oldTagIds, this.tags.getIds());
     }
 
     /**
@@ -230,6 +459,75 @@ public class ImageFile extends File implements Serializable {
         this.baseName = newName;
     }
 
+    /**
+     * Sets the attributes of this ImageFile that were read when it was scanned.
+     *
+     * @param fileSize     size of the image in bytes
+     * @param modifiedTime last modified time of the image in milliseconds
+     * @param fileKey      key that identifies the image on its file system, or null if there is none
+     */
+    void setAttributes(long fileSize, long modifiedTime, Object fileKey) {
+        this.fileSize = fileSize;
+        this.modifiedTime = modifiedTime;
+        this.fileKey = (fileKey == null) ? null : fileKey.toString();
+    }
+
+    /**
+     * Sets the width and height of this ImageFile that were read from its header.
+     *
+     * @param width  width of the image in pixels as shown
+     * @param height height of the image in pixels as shown
+     */
+    void setDimensions(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the width of this ImageFile in pixels as shown, as read from its header when it was scanned.
+     *
+     * @return width of the image, or 0 if it is unknown
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Returns the height of this ImageFile in pixels as shown, as read from its header when it was scanned.
+     *
+     * @return height of the image, or 0 if it is unknown
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the size of this ImageFile in bytes as read when it was scanned.
+     *
+     * @return size of the image in bytes
+     */
+    public long getFileSize() {
+        return this.fileSize;
+    }
+
+    /**
+     * Returns the last modified time of this ImageFile as read when it was scanned.
+     *
+     * @return last modified time in milliseconds
+     */
+    public long getModifiedTime() {
+        return this.modifiedTime;
+    }
+
+    /**
+     * Returns the key that identifies this ImageFile on its file system, which stays the same when it is renamed.
+     *
+     * @return String form of the file key, or null if the file system doesn't provide one
+     */
+    public String getFileKey() {
+        return this.fileKey;
+    }
+
     /**
      * Returns the extension of the ImageFile object.
      *
@@ -238,7 +536,267 @@ public class ImageFile extends File implements Serializable {
     public String getExtension() {
         return this.extension;
     }
-}
 
+    /**
+     * Returns the sorted, distinct interned IDs of the given Tags.
+     *
+     * @param tags ArrayList of Tag objects
+     * @return the IDs of the Tags in increasing order, without repeats
+     */
+    static int[] toIds(ArrayList<Tag> tags) {
+        int[] ids = new int[tags.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tags.get(i).getId();
+        }
+        Arrays.sort(ids);
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (size == 0 || ids[size - 1] != ids[i])
+                ids[size++] = ids[i];
+        }
+        return (size == ids.length) ? ids : Arrays.copyOf(ids, size);
+    }
 
+    /**
+     * Returns the interned Tags with the given IDs, in the same order.
+     *
+     * @param ids IDs of interned Tags
+     * @return ArrayList of the Tag objects
+     */
+    static ArrayList<Tag> toTags(int[] ids) {
+        ArrayList<Tag> tags = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            tags.add(TagManager.getTag(id));
+        }
+        return tags;
+    }
 
+    /**
+     * Returns the IDs that are in either of two sorted arrays of IDs.
+     *
+     * @param first  sorted IDs
+     * @param second sorted IDs
+     * @return the sorted IDs in first or second
+     */
+    static int[] union(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j]))
+                result[size++] = first[i++];
+            else if (i == first.length || first[i] > second[j])
+                result[size++] = second[j++];
+            else {
+                result[size++] = first[i++];
+                j++;
+            }
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the IDs in one sorted array of IDs that aren't in another.
+     *
+     * @param first  sorted IDs
+     * @param second sorted IDs to leave out
+     * @return the sorted IDs in first but not in second
+     */
+    static int[] difference(int[] first, int[] second) {
+        int[] result = new int[first.length];
+        int j = 0;
+        int size = 0;
+        for (int id : first) {
+            while (j < second.length && second[j] < id) {
+                j++;
+            }
+            if (j == second.length || second[j] != id)
+                result[size++] = id;
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Writes this ImageFile to the given catalog: the path it was created with, the path of the file it manipulates
+     * now, its base name, its current Tags, the attributes read when it was scanned, and its imageLog if it holds one.
+     * Only what can't be worked out from the rest is written: a current name made of the base name, the current Tags
+     * and the extension is written as the Tags in the order they are named, any other current name as what follows
+     * the base name if it starts with it, and the path it was created with and the directory it is in now only if
+     * they are different. The directory it was created in is only written if it isn't the given one.
+     *
+     * @param out       the catalog to write to
+     * @param directory path of the Directory this ImageFile is written with, or null
+     */
+    void writeTo(CatalogOutput out, String directory) {
+        String parent = getParent();
+        String originalName = getName();
+        String currentParent = parent;
+        String name = originalName;
+        int flags = 0;
+        if (!this.imageFile.getPath().equals(getPath())) {
+            currentParent = this.imageFile.getParent();
+            name = this.imageFile.getName();
+            if (!originalName.equals(name))
+                flags |= renamedFlag;
+            if (!Objects.equals(parent, currentParent))
+                flags |= movedFlag;
+        }
+        if (directory == null || !directory.equals(parent))
+            flags |= otherDirectoryFlag;
+        ArrayList<Tag> nameTags = null;
+        if (!name.startsWith(baseName))
+            flags |= fullNameFlag;
+        else if ((nameTags = tagsInName(name.substring(baseName.length()))) != null)
+            flags |= taggedNameFlag;
+        out.writeVarInt(flags);
+        if ((flags & otherDirectoryFlag) != 0)
+            out.writeString(parent);
+        if ((flags & movedFlag) != 0)
+            out.writeString(currentParent);
+        out.writeNumbered(baseName);
+        if (nameTags != null) {
+            out.writeVarInt(nameTags.size());
+            for (Tag tag : nameTags) {
+                out.writeTag(tag);
+            }
+            out.writeString(extension);
+        } else {
+            out.writeString(((flags & fullNameFlag) != 0) ? name : name.substring(baseName.length()));
+        }
+        if ((flags & renamedFlag) != 0)
+            out.writeString(originalName);
+        if (nameTags == null)
+            out.writeTagSet(tags);
+        out.writeVarLong(fileSize);
+        out.writeVarLong(modifiedTime);
+        out.writeNumbered(fileKey);
+        out.writeVarInt(width);
+        out.writeVarInt(height);
+        if (imageLog == null) {
+            out.writeVarInt(0);
+        } else {
+            out.writeVarInt(imageLog.size() + 1);
+            for (Log log : imageLog) {
+                out.writeString(log.getOldName());
+                out.writeString(log.getNewName());
+                out.writeTagSet(log.getOldTagSet());
+                out.writeTagSet(log.getNewTagSet());
+                out.writeVarLong(log.getTime());
+            }
+        }
+    }
+
+    /**
+     * Returns the current Tags in the order they are named in the given end of the current name, if it is made of
+     * exactly the current Tags followed by the extension (ie. " @tag1 @tag2.jpg"), as generateNewName makes it.
+     *
+     * @param rest the current name after the base name
+     * @return the current Tags in the order they are named, or null if rest isn't made of them
+     */
+    private ArrayList<Tag> tagsInName(String rest) {
+        if (!rest.endsWith(extension))
+            return null;
+        ArrayList<Tag> current = getCurrentTags();
+        ArrayList<Tag> named = new ArrayList<>(current.size());
+        int start = 0;
+        int end = rest.length() - extension.length();
+        while (start < end) {
+            if (!rest.startsWith(" @", start))
+                return null;
+            int next = rest.indexOf(" @", start + 2);
+            if (next < 0 || next > end)
+                next = end;
+            Tag tag = null;
+            for (Tag candidate : current) {
+                if (candidate.getName().length() == next - start - 2
+                        && rest.startsWith(candidate.getName(), start + 2))
+                    tag = candidate;
+            }
+            if (tag == null || named.contains(tag))
+                return null;
+            named.add(tag);
+            start = next;
+        }
+        return (named.size() == current.size()) ? named : null;
+    }
+
+    /**
+     * Reads an ImageFile written by writeTo from the given catalog.
+     *
+     * @param in        the catalog to read from
+     * @param directory path of the Directory the ImageFile was written with, or null
+     * @return the ImageFile
+     * @throws IOException if the catalog can't be read
+     */
+    static ImageFile readFrom(CatalogInput in, String directory) throws IOException {
+        int flags = in.readVarInt();
+        String parent = ((flags & otherDirectoryFlag) != 0) ? in.readString() : directory;
+        String currentParent = ((flags & movedFlag) != 0) ? in.readString() : parent;
+        String baseName = in.readNumbered();
+        String name;
+        String extension = null;
+        int[] tagIds = null;
+        if ((flags & taggedNameFlag) != 0) {
+            StringBuilder sb = new StringBuilder(baseName);
+            tagIds = new int[in.readVarInt()];
+            for (int i = 0; i < tagIds.length; i++) {
+                Tag tag = in.readTag();
+                sb.append(" @").append(tag.getName());
+                tagIds[i] = tag.getId();
+            }
+            Arrays.sort(tagIds);
+            extension = in.readString();
+            name = sb.append(extension).toString();
+        } else if ((flags & fullNameFlag) != 0) {
+            name = in.readString();
+        } else {
+            name = baseName + in.readString();
+        }
+        String originalName = ((flags & renamedFlag) != 0) ? in.readString() : name;
+        if (extension == null)
+            extension = originalName.substring(originalName.lastIndexOf('.'));
+        ImageFile image = new ImageFile(parent, originalName, baseName, extension);
+        if ((flags & (renamedFlag | movedFlag)) != 0)
+            image.imageFile = new File(currentParent, name);
+        image.tags = (tagIds != null) ? TagSet.of(tagIds) : in.readTagSet();
+        image.fileSize = in.readVarLong();
+        image.modifiedTime = in.readVarLong();
+        image.fileKey = in.readNumbered();
+        image.width = in.readVarInt();
+        image.height = in.readVarInt();
+        int logs = in.readVarInt();
+        image.imageLog = (logs == 0) ? null : new ArrayList<>(logs - 1);
+        for (int i = 1; i < logs; i++) {
+            Log log = new Log(in.readString(), in.readString(), in.readTagSet(), in.readTagSet());
+            log.setTime(in.readVarLong());
+            image.imageLog.add(log);
+        }
+        return image;
+    }
+
+    /**
+     * Writes this ImageFile with the names of its current Tags in place of their IDs.
+     *
+     * @param out the stream to write to
+     * @throws IOException if IOException occurs, it's then thrown
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        currentTags = getCurrentTags();
+        out.defaultWriteObject();
+        currentTags = null;
+    }
+
+    /**
+     * Reads this ImageFile and interns the names of its current Tags again.
+     *
+     * @param in the stream to read from
+     * @throws IOException            if IOException occurs, it's then thrown
+     * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.tags = (currentTags == null) ? TagSet.empty : TagSet.of(currentTags);
+        currentTags = null;
+    }
+}
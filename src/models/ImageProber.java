@@ -0,0 +1,237 @@
+package models;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An ImageProber finds the width and height of an image by reading its header instead of decoding it: the IHDR chunk
+ * of a PNG, the logical screen descriptor of a GIF, or the SOF segment of a JPEG. The format is recognized from the
+ * first bytes of the file, not from its extension. For a JPEG, only the marker and length of each segment before the
+ * SOF are read and the rest is skipped, except for the start of an Exif segment, which is read for the orientation
+ * so that an image stored on its side is reported with the width and height it is shown with.
+ * <p>
+ * An ImageProber reuses its buffer from one image to the next and never reads more than that buffer at a time. It is
+ * not thread safe; every thread should use its own.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+class ImageProber {
+
+    /**
+     * Most bytes read at a time.
+     */
+    private static final int bufferSize = 512;
+
+    /**
+     * Most JPEG segments looked at before giving up on finding the SOF.
+     */
+    private static final int maxSegments = 64;
+
+    /**
+     * The first bytes of every PNG file.
+     */
+    private static final byte[] pngSignature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * Exif tag that holds the orientation of the image.
+     */
+    private static final int orientationTag = 0x0112;
+
+    /**
+     * Buffer that the header bytes are read into.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Width of the last probed image.
+     */
+    private int width;
+
+    /**
+     * Height of the last probed image.
+     */
+    private int height;
+
+    /**
+     * Constructs a new ImageProber.
+     */
+    ImageProber() {
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Reads the width and height of the image at the given path from its header, for getWidth and getHeight.
+     *
+     * @param path path of the image
+     * @return true if the image is a PNG, GIF or JPEG whose size was found, and false if not
+     */
+    boolean probe(Path path) {
+        width = 0;
+        height = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int read = readAt(channel, 0, 24);
+            if (read >= 24 && startsWith(pngSignature) && buffer.getInt(12) == 0x49484452) {
+                // The IHDR chunk always comes first: length, "IHDR", width, height.
+                width = buffer.getInt(16);
+                height = buffer.getInt(20);
+            } else if (read >= 10 && buffer.get(0) == 'G' && buffer.get(1) == 'I' && buffer.get(2) == 'F') {
+                width = unsignedShortLE(6);
+                height = unsignedShortLE(8);
+            } else if (read >= 2 && (buffer.get(0) & 0xFF) == 0xFF && (buffer.get(1) & 0xFF) == 0xD8) {
+                probeJpeg(channel);
+            }
+        } catch (IOException e) {
+            // The image was removed or can't be read, so its size stays unknown.
+            return false;
+        }
+        return width > 0 && height > 0;
+    }
+
+    /**
+     * Returns the width of the last probed image, as it is shown.
+     *
+     * @return the width in pixels, or 0 if it wasn't found
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the last probed image, as it is shown.
+     *
+     * @return the height in pixels, or 0 if it wasn't found
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Walks the segments of a JPEG from just after its SOI marker until a SOF segment, and reads the size from it.
+     *
+     * @param channel channel of the JPEG
+     * @throws IOException if the JPEG can't be read
+     */
+    private void probeJpeg(FileChannel channel) throws IOException {
+        long position = 2;
+        int orientation = 1;
+        for (int segment = 0; segment < maxSegments; segment++) {
+            if (readAt(channel, position, 4) < 4 || (buffer.get(0) & 0xFF) != 0xFF)
+                return;
+            int marker = buffer.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte before a marker.
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Markers without a length.
+                position += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA)
+                return;
+            int length = buffer.getShort(2) & 0xFFFF;
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                // Precision, then height and width.
+                if (readAt(channel, position + 4, 5) < 5)
+                    return;
+                height = buffer.getShort(1) & 0xFFFF;
+                width = buffer.getShort(3) & 0xFFFF;
+                if (orientation >= 5 && orientation <= 8) {
+                    int swap = width;
+                    width = height;
+                    height = swap;
+                }
+                return;
+            }
+            if (marker == 0xE1 && orientation == 1)
+                orientation = readOrientation(channel, position + 4, length - 2);
+            position += 2 + length;
+        }
+    }
+
+    /**
+     * Reads the orientation out of the first IFD of an Exif segment.
+     *
+     * @param channel  channel of the JPEG
+     * @param position position of the segment's data
+     * @param length   length of the segment's data
+     * @return the Exif orientation, or 1 (ie. upright) if the segment doesn't have one
+     * @throws IOException if the JPEG can't be read
+     */
+    private int readOrientation(FileChannel channel, long position, int length) throws IOException {
+        int read = readAt(channel, position, Math.min(length, bufferSize));
+        // "Exif\0\0", then the TIFF header: byte order, 42, offset of the first IFD.
+        if (read < 14 || buffer.getInt(0) != 0x45786966 || buffer.getShort(4) != 0)
+            return 1;
+        int tiff = 6;
+        if (buffer.get(tiff) == 'I' && buffer.get(tiff + 1) == 'I')
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        else if (buffer.get(tiff) != 'M' || buffer.get(tiff + 1) != 'M')
+            return 1;
+        int orientation = 1;
+        long ifd = tiff + (buffer.getInt(tiff + 4) & 0xFFFFFFFFL);
+        if (ifd + 2 <= read) {
+            int entries = buffer.getShort((int) ifd) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = (int) ifd + 2 + 12 * i;
+                if (entry + 12 > read)
+                    break;
+                if ((buffer.getShort(entry) & 0xFFFF) == orientationTag) {
+                    orientation = buffer.getShort(entry + 8) & 0xFFFF;
+                    break;
+                }
+            }
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return orientation;
+    }
+
+    /**
+     * Reads up to the given number of bytes at the given position into the start of the buffer.
+     *
+     * @param channel  channel to read from
+     * @param position position in the file to read at
+     * @param count    most bytes to read, no more than the size of the buffer
+     * @return the number of bytes read
+     * @throws IOException if the file can't be read
+     */
+    private int readAt(FileChannel channel, long position, int count) throws IOException {
+        buffer.clear();
+        buffer.limit(count);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                break;
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Returns whether the buffer starts with the given bytes.
+     *
+     * @param prefix the bytes
+     * @return true if the buffer starts with them, and false if not
+     */
+    private boolean startsWith(byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the little-endian unsigned 16-bit number at the given index of the buffer.
+     *
+     * @param index index in the buffer
+     * @return the number
+     */
+    private int unsignedShortLE(int index) {
+        return (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8;
+    }
+}
@@ -1,8 +1,9 @@
 package models;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Date;
 
 /**
  * A Log object is an object containing the previous and current tags
@@ -15,49 +16,80 @@ import java.util.Date;
 public class Log implements Serializable {
 
     /**
-     * ArrayList of Tag objects that represent all the past Tags that have been on an Image object.
+     * Serialization version of Log, kept at the version the first release had.
      */
-    private final ArrayList<Tag> oldTags;
+    private static final long serialVersionUID = -2257212167607107757L;
 
     /**
-     * An ArrayList of Tag objects representing the new tags on an Image object after the
-     * tags were changed
+     * Shared TagSet of the Tags that were on an Image object before the tags were changed. It is the same object as
+     * the newTags of the Log before this one.
      */
-    private final ArrayList<Tag> newTags;
+    private TagSet oldTags;
+
+    /**
+     * Shared TagSet of the new tags on an Image object after the tags were changed
+     */
+    private TagSet newTags;
 
     /**
      * A String representation of the file name from an ImageFile object before the
      * changes that this Log objects tracks were applied
      */
-    private final String oldName;
+    private String oldName;
 
     /**
      * A String representation of the file name from an ImageFile object after the changes
      * that this Log object tracks were applied
      */
-    private final String newName;
+    private String newName;
 
     /**
-     * Constructs a new Log object with the given oldName, newName, oldTags, and newTags on an ImageFile.
+     * Key of the image before the change in the HistoryLog, or null if it isn't known.
+     */
+    private transient String oldKey;
+
+    /**
+     * Key of the image after the change in the HistoryLog, or null if it isn't known.
+     */
+    private transient String newKey;
+
+    /**
+     * When the change was made in milliseconds. A Log saved before times were kept is given the time it was read, so
+     * that its change isn't taken for an old one and collapsed into a checkpoint as soon as it is loaded.
+     */
+    private long time;
+
+    /**
+     * Constructs a new Log object with the given oldName, newName, oldTags, and newTags on an ImageFile, made now.
      *
      * @param oldName String of the previous name of the ImageFile
      * @param newName String of the new/current name of the ImageFile
-     * @param oldTags ArrayList of the previous/old Tag objects on the ImageFile
-     * @param newTags ArrayList of the new/current Tag objects on the ImageFile
+     * @param oldTags TagSet of the previous/old Tag objects on the ImageFile
+     * @param newTags TagSet of the new/current Tag objects on the ImageFile
      */
-    public Log(String oldName, String newName, ArrayList<Tag> oldTags, ArrayList<Tag> newTags) {
+    public Log(String oldName, String newName, TagSet oldTags, TagSet newTags) {
         this.oldName = oldName;
         this.newName = newName;
         this.newTags = newTags;
         this.oldTags = oldTags;
+        this.time = System.currentTimeMillis();
     }
 
     /**
      * Returns an ArrayList of the last tags changes for an ImageFile object
      *
-     * @return the oldTags ArrayList of this Log object
+     * @return the oldTags of this Log object as a new ArrayList
      */
     public ArrayList<Tag> getOldTags() {
+        return this.oldTags.toTags();
+    }
+
+    /**
+     * Returns the shared TagSet of the tags an ImageFile object had before the change this Log object tracks
+     *
+     * @return the oldTags TagSet of this Log object
+     */
+    public TagSet getOldTagSet() {
         return this.oldTags;
     }
 
@@ -74,9 +106,18 @@ public class Log implements Serializable {
     /**
      * Returns an ArrayList of the most recent tags for an ImageFile object
      *
-     * @return the newTags ArrayList of this Log object
+     * @return the newTags of this Log object as a new ArrayList
      */
     public ArrayList<Tag> getNewTags() {
+        return this.newTags.toTags();
+    }
+
+    /**
+     * Returns the shared TagSet of the tags an ImageFile object had after the change this Log object tracks
+     *
+     * @return the newTags TagSet of this Log object
+     */
+    public TagSet getNewTagSet() {
         return this.newTags;
     }
 
@@ -91,39 +132,82 @@ public class Log implements Serializable {
     }
 
     /**
-     * Writes a copy of a String representation of a Log object to a file specified
-     * by the private static final variable logFilePath. Throws an IOException if the
-     * file specified by logFilePath cannot be found or does not exist
+     * Returns the key the image was kept under in the HistoryLog before the change this Log object tracks
+     *
+     * @return the old key, or null if it isn't known
      */
-    void writeToLogFile(File file) {
-        String logString = this.generateLogString();
-        /*
-        *Code Adapted from a post by Chaitanya Singh
-        *https://beginnersbook.com/2014/01/how-to-write-to-file-in-java-using-bufferedwriter/
-        * 2017/11/13
-         */
-        BufferedWriter bw = null;
-        try {
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            FileWriter fw = new FileWriter(file, true);
-            bw = new BufferedWriter(fw);
-            bw.write(logString);
-            bw.newLine();
-            bw.newLine();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+    String getOldKey() {
+        return this.oldKey;
+    }
 
-        }
+    /**
+     * Returns the key the image is kept under in the HistoryLog after the change this Log object tracks
+     *
+     * @return the new key, or null if it isn't known
+     */
+    String getNewKey() {
+        return this.newKey;
+    }
+
+    /**
+     * Sets the keys the image is kept under in the HistoryLog before and after the change this Log object tracks
+     *
+     * @param oldKey the key before the change
+     * @param newKey the key after the change
+     */
+    void setKeys(String oldKey, String newKey) {
+        this.oldKey = oldKey;
+        this.newKey = newKey;
+    }
 
-        /* Handles an IOException if the BufferedWriter fails to close*/
-        try {
-            assert bw != null;
-            bw.close();
-        } catch (IOException ex) {
-            System.out.println("Error: cannot close BufferedWriter.");
-        }
+    /**
+     * Returns when the change this Log object tracks was made
+     *
+     * @return the time in milliseconds
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Sets when the change this Log object tracks was made
+     *
+     * @param time the time in milliseconds
+     */
+    void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Reads a Log saved by this version, or by the first release, which saved the Tags as ArrayLists and kept no time;
+     * such a Log is given the time it is read.
+     *
+     * @param in the stream to read from
+     * @throws IOException            if IOException occurs, it's then thrown
+     * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.oldTags = toTagSet(fields.get("oldTags", null));
+        this.newTags = toTagSet(fields.get("newTags", null));
+        this.oldName = (String) fields.get("oldName", null);
+        this.newName = (String) fields.get("newName", null);
+        this.time = fields.defaulted("time") ? System.currentTimeMillis() : fields.get("time", 0L);
+    }
+
+    /**
+     * Returns the shared TagSet of the given saved Tags.
+     *
+     * @param tags a TagSet, an ArrayList of Tags as the first release saved them, or null
+     * @return the shared TagSet of the Tags, which is empty if there are none
+     */
+    @SuppressWarnings("unchecked")
+    private static TagSet toTagSet(Object tags) {
+        if (tags instanceof TagSet)
+            return (TagSet) tags;
+        if (tags instanceof ArrayList)
+            return TagSet.of((ArrayList<Tag>) tags);
+        return TagSet.empty;
     }
 
     /**
@@ -137,12 +221,13 @@ public class Log implements Serializable {
     }
 
     /**
-     * Essentially a toString method for this Log object that returns the old name, new name and date it was modified.
+     * Essentially a toString method for this Log object that returns the old name, new name and the given date it was
+     * modified, as written to the log file.
      *
+     * @param date the date the change was made, already formatted
      * @return String representation of this Log.
      */
-    private String generateLogString() {
-        Date d = new Date();
-        return "(" + oldName + "|" + newName + "," + d.toString() + ")";
+    String generateLogString(String date) {
+        return "(" + oldName + "|" + newName + "," + date + ")";
     }
 }
@@ -0,0 +1,540 @@
+package models;
+
+import views.Main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A LogAppender writes Log objects to the master log file, and to a HistoryLog, on a background thread, so that
+ * renaming an image never waits for the log file to be opened, written and closed. Logs are put in a bounded queue,
+ * and the thread takes everything that has been queued at once and writes it with a single write to a channel that
+ * stays open, so a burst of renames costs one write instead of one open, write and close each. A full queue makes the
+ * next append wait for the thread to catch up.
+ * <p>
+ * How often the log is flushed and synced can be set: the thread can wait a little after the first Log of a burst so
+ * that more can be written with it, and can force the file to disk after every write, at most once in a while, or
+ * never. Whoever needs to know when their Logs are safely on disk (ie. the RenameJournal) can pass a Runnable that is
+ * run once they have been written and synced. flush waits for everything appended so far to be written, without
+ * waiting for it to be synced, so that the HistoryLog can be read back. close writes everything still queued, syncs
+ * and closes the file; a later append starts the thread again.
+ * <p>
+ * The log file is kept in segments: once it grows past maxLogSize or is older than maxLogAge, it is renamed with the
+ * time it was rotated added to its name and a new one is started, and only the latest maxSegments rotated segments are
+ * kept. Every log file starts with a line giving when it was started, which its age is measured from; a log file
+ * without one was written before segments were kept, and is rotated on the next write. Whenever the thread has nothing
+ * left to write, it lets the HistoryLog compact itself.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class LogAppender {
+
+    /**
+     * Most Log entries that can be queued before append waits.
+     */
+    private static final int capacity = 1024;
+
+    /**
+     * Milliseconds the thread waits after the first entry of a burst for more to write with it.
+     */
+    private static final long flushDelay = 10;
+
+    /**
+     * Fewest milliseconds between syncs; 0 syncs after every write, and a negative number only syncs on close.
+     */
+    private static final long syncInterval = 0;
+
+    /**
+     * Size in bytes past which the log file is rotated.
+     */
+    private static final long maxLogSize = 1024 * 1024;
+
+    /**
+     * Age in milliseconds past which the log file is rotated (ie. 30 days).
+     */
+    private static final long maxLogAge = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Start of the line a log file starts with, which is followed by when it was started.
+     */
+    private static final String startedHeader = "[Log started ";
+
+    /**
+     * Format of the time in the line a log file starts with.
+     */
+    private static final String startedFormat = "yyyy-MM-dd HH:mm:ss.SSS Z";
+
+    /**
+     * Most rotated segments of the log file that are kept.
+     */
+    private static final int maxSegments = 8;
+
+    /**
+     * The LogAppender for the master log shared by the whole program.
+     */
+    private static final LogAppender logAppender = new LogAppender(Main.logPath, HistoryLog.getHistoryLog(), capacity,
+            flushDelay, syncInterval);
+
+    /**
+     * Queued entry that tells the thread to stop.
+     */
+    private static final Entry stop = new Entry(new ArrayList<>(), false, 0, null);
+
+    /**
+     * Path of the log file.
+     */
+    private final String path;
+
+    /**
+     * The HistoryLog the Logs are also appended to, or null.
+     */
+    private final HistoryLog history;
+
+    /**
+     * The entries waiting to be written, oldest first.
+     */
+    private final ArrayBlockingQueue<Entry> queue;
+
+    /**
+     * Milliseconds the thread waits after the first entry of a burst.
+     */
+    private final long delay;
+
+    /**
+     * Fewest milliseconds between syncs, 0 to sync after every write, or negative to only sync on close.
+     */
+    private final long interval;
+
+    /**
+     * Runnables of the entries that were written but not synced yet. Only used by the thread.
+     */
+    private final ArrayList<Runnable> unsynced;
+
+    /**
+     * Lock that flush waits on for the thread to write more entries.
+     */
+    private final Object progress;
+
+    /**
+     * Number of entries appended so far. Guarded by progress.
+     */
+    private long queued;
+
+    /**
+     * Number of entries the thread has written so far. Guarded by progress.
+     */
+    private long written;
+
+    /**
+     * The thread that writes the entries, or null if it isn't running.
+     */
+    private Thread writer;
+
+    /**
+     * The open log file, or null. Only used by the thread.
+     */
+    private FileChannel channel;
+
+    /**
+     * When the open log file was started, in milliseconds. Only used by the thread.
+     */
+    private long segmentStart;
+
+    /**
+     * Whether something was written to the log file since it was last synced. Only used by the thread.
+     */
+    private boolean dirty;
+
+    /**
+     * When the log file was last synced, in milliseconds. Only used by the thread.
+     */
+    private long lastSync;
+
+    /**
+     * The second the cached date is for. Only used by the thread.
+     */
+    private long cachedSecond;
+
+    /**
+     * The date written for the entries of cachedSecond. Only used by the thread.
+     */
+    private String cachedDate;
+
+    /**
+     * Constructs a new LogAppender for the log file at the given path.
+     *
+     * @param path         path of the log file
+     * @param history      HistoryLog to also append the Logs to, or null
+     * @param capacity     most entries that can be queued before append waits
+     * @param flushDelay   milliseconds to wait after the first entry of a burst for more to write with it
+     * @param syncInterval fewest milliseconds between syncs, 0 to sync after every write, or negative to only sync on
+     *                     close
+     */
+    LogAppender(String path, HistoryLog history, int capacity, long flushDelay, long syncInterval) {
+        this.path = path;
+        this.history = history;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.delay = flushDelay;
+        this.interval = syncInterval;
+        this.unsynced = new ArrayList<>();
+        this.progress = new Object();
+        this.cachedSecond = -1;
+    }
+
+    /**
+     * Returns the LogAppender for the master log shared by the whole program.
+     *
+     * @return the shared LogAppender
+     */
+    public static LogAppender getLogAppender() {
+        return logAppender;
+    }
+
+    /**
+     * Queues the given Log to be written to the log file on its own.
+     *
+     * @param log     the Log to write
+     * @param onSaved Runnable to run on the appender's thread once the Log is written and synced, or null; it isn't
+     *                run if it couldn't be written
+     */
+    public void append(Log log, Runnable onSaved) {
+        ArrayList<Log> logs = new ArrayList<>(1);
+        logs.add(log);
+        enqueue(new Entry(logs, false, System.currentTimeMillis(), onSaved));
+    }
+
+    /**
+     * Queues the given Logs to be written to the log file as one group, under a line saying how many changes the
+     * group holds. Used for changes made to many images at once.
+     *
+     * @param logs    the Logs to write
+     * @param onSaved Runnable to run on the appender's thread once the Logs are written and synced, or null; it isn't
+     *                run if they couldn't be written
+     */
+    public void append(ArrayList<Log> logs, Runnable onSaved) {
+        enqueue(new Entry(logs, true, System.currentTimeMillis(), onSaved));
+    }
+
+    /**
+     * Waits until every Log appended so far has been written to the log file and the HistoryLog, though not
+     * necessarily synced.
+     */
+    public void flush() {
+        synchronized (progress) {
+            long target = queued;
+            try {
+                while (written < target) {
+                    progress.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes every queued entry, syncs and closes the log file, and stops the thread. Waits for the thread to finish.
+     */
+    public synchronized void close() {
+        if (writer == null)
+            return;
+        try {
+            queue.put(stop);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Queues the given entry, starting the thread if it isn't running, and waits while the queue is full.
+     *
+     * @param entry the entry to write
+     */
+    private synchronized void enqueue(Entry entry) {
+        if (writer == null) {
+            writer = new Thread(this::run, "log-appender");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        synchronized (progress) {
+            queued++;
+        }
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            // The entry is counted as written, so that flush doesn't wait for it.
+            Thread.currentThread().interrupt();
+            synchronized (progress) {
+                written++;
+                progress.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued entries until the stop entry is taken.
+     */
+    private void run() {
+        ArrayList<Entry> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                if (!dirty || interval <= 0) {
+                    batch.add(queue.take());
+                } else {
+                    long wait = lastSync + interval - System.currentTimeMillis();
+                    Entry first = (wait > 0) ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (first != null)
+                        batch.add(first);
+                }
+                if (!batch.isEmpty() && batch.get(0) != stop && delay > 0 && queue.remainingCapacity() > 0)
+                    Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            queue.drainTo(batch);
+            stopping |= batch.remove(stop);
+            write(batch);
+            synchronized (progress) {
+                written += batch.size();
+                progress.notifyAll();
+            }
+            batch.clear();
+            if (stopping || interval == 0 || (interval > 0 && System.currentTimeMillis() - lastSync >= interval))
+                sync();
+            if (!stopping && !dirty && history != null && queue.isEmpty())
+                history.compactIfNeeded(System.currentTimeMillis() - HistoryLog.retention);
+        }
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Writes the given entries to the log file with a single write, opening the file if it isn't open.
+     *
+     * @param batch the entries to write
+     */
+    private void write(ArrayList<Entry> batch) {
+        if (batch.isEmpty())
+            return;
+        StringBuilder text = new StringBuilder();
+        for (Entry entry : batch) {
+            String date = dateOf(entry.time);
+            if (entry.group) {
+                text.append("[Batch of ").append(entry.logs.size()).append(" changes, ").append(date).append("]")
+                        .append(System.lineSeparator());
+            }
+            for (Log log : entry.logs) {
+                text.append(log.generateLogString(date)).append(System.lineSeparator());
+            }
+            text.append(System.lineSeparator());
+        }
+        try {
+            if (channel == null)
+                open();
+            if (channel.size() >= maxLogSize || System.currentTimeMillis() - segmentStart >= maxLogAge) {
+                rotate();
+                open();
+            }
+            if (channel.size() == 0)
+                text.insert(0, startedHeader + new SimpleDateFormat(startedFormat).format(new Date(segmentStart)) + "]"
+                        + System.lineSeparator() + System.lineSeparator());
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty = true;
+            for (Entry entry : batch) {
+                if (entry.onSaved != null)
+                    unsynced.add(entry.onSaved);
+            }
+        } catch (IOException e) {
+            // The file is opened again for the next write.
+            e.printStackTrace();
+            try {
+                if (channel != null)
+                    channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+            return;
+        }
+        if (history != null) {
+            try {
+                for (Entry entry : batch) {
+                    history.append(entry.logs, entry.time);
+                }
+            } catch (IOException e) {
+                // The master log is what the rename journal relies on, so the Runnables are still run.
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Forces what was written to the log file and the HistoryLog to disk, and runs the Runnables of the entries that
+     * were synced.
+     */
+    private void sync() {
+        if (channel == null || !dirty)
+            return;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (history != null) {
+            try {
+                history.force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        dirty = false;
+        lastSync = System.currentTimeMillis();
+        for (Runnable onSaved : unsynced) {
+            onSaved.run();
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * Opens the log file for appending, creating it if it doesn't exist, and reads when it was started.
+     *
+     * @throws IOException if the log file can't be opened
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentStart = (channel.size() == 0) ? System.currentTimeMillis() : readStart();
+    }
+
+    /**
+     * Reads when the log file was started from the line it starts with. File systems don't keep when a file was
+     * created reliably (ie. many give the modified time instead), so the time is kept in the file itself.
+     *
+     * @return the time in milliseconds, or 0 if the file doesn't start with the time it was started
+     */
+    private long readStart() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path),
+                StandardCharsets.UTF_8))) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith(startedHeader) || !line.endsWith("]"))
+                return 0;
+            return new SimpleDateFormat(startedFormat).parse(line.substring(startedHeader.length(),
+                    line.length() - 1)).getTime();
+        } catch (IOException | ParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Syncs and closes the log file, renames it with the time it was rotated added to its name, and deletes the
+     * oldest rotated segments if there are more than maxSegments.
+     *
+     * @throws IOException if the log file can't be closed or renamed
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void rotate() throws IOException {
+        sync();
+        channel.close();
+        channel = null;
+        File file = new File(path);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String stem = (dot < 0) ? name : name.substring(0, dot);
+        String extension = (dot < 0) ? "" : name.substring(dot);
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        Files.move(file.toPath(), new File(file.getParentFile(), stem + "-" + stamp + extension).toPath());
+        File[] segments = file.getParentFile().listFiles((directory, segmentName) ->
+                segmentName.startsWith(stem + "-") && segmentName.endsWith(extension));
+        if (segments != null && segments.length > maxSegments) {
+            // The time stamps sort the same way by name as by time.
+            Arrays.sort(segments);
+            for (int i = 0; i < segments.length - maxSegments; i++) {
+                segments[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the date written for entries made at the given time. The date is only formatted once a second.
+     *
+     * @param time the time in milliseconds
+     * @return the date as Date.toString gives it
+     */
+    private String dateOf(long time) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedDate = new Date(time).toString();
+        }
+        return cachedDate;
+    }
+
+    /**
+     * One or more Logs queued together.
+     */
+    private static class Entry {
+
+        /**
+         * The Logs to write.
+         */
+        private final ArrayList<Log> logs;
+
+        /**
+         * Whether the Logs are written as a group under a header.
+         */
+        private final boolean group;
+
+        /**
+         * When the Logs were queued, in milliseconds.
+         */
+        private final long time;
+
+        /**
+         * Runnable to run once the Logs are written and synced, or null.
+         */
+        private final Runnable onSaved;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param logs    the Logs to write
+         * @param group   whether the Logs are written as a group under a header
+         * @param time    when the Logs were queued, in milliseconds
+         * @param onSaved Runnable to run once the Logs are written and synced, or null
+         */
+        Entry(ArrayList<Log> logs, boolean group, long time, Runnable onSaved) {
+            this.logs = logs;
+            this.group = group;
+            this.time = time;
+            this.onSaved = onSaved;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package models;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A PathTrie stores Directory objects by the segments of their paths, so that every Directory under a given path can
+ * be found without looking at the ones that aren't.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+class PathTrie {
+
+    /**
+     * The node for the root of the file system, which every path starts from.
+     */
+    private final Node root;
+
+    /**
+     * Constructs a new, empty PathTrie.
+     */
+    PathTrie() {
+        this.root = new Node();
+    }
+
+    /**
+     * Adds the given Directory to the PathTrie under its path, replacing any Directory with the same path.
+     *
+     * @param directory the Directory to add
+     */
+    void put(Directory directory) {
+        Node node = root;
+        for (String segment : segments(directory.getPath())) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.directory = directory;
+    }
+
+    /**
+     * Returns every Directory whose path is the given path or is under it.
+     *
+     * @param path the path to look under
+     * @return ArrayList of the Directory objects at or under the path
+     */
+    ArrayList<Directory> getAllUnder(String path) {
+        ArrayList<Directory> result = new ArrayList<>();
+        Node node = root;
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null)
+                return result;
+        }
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            Node next = nodes.pop();
+            if (next.directory != null)
+                result.add(next.directory);
+            for (Node child : next.children.values()) {
+                nodes.push(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits a path into its segments, ignoring empty ones (ie. from a leading or doubled separator).
+     *
+     * @param path the path to split
+     * @return the non-empty segments of the path
+     */
+    private static ArrayList<String> segments(String path) {
+        ArrayList<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == File.separatorChar || path.charAt(i) == '/') {
+                if (i > start)
+                    segments.add(path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * One segment of a path, with the Directory whose path ends at it (if there is one).
+     */
+    private static class Node {
+
+        /**
+         * The nodes for the next segments, keyed by segment.
+         */
+        private final HashMap<String, Node> children = new HashMap<>();
+
+        /**
+         * The Directory whose path ends at this node, or null.
+         */
+        private Directory directory;
+    }
+}
@@ -0,0 +1,372 @@
+package models;
+
+import views.Main;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A RenameJournal makes renaming images safe against crashes. Before any file of a batch of renames is touched, every
+ * rename of the batch is written to the journal and forced to disk; the files are then moved with atomic moves; once
+ * they have been moved, which of them were is written and forced as well; and once the ImageFiles and the master log
+ * have been updated, the batch is marked as finished. Only the first two writes are forced, so a batch of any size
+ * costs two syncs rather than two per file.
+ * <p>
+ * When the program starts, recover goes through the batches that weren't finished. A batch that was begun but not
+ * committed is replayed: every rename whose file is still under its old name is done, as long as its new name is
+ * free. The renames of a replayed or committed batch that ended up on disk are then written to the master log, and
+ * the batch is finished. The ImageFiles are rebuilt from the names on disk when the directories are scanned, so they
+ * come out the same as the disk and the log.
+ * <p>
+ * The journal file is emptied whenever no batch is left open. Every method is thread safe.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class RenameJournal {
+
+    /**
+     * Version of the journal file format, written at the start of the file.
+     */
+    private static final int version = 1;
+
+    /**
+     * Type of the record written before the files of a batch are moved.
+     */
+    private static final byte begin = 1;
+
+    /**
+     * Type of the record written once the files of a batch have been moved.
+     */
+    private static final byte commit = 2;
+
+    /**
+     * Type of the record written once the ImageFiles and the master log have been updated for a batch.
+     */
+    private static final byte finish = 3;
+
+    /**
+     * The RenameJournal shared by the whole program.
+     */
+    private static final RenameJournal renameJournal = new RenameJournal(Main.renameJournal);
+
+    /**
+     * Path of the journal file.
+     */
+    private final String path;
+
+    /**
+     * Batches that were begun but not finished.
+     */
+    private final HashSet<Long> openBatches;
+
+    /**
+     * ID of the next batch.
+     */
+    private long nextBatch;
+
+    /**
+     * Constructs a new RenameJournal that writes to the file at the given path.
+     *
+     * @param path path of the journal file
+     */
+    RenameJournal(String path) {
+        this.path = path;
+        this.openBatches = new HashSet<>();
+        // IDs from an earlier run may still be in the file if it couldn't be recovered.
+        this.nextBatch = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the RenameJournal shared by the whole program.
+     *
+     * @return the shared RenameJournal
+     */
+    public static RenameJournal getRenameJournal() {
+        return renameJournal;
+    }
+
+    /**
+     * Writes the given renames to the journal as a new batch and forces them to disk. The files must not be moved
+     * before this returns.
+     *
+     * @param sources      the files as they are named now
+     * @param destinations the files with their new names, in the same order
+     * @return ID of the batch
+     * @throws IOException if the journal can't be written, in which case none of the files should be moved
+     */
+    public synchronized long begin(ArrayList<File> sources, ArrayList<File> destinations) throws IOException {
+        long batch = nextBatch++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(begin);
+        out.writeLong(batch);
+        out.writeInt(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            out.writeUTF(sources.get(i).getPath());
+            out.writeUTF(destinations.get(i).getPath());
+        }
+        append(bytes.toByteArray(), true);
+        openBatches.add(batch);
+        return batch;
+    }
+
+    /**
+     * Records which renames of the given batch were done on disk, and forces the record to disk. The ImageFiles and
+     * the master log must not be updated before this returns.
+     *
+     * @param batch ID of the batch
+     * @param moved whether each rename of the batch was done, in the order given to begin
+     */
+    public synchronized void commit(long batch, boolean[] moved) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(commit);
+            out.writeLong(batch);
+            out.writeInt(moved.length);
+            for (boolean m : moved) {
+                out.writeBoolean(m);
+            }
+            append(bytes.toByteArray(), true);
+        } catch (IOException e) {
+            // The batch is replayed from the disk if the program crashes before it is finished.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Marks the given batch as finished, once the ImageFiles and the master log have been updated. The journal file
+     * is emptied if no other batch is open.
+     *
+     * @param batch ID of the batch
+     */
+    public synchronized void finish(long batch) {
+        openBatches.remove(batch);
+        try {
+            if (openBatches.isEmpty()) {
+                reset();
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(finish);
+                out.writeLong(batch);
+                append(bytes.toByteArray(), false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Renames the given file to the given name with an atomic move, or with a plain move if the file system can't
+     * move it atomically. The file isn't renamed if the new name is taken.
+     *
+     * @param source the file as it is named now
+     * @param dest   the file with its new name
+     * @return true if the file was renamed, and false if not
+     */
+    public static boolean move(File source, File dest) {
+        if (dest.exists())
+            return false;
+        try {
+            try {
+                Files.move(source.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source.toPath(), dest.toPath());
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Replays the batches that were begun but not committed before the program last stopped, writes the renames of
+     * every batch that wasn't finished to the master log, and empties the journal. Must be called before any batch is
+     * begun. A record cut short (ie. by a crash while it was written) ends the file.
+     */
+    public synchronized void recover() {
+        File file = new File(path);
+        if (!file.isFile() || file.length() == 0)
+            return;
+        LinkedHashMap<Long, PendingBatch> pending = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // A file in another format has nothing that can be replayed, and is started over.
+            if (in.readInt() != version)
+                throw new EOFException();
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long batch = in.readLong();
+                if (type == begin) {
+                    PendingBatch pendingBatch = new PendingBatch(in.readInt());
+                    for (int i = 0; i < pendingBatch.sources.length; i++) {
+                        pendingBatch.sources[i] = new File(in.readUTF());
+                        pendingBatch.destinations[i] = new File(in.readUTF());
+                    }
+                    pending.put(batch, pendingBatch);
+                } else if (type == commit) {
+                    boolean[] moved = new boolean[in.readInt()];
+                    for (int i = 0; i < moved.length; i++) {
+                        moved[i] = in.readBoolean();
+                    }
+                    PendingBatch pendingBatch = pending.get(batch);
+                    if (pendingBatch != null && moved.length == pendingBatch.sources.length)
+                        pendingBatch.moved = moved;
+                } else if (type == finish) {
+                    pending.remove(batch);
+                } else {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // The last record was cut short and is ignored.
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        CountDownLatch saved = new CountDownLatch(pending.size());
+        // The tags are read back from the names with a TagManager of their own, so that the list of tags isn't
+        // changed before it is loaded.
+        FileNameParser parser = new FileNameParser();
+        TagManager tagManager = new TagManager();
+        for (PendingBatch pendingBatch : pending.values()) {
+            ArrayList<Log> logs = new ArrayList<>();
+            for (int i = 0; i < pendingBatch.sources.length; i++) {
+                File source = pendingBatch.sources[i];
+                File dest = pendingBatch.destinations[i];
+                boolean moved;
+                if (pendingBatch.moved != null)
+                    moved = pendingBatch.moved[i];
+                else if (!source.exists() && dest.exists())
+                    moved = true;
+                else
+                    moved = source.exists() && move(source, dest);
+                // The tags aren't journaled but are named in the files, and the file key is read from the renamed file.
+                if (moved) {
+                    Log log = new Log(source.getName(), dest.getName(), tagsOf(source.getName(), parser, tagManager),
+                            tagsOf(dest.getName(), parser, tagManager));
+                    String fileKey = fileKeyOf(dest);
+                    log.setKeys(HistoryLog.keyOf(fileKey, source), HistoryLog.keyOf(fileKey, dest));
+                    logs.add(log);
+                }
+            }
+            if (logs.isEmpty())
+                saved.countDown();
+            else
+                LogAppender.getLogAppender().append(logs, saved::countDown);
+        }
+        // The journal can only be emptied once the recovered Logs are synced.
+        LogAppender.getLogAppender().close();
+        if (saved.getCount() > 0)
+            return;
+        try {
+            reset();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the Tags named in the given file name, as the DirectoryScanner reads them when it scans the file.
+     *
+     * @param name       the file name
+     * @param parser     FileNameParser to parse the name with
+     * @param tagManager TagManager to add the tags to
+     * @return TagSet of the Tags in the name, which is empty if the name carries none
+     */
+    private static TagSet tagsOf(String name, FileNameParser parser, TagManager tagManager) {
+        return parser.parse(name, tagManager) ? TagSet.of(parser.getTagIds()) : TagSet.empty;
+    }
+
+    /**
+     * Returns the file key of the given file, the same way the DirectoryScanner reads it.
+     *
+     * @param file the file
+     * @return String form of the file key, or null if the file system doesn't provide one or it can't be read
+     */
+    private static String fileKeyOf(File file) {
+        try {
+            Object fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+            return (fileKey == null) ? null : fileKey.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends the given record to the journal file, starting the file if it doesn't exist yet.
+     *
+     * @param record the bytes of the record
+     * @param force  whether to force the record to disk before returning
+     * @throws IOException if the record can't be written
+     */
+    private void append(byte[] record, boolean force) throws IOException {
+        File file = new File(path);
+        if (!file.isFile() || file.length() == 0)
+            reset();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(record);
+            if (force)
+                out.getChannel().force(false);
+        }
+    }
+
+    /**
+     * Empties the journal file, leaving only its version.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void reset() throws IOException {
+        File file = new File(path);
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, false))) {
+            out.writeInt(version);
+        }
+    }
+
+    /**
+     * The renames of a batch that wasn't finished, as read from the journal.
+     */
+    private static class PendingBatch {
+
+        /**
+         * The files as they were named before the batch.
+         */
+        private final File[] sources;
+
+        /**
+         * The files with their new names.
+         */
+        private final File[] destinations;
+
+        /**
+         * Whether each rename was done, or null if the batch wasn't committed.
+         */
+        private boolean[] moved;
+
+        /**
+         * Constructs a new PendingBatch of the given number of renames.
+         *
+         * @param size number of renames
+         */
+        PendingBatch(int size) {
+            this.sources = new File[size];
+            this.destinations = new File[size];
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package models;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A ScanCache remembers the entries of every scanned directory together with the directory's last modified time, so
+ * that a directory whose modified time hasn't changed can be rebuilt without listing it or parsing the tags in its
+ * file names again.
+ * <p>
+ * The cache file is only appended to: saving writes the directories that were scanned since the last save, and a
+ * later record for a directory replaces an earlier one when the file is loaded. The file is rewritten from scratch
+ * once it holds more than twice as many records as there are directories.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class ScanCache {
+
+    /**
+     * Version of the cache file format, written at the start of the file.
+     */
+    private static final int version = 2;
+
+    /**
+     * Path of the cache file.
+     */
+    private final String path;
+
+    /**
+     * The cached entries of each directory, keyed by the directory's path.
+     */
+    private final ConcurrentHashMap<String, CachedDirectory> directories;
+
+    /**
+     * Paths of the directories that were scanned since the cache was last written.
+     */
+    private final ConcurrentHashMap<String, Boolean> changed;
+
+    /**
+     * Number of directory records in the cache file.
+     */
+    private int recordsInFile;
+
+    /**
+     * Constructs a new, empty ScanCache that is loaded from and written to the file at the given path.
+     *
+     * @param path path of the cache file
+     */
+    public ScanCache(String path) {
+        this.path = path;
+        this.directories = new ConcurrentHashMap<>();
+        this.changed = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the files of the given Directory as they were cached, if the Directory's modified time is still the one
+     * that was cached. Tags found in the cached file names are added to the TagManager in the same way as when the
+     * file names are parsed. Subdirectories are returned without a modified time, since the one cached for them may be
+     * out of date; each is read again when the subdirectory itself is listed.
+     *
+     * @param directory  the Directory, with the modified time just read from the file system
+     * @param tagManager TagManager to add the cached tags to
+     * @return the files of the Directory, or null if it isn't cached or has changed since
+     */
+    ArrayList<File> getFiles(Directory directory, TagManager tagManager) {
+        CachedDirectory cached = directories.get(directory.getPath());
+        if (cached == null || cached.modifiedTime != directory.getModifiedTime() || directory.getModifiedTime() == 0)
+            return null;
+        ArrayList<File> files = new ArrayList<>(cached.entries.size());
+        for (CachedEntry entry : cached.entries) {
+            String entryPath = new File(directory.getPath(), entry.name).getPath();
+            if (entry.directory) {
+                files.add(new Directory(entryPath));
+            } else {
+                ImageFile imgFile = new ImageFile(entryPath);
+                imgFile.setAttributes(entry.size, entry.modifiedTime, entry.fileKey);
+                imgFile.setDimensions(entry.width, entry.height);
+                if (entry.tags.length != 0) {
+                    int[] tagIds = new int[entry.tags.length];
+                    int count = 0;
+                    for (String tagName : entry.tags) {
+                        Tag tag = tagManager.addTagName(tagName);
+                        if (tag != null)
+                            tagIds[count++] = tag.getId();
+                    }
+                    tagIds = Arrays.copyOf(tagIds, count);
+                    Arrays.sort(tagIds);
+                    imgFile.setParsedName(entry.baseName, tagIds);
+                }
+                files.add(imgFile);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Records the files that were just listed for the given Directory, replacing what was cached for it.
+     *
+     * @param directory the Directory, with its modified time set
+     * @param files     the files listed for the Directory
+     */
+    void putFiles(Directory directory, ArrayList<File> files) {
+        CachedDirectory cached = new CachedDirectory(directory.getModifiedTime(), new ArrayList<>(files.size()));
+        for (File file : files) {
+            CachedEntry entry = new CachedEntry();
+            entry.name = file.getName();
+            if (file instanceof ImageFile) {
+                ImageFile imgFile = (ImageFile) file;
+                entry.size = imgFile.getFileSize();
+                entry.modifiedTime = imgFile.getModifiedTime();
+                entry.fileKey = imgFile.getFileKey();
+                entry.width = imgFile.getWidth();
+                entry.height = imgFile.getHeight();
+                entry.baseName = imgFile.getBaseName();
+                entry.tags = new String[imgFile.getCurrentTags().size()];
+                for (int i = 0; i < entry.tags.length; i++) {
+                    entry.tags[i] = imgFile.getCurrentTags().get(i).getName();
+                }
+            } else {
+                entry.directory = true;
+                entry.modifiedTime = ((Directory) file).getModifiedTime();
+            }
+            cached.entries.add(entry);
+        }
+        directories.put(directory.getPath(), cached);
+        changed.put(directory.getPath(), Boolean.TRUE);
+    }
+
+    /**
+     * Loads the cache file, if it exists. A later record for a directory replaces an earlier one, and a record cut
+     * short (ie. by a crash while it was written) ends the file.
+     */
+    public void loadScanCache() {
+        File file = new File(path);
+        if (!file.isFile())
+            return;
+        boolean outdated = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != version) {
+                outdated = true;
+                return;
+            }
+            while (true) {
+                String directoryPath;
+                try {
+                    directoryPath = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                directories.put(directoryPath, readDirectory(in));
+                recordsInFile++;
+            }
+        } catch (EOFException e) {
+            // The last record was cut short and is ignored.
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // A file in another format is started over the next time the cache is written.
+            if (outdated)
+                file.delete();
+        }
+    }
+
+    /**
+     * Writes the directories scanned since the last write to the end of the cache file, or rewrites the whole file
+     * if it has grown to more than twice the number of cached directories.
+     */
+    public void writeScanCache() {
+        if (changed.isEmpty())
+            return;
+        boolean rewrite = !new File(path).isFile() || recordsInFile + changed.size() > 2 * directories.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path, !rewrite)))) {
+            if (rewrite) {
+                out.writeInt(version);
+                recordsInFile = 0;
+                for (Map.Entry<String, CachedDirectory> entry : directories.entrySet()) {
+                    writeDirectory(out, entry.getKey(), entry.getValue());
+                    recordsInFile++;
+                }
+            } else {
+                for (String directoryPath : changed.keySet()) {
+                    writeDirectory(out, directoryPath, directories.get(directoryPath));
+                    recordsInFile++;
+                }
+            }
+            changed.clear();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the record for one directory.
+     *
+     * @param out           stream to write to
+     * @param directoryPath path of the directory
+     * @param cached        the cached entries of the directory
+     * @throws IOException if the record can't be written
+     */
+    private static void writeDirectory(DataOutputStream out, String directoryPath, CachedDirectory cached)
+            throws IOException {
+        out.writeUTF(directoryPath);
+        out.writeLong(cached.modifiedTime);
+        out.writeInt(cached.entries.size());
+        for (CachedEntry entry : cached.entries) {
+            out.writeBoolean(entry.directory);
+            out.writeUTF(entry.name);
+            out.writeLong(entry.modifiedTime);
+            if (!entry.directory) {
+                out.writeLong(entry.size);
+                out.writeUTF(entry.fileKey == null ? "" : entry.fileKey);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+                out.writeUTF(entry.baseName);
+                out.writeInt(entry.tags.length);
+                for (String tag : entry.tags) {
+                    out.writeUTF(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the record for one directory, after its path.
+     *
+     * @param in stream to read from
+     * @return the cached entries of the directory
+     * @throws IOException if the record can't be read
+     */
+    private static CachedDirectory readDirectory(DataInputStream in) throws IOException {
+        long modifiedTime = in.readLong();
+        int count = in.readInt();
+        CachedDirectory cached = new CachedDirectory(modifiedTime, new ArrayList<>(count));
+        for (int i = 0; i < count; i++) {
+            CachedEntry entry = new CachedEntry();
+            entry.directory = in.readBoolean();
+            entry.name = in.readUTF();
+            entry.modifiedTime = in.readLong();
+            if (!entry.directory) {
+                entry.size = in.readLong();
+                entry.fileKey = in.readUTF();
+                if (entry.fileKey.isEmpty())
+                    entry.fileKey = null;
+                entry.width = in.readInt();
+                entry.height = in.readInt();
+                entry.baseName = in.readUTF();
+                entry.tags = new String[in.readInt()];
+                for (int j = 0; j < entry.tags.length; j++) {
+                    entry.tags[j] = in.readUTF();
+                }
+            }
+            cached.entries.add(entry);
+        }
+        return cached;
+    }
+
+    /**
+     * The cached entries of one directory and the modified time the directory had when it was listed.
+     */
+    private static class CachedDirectory {
+
+        /**
+         * Last modified time of the directory when it was listed.
+         */
+        private final long modifiedTime;
+
+        /**
+         * The entries of the directory.
+         */
+        private final ArrayList<CachedEntry> entries;
+
+        /**
+         * Constructs a new CachedDirectory.
+         *
+         * @param modifiedTime last modified time of the directory when it was listed
+         * @param entries      the entries of the directory
+         */
+        CachedDirectory(long modifiedTime, ArrayList<CachedEntry> entries) {
+            this.modifiedTime = modifiedTime;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * One cached subdirectory or image, with what was parsed from its name.
+     */
+    private static class CachedEntry {
+
+        /**
+         * Whether the entry is a subdirectory.
+         */
+        private boolean directory;
+
+        /**
+         * Name of the entry.
+         */
+        private String name;
+
+        /**
+         * Last modified time of the entry. Only used for an image; a subdirectory's is read again when it is listed.
+         */
+        private long modifiedTime;
+
+        /**
+         * Size of the image in bytes.
+         */
+        private long size;
+
+        /**
+         * Key that identifies the image on its file system, or null.
+         */
+        private String fileKey;
+
+        /**
+         * Width of the image in pixels as shown, or 0 if unknown.
+         */
+        private int width;
+
+        /**
+         * Height of the image in pixels as shown, or 0 if unknown.
+         */
+        private int height;
+
+        /**
+         * Base name of the image without its tags.
+         */
+        private String baseName;
+
+        /**
+         * Names of the tags found in the name of the image.
+         */
+        private String[] tags;
+    }
+}
@@ -10,18 +10,80 @@ import java.io.Serializable;
  */
 public class Tag implements Serializable {
 
+    /**
+     * Serialization version of Tag, kept at the version the first release saved; only the name is serialized.
+     */
+    private static final long serialVersionUID = -586807033582992474L;
+
     /**
      * Name of the tag.
      */
     private String name;
 
+    /**
+     * The ID TagManager interned this Tag's name under, or -1 if it hasn't been looked up yet.
+     */
+    private transient int id;
+
     /**
      * Constructs a new Tag object with the given name inside the parameter.
      *
      * @param name The name of the Tag.
      */
     public Tag(String name) {
-        this.name = name.replaceAll("^ +| +$|( )+", "$1");
+        this.name = normalize(name);
+        this.id = -1;
+    }
+
+    /**
+     * Removes leading and trailing spaces from a Tag name and replaces repeated spaces with a single one. The name is
+     * returned as it is if there is nothing to remove.
+     *
+     * @param name the Tag name
+     * @return the name without leading, trailing or repeated spaces
+     */
+    static String normalize(String name) {
+        int start = 0;
+        int end = name.length();
+        while (start < end && name.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && name.charAt(end - 1) == ' ') {
+            end--;
+        }
+        boolean repeated = false;
+        for (int i = start + 1; i < end && !repeated; i++) {
+            repeated = name.charAt(i) == ' ' && name.charAt(i - 1) == ' ';
+        }
+        if (!repeated)
+            return (start == 0 && end == name.length()) ? name : name.substring(start, end);
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i) != ' ' || name.charAt(i - 1) != ' ')
+                sb.append(name.charAt(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the ID of this Tag, which is the same for every Tag with the same name for as long as the program runs.
+     *
+     * @return the interned ID of this Tag
+     * @see TagManager#intern(Tag)
+     */
+    public int getId() {
+        if (id < 0)
+            id = TagManager.intern(this).id;
+        return id;
+    }
+
+    /**
+     * Setter for the ID of this Tag, used by TagManager when the Tag's name is interned.
+     *
+     * @param id the interned ID of this Tag
+     */
+    void setId(int id) {
+        this.id = id;
     }
 
     /**
@@ -54,4 +116,25 @@ public class Tag implements Serializable {
     public boolean equals(Object other) {
         return (other instanceof Tag) && this.name.equals(((Tag) other).name);
     }
+
+    /**
+     * Overrides the existing hashCode method to match equals, so that Tags can be used in hash sets and maps.
+     *
+     * @return hash code of the name of the Tag
+     */
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    /**
+     * Replaces a deserialized Tag with the interned Tag of the same name, so that every Tag read back shares one
+     * object and ID per name.
+     *
+     * @return the interned Tag with this Tag's name
+     */
+    private Object readResolve() {
+        this.id = -1;
+        return TagManager.intern(this);
+    }
 }
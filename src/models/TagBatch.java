@@ -0,0 +1,218 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A TagBatch adds and removes the same Tags on many ImageFiles in one operation. The new tags and name of every image
+ * are worked out up front, when the TagBatch is constructed; the renames are then done in parallel, one task per
+ * directory, without touching the ImageFiles; and the ImageFiles, the TagIndex and the log are only updated at the
+ * end, once for the whole batch, by commit.
+ * <p>
+ * An image whose tags don't change is left out, and so is one whose new name is already taken, either by a file on
+ * disk or by another image in the batch. An image whose rename fails keeps its old name and tags. The constructor and
+ * commit must be called on the thread that owns the ImageFiles (ie. the JavaFX thread); rename can be called on any.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class TagBatch {
+
+    /**
+     * The renames planned for each directory, keyed by the directory's path.
+     */
+    private final HashMap<String, ArrayList<Change>> changes;
+
+    /**
+     * Number of planned renames.
+     */
+    private int size;
+
+    /**
+     * ID of the batch in the RenameJournal, once the renames have been done.
+     */
+    private long batch;
+
+    /**
+     * Whether the batch was written to the RenameJournal.
+     */
+    private boolean journaled;
+
+    /**
+     * Plans adding the given Tags to and removing the other given Tags from every given ImageFile. Tags that are both
+     * added and removed are removed. The added Tags are named after the ones already in each image's name, in the
+     * given order.
+     *
+     * @param images      the ImageFiles to change
+     * @param addedTags   the Tags to add
+     * @param removedTags the Tags to remove
+     */
+    public TagBatch(Collection<ImageFile> images, ArrayList<Tag> addedTags, ArrayList<Tag> removedTags) {
+        this.changes = new HashMap<>();
+        int[] added = ImageFile.toIds(addedTags);
+        int[] removed = ImageFile.toIds(removedTags);
+        HashSet<String> targets = new HashSet<>();
+        for (ImageFile image : images) {
+            TagSet oldTags = image.getTagSet();
+            TagSet newTags = TagSet.of(ImageFile.difference(ImageFile.union(oldTags.getIds(), added), removed));
+            if (newTags == oldTags)
+                continue;
+            File source = image.getImageFile();
+            File dest = new File(source.getParent(), image.generateNewName(newTags, addedTags));
+            if (!targets.add(dest.getPath()))
+                continue;
+            changes.computeIfAbsent(source.getParent(), parent -> new ArrayList<>())
+                    .add(new Change(image, source, dest, oldTags, newTags));
+            size++;
+        }
+    }
+
+    /**
+     * Returns the number of images the TagBatch will rename.
+     *
+     * @return the number of planned renames
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the paths of every file the batch will rename, both as it is named now and with its new name.
+     *
+     * @return the paths of the files before and after they are renamed
+     */
+    public ArrayList<String> getPaths() {
+        ArrayList<String> paths = new ArrayList<>(2 * size);
+        for (ArrayList<Change> group : changes.values()) {
+            for (Change change : group) {
+                paths.add(change.source.getPath());
+                paths.add(change.dest.getPath());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Renames the files of the batch on disk, in parallel across directories. The whole batch is written to the
+     * RenameJournal before any file is moved, and which files were moved is written once they all have been. Only the
+     * file system is touched, so this can run off the JavaFX thread.
+     */
+    public void rename() {
+        ArrayList<Change> all = new ArrayList<>(size);
+        ArrayList<File> sources = new ArrayList<>(size);
+        ArrayList<File> destinations = new ArrayList<>(size);
+        for (ArrayList<Change> group : changes.values()) {
+            for (Change change : group) {
+                all.add(change);
+                sources.add(change.source);
+                destinations.add(change.dest);
+            }
+        }
+        RenameJournal journal = RenameJournal.getRenameJournal();
+        try {
+            batch = journal.begin(sources, destinations);
+            journaled = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        changes.values().parallelStream().forEach(group -> {
+            for (Change change : group) {
+                change.renamed = RenameJournal.move(change.source, change.dest);
+            }
+        });
+        boolean[] moved = new boolean[all.size()];
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] = all.get(i).renamed;
+        }
+        journal.commit(batch, moved);
+    }
+
+    /**
+     * Updates every renamed ImageFile with its new name and tags, records the change in its history, and writes the
+     * whole batch to the master log as one group.
+     *
+     * @return the ImageFiles that were renamed
+     */
+    public ArrayList<ImageFile> commit() {
+        ArrayList<ImageFile> renamed = new ArrayList<>(size);
+        ArrayList<Log> logs = new ArrayList<>(size);
+        for (ArrayList<Change> group : changes.values()) {
+            for (Change change : group) {
+                if (!change.renamed)
+                    continue;
+                Log log = new Log(change.source.getName(), change.dest.getName(), change.oldTags, change.newTags);
+                String fileKey = change.image.getFileKey();
+                log.setKeys(HistoryLog.keyOf(fileKey, change.source), HistoryLog.keyOf(fileKey, change.dest));
+                change.image.applyRename(change.dest, change.newTags, log);
+                renamed.add(change.image);
+                logs.add(log);
+            }
+        }
+        // Nothing is renamed unless the batch was journaled, and it is only finished once its Logs are synced.
+        RenameJournal journal = RenameJournal.getRenameJournal();
+        long journalBatch = batch;
+        if (!logs.isEmpty())
+            LogAppender.getLogAppender().append(logs, () -> journal.finish(journalBatch));
+        else if (journaled)
+            journal.finish(journalBatch);
+        return renamed;
+    }
+
+    /**
+     * The planned rename of one image.
+     */
+    private static class Change {
+
+        /**
+         * The ImageFile being renamed.
+         */
+        private final ImageFile image;
+
+        /**
+         * The file as it is named now.
+         */
+        private final File source;
+
+        /**
+         * The file with its new name.
+         */
+        private final File dest;
+
+        /**
+         * TagSet of the Tags the image has now.
+         */
+        private final TagSet oldTags;
+
+        /**
+         * TagSet of the Tags the image will have.
+         */
+        private final TagSet newTags;
+
+        /**
+         * Whether the file was renamed on disk.
+         */
+        private volatile boolean renamed;
+
+        /**
+         * Constructs a new Change.
+         *
+         * @param image     the ImageFile being renamed
+         * @param source    the file as it is named now
+         * @param dest      the file with its new name
+         * @param oldTags   TagSet of the Tags the image has now
+         * @param newTags   TagSet of the Tags the image will have
+         */
+        Change(ImageFile image, File source, File dest, TagSet oldTags, TagSet newTags) {
+            this.image = image;
+            this.source = source;
+            this.dest = dest;
+            this.oldTags = oldTags;
+            this.newTags = newTags;
+        }
+    }
+}
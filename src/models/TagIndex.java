@@ -0,0 +1,319 @@
+package models;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * The TagIndex maps every Tag to the set of images that are currently tagged with it, so that library-wide tag
+ * queries don't have to look at every ImageFile. Each ImageFile gets an int ID when it is added, and each interned
+ * Tag ID maps to a CompressedBitmap of those image IDs.
+ * <p>
+ * Queries are written as tag expressions with AND, OR, NOT and parentheses, ie. "@beach AND NOT @blurry". AND binds
+ * tighter than OR, and the @ in front of a tag name is optional.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class TagIndex {
+
+    /**
+     * The TagIndex shared by the whole program.
+     */
+    private static final TagIndex tagIndex = new TagIndex();
+
+    /**
+     * The ID of every ImageFile in the index.
+     */
+    private final IdentityHashMap<ImageFile, Integer> imageIds;
+
+    /**
+     * The ImageFile for each ID, or null if it was removed from the index.
+     */
+    private final ArrayList<ImageFile> images;
+
+    /**
+     * The IDs of every ImageFile in the index, which NOT is taken against.
+     */
+    private final CompressedBitmap allImages;
+
+    /**
+     * The IDs of the images tagged with each Tag, indexed by the interned ID of the Tag. A Tag no image has had yet
+     * may have no bitmap.
+     */
+    private final ArrayList<CompressedBitmap> imagesByTag;
+
+    /**
+     * Constructs a new, empty TagIndex.
+     */
+    TagIndex() {
+        this.imageIds = new IdentityHashMap<>();
+        this.images = new ArrayList<>();
+        this.allImages = new CompressedBitmap();
+        this.imagesByTag = new ArrayList<>();
+    }
+
+    /**
+     * Returns the TagIndex shared by the whole program.
+     *
+     * @return the shared TagIndex
+     */
+    public static TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Adds the given ImageFile and its current Tags to the index. Does nothing if it is already in the index.
+     *
+     * @param imageFile the ImageFile to add
+     */
+    public synchronized void add(ImageFile imageFile) {
+        if (imageIds.containsKey(imageFile))
+            return;
+        int id = images.size();
+        imageIds.put(imageFile, id);
+        images.add(imageFile);
+        allImages.add(id);
+        for (int tagId : imageFile.getCurrentTagIds()) {
+            bitmapFor(tagId).add(id);
+        }
+    }
+
+    /**
+     * Adds every ImageFile in the given Directory objects to the index.
+     *
+     * @param directories the Directory objects whose images to add
+     */
+    public synchronized void addAll(ArrayList<Directory> directories) {
+        for (Directory directory : directories) {
+            addDirectory(directory);
+        }
+    }
+
+    /**
+     * Adds every ImageFile in the given Directory, but not in its subdirectories, to the index.
+     *
+     * @param directory the Directory whose images to add
+     */
+    public synchronized void addDirectory(Directory directory) {
+        for (File file : directory.getFiles()) {
+            if (file instanceof ImageFile)
+                add((ImageFile) file);
+        }
+    }
+
+    /**
+     * Removes the given ImageFile from the index.
+     *
+     * @param imageFile the ImageFile to remove
+     */
+    public synchronized void remove(ImageFile imageFile) {
+        Integer id = imageIds.remove(imageFile);
+        if (id == null)
+            return;
+        images.set(id, null);
+        allImages.remove(id);
+        for (int tagId : imageFile.getCurrentTagIds()) {
+            bitmapFor(tagId).remove(id);
+        }
+    }
+
+    /**
+     * Moves the given ImageFile from the Tags it had to the Tags it has now. Does nothing if it isn't in the index.
+     *
+     * @param imageFile the ImageFile whose Tags changed
+     * @param oldTagIds IDs of the Tags the ImageFile had
+     * @param newTagIds IDs of the Tags the ImageFile has now
+     */
+    synchronized void update(ImageFile imageFile, int[] oldTagIds, int[] newTagIds) {
+        Integer id = imageIds.get(imageFile);
+        if (id == null)
+            return;
+        for (int tagId : oldTagIds) {
+            bitmapFor(tagId).remove(id);
+        }
+        for (int tagId : newTagIds) {
+            bitmapFor(tagId).add(id);
+        }
+    }
+
+    /**
+     * Returns every ImageFile in the index that matches the given tag expression, ie. "@beach AND NOT @blurry".
+     *
+     * @param expression the tag expression
+     * @return ArrayList of the matching ImageFile objects
+     * @throws IllegalArgumentException if the expression can't be parsed
+     */
+    public synchronized ArrayList<ImageFile> query(String expression) {
+        Parser parser = new Parser(tokenize(expression));
+        CompressedBitmap result = parser.parseOr();
+        if (parser.position != parser.tokens.size())
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position) + " in query.");
+        ArrayList<ImageFile> matches = new ArrayList<>();
+        for (int id : result.toArray()) {
+            matches.add(images.get(id));
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the bitmap for the Tag with the given ID, creating an empty one if there isn't one yet.
+     *
+     * @param tagId interned ID of the Tag
+     * @return the bitmap of the images tagged with it
+     */
+    private CompressedBitmap bitmapFor(int tagId) {
+        while (imagesByTag.size() <= tagId) {
+            imagesByTag.add(null);
+        }
+        CompressedBitmap bitmap = imagesByTag.get(tagId);
+        if (bitmap == null) {
+            bitmap = new CompressedBitmap();
+            imagesByTag.set(tagId, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Splits a tag expression into the operators AND, OR and NOT, parentheses, and Tag names. Consecutive words that
+     * aren't operators are joined into one Tag name, since Tag names may contain single spaces.
+     *
+     * @param expression the tag expression
+     * @return the tokens of the expression
+     */
+    private static ArrayList<String> tokenize(String expression) {
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder tagName = new StringBuilder();
+        for (String word : expression.trim().split("\\s+")) {
+            int start = 0;
+            int end = word.length();
+            while (start < end && word.charAt(start) == '(') {
+                addTagName(tokens, tagName);
+                tokens.add("(");
+                start++;
+            }
+            int closing = 0;
+            while (end > start && word.charAt(end - 1) == ')') {
+                closing++;
+                end--;
+            }
+            String part = word.substring(start, end);
+            if (part.equals("AND") || part.equals("OR") || part.equals("NOT")) {
+                addTagName(tokens, tagName);
+                tokens.add(part);
+            } else if (!part.isEmpty()) {
+                if (part.startsWith("@") && tagName.length() != 0)
+                    addTagName(tokens, tagName);
+                if (tagName.length() != 0)
+                    tagName.append(' ');
+                tagName.append(part);
+            }
+            for (int i = 0; i < closing; i++) {
+                addTagName(tokens, tagName);
+                tokens.add(")");
+            }
+        }
+        addTagName(tokens, tagName);
+        return tokens;
+    }
+
+    /**
+     * Adds the Tag name collected so far as a token, without its leading @, and clears it.
+     *
+     * @param tokens  the tokens of the expression
+     * @param tagName the Tag name collected so far
+     */
+    private static void addTagName(ArrayList<String> tokens, StringBuilder tagName) {
+        if (tagName.length() != 0) {
+            String name = (tagName.charAt(0) == '@') ? tagName.substring(1) : tagName.toString();
+            tokens.add("@" + name);
+            tagName.setLength(0);
+        }
+    }
+
+    /**
+     * A recursive descent parser that evaluates a tokenized tag expression against the index.
+     */
+    private class Parser {
+
+        /**
+         * The tokens of the expression.
+         */
+        private final ArrayList<String> tokens;
+
+        /**
+         * Position of the next token to read.
+         */
+        private int position;
+
+        /**
+         * Constructs a new Parser for the given tokens.
+         *
+         * @param tokens the tokens of the expression
+         */
+        Parser(ArrayList<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Parses terms joined by OR.
+         *
+         * @return the images matching the parsed expression
+         */
+        CompressedBitmap parseOr() {
+            CompressedBitmap result = parseAnd();
+            while (accept("OR")) {
+                result = result.or(parseAnd());
+            }
+            return result;
+        }
+
+        /**
+         * Parses factors joined by AND.
+         *
+         * @return the images matching the parsed expression
+         */
+        CompressedBitmap parseAnd() {
+            CompressedBitmap result = parseNot();
+            while (accept("AND")) {
+                result = result.and(parseNot());
+            }
+            return result;
+        }
+
+        /**
+         * Parses a Tag name or a parenthesized expression, with any number of NOTs in front of it.
+         *
+         * @return the images matching the parsed expression
+         */
+        CompressedBitmap parseNot() {
+            if (accept("NOT"))
+                return allImages.andNot(parseNot());
+            if (accept("(")) {
+                CompressedBitmap result = parseOr();
+                if (!accept(")"))
+                    throw new IllegalArgumentException("Missing ) in query.");
+                return result;
+            }
+            if (position == tokens.size() || !tokens.get(position).startsWith("@"))
+                throw new IllegalArgumentException("Expected a tag in query.");
+            Tag tag = TagManager.getInterned(Tag.normalize(tokens.get(position++).substring(1)));
+            // A name that was never interned isn't on any image, and isn't interned just for being looked up.
+            return (tag == null) ? new CompressedBitmap() : bitmapFor(tag.getId());
+        }
+
+        /**
+         * Reads the next token if it is the given one.
+         *
+         * @param token the token to look for
+         * @return true if the next token was the given one, and false if not
+         */
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.io.*;
 import views.*;
 
@@ -9,6 +10,9 @@ import views.*;
  * classes in the program.
  * <p>
  * If this class's list of tags contains a particular Tag, that Tag can be added to an Image.
+ * <p>
+ * TagManager also interns Tag names: every distinct name ever used gets a stable int ID, which ImageFile uses to
+ * store its tags compactly. IDs are only stable while the program runs, so anything saved to disk stores names.
  *
  * @author Art Zhuoer Xia
  * @version 1.2
@@ -16,16 +20,213 @@ import views.*;
  */
 public class TagManager implements Serializable {
 
+    /**
+     * Serialization version of TagManager, kept at the version the first release had.
+     */
+    private static final long serialVersionUID = -5670885183525330814L;
+
     /**
      * ArrayList of the current tags that exist that could be added or deleted from images.
      */
     private ArrayList<Tag> listOfTags;
 
+    /**
+     * The Tags in listOfTags, for checking whether a Tag is in the list without searching it.
+     */
+    private transient HashSet<Tag> setOfTags;
+
+    /**
+     * Whether the tags were loaded from the serialized tag file of an earlier version, which is only deleted
+     * once they have been written to the catalog file.
+     */
+    private transient boolean serializedLoaded;
+
+    /**
+     * Whether the serialized tag file of an earlier version couldn't be loaded. The tags aren't written to the catalog
+     * file then, so that the serialized file is still read the next time rather than hidden behind the catalog file.
+     */
+    private transient boolean serializedUnreadable;
+
+    /**
+     * Open-addressed hash table of every interned Tag, keyed by name. It is looked up by CharSequence so that a name
+     * being parsed doesn't have to be turned into a String to find its Tag.
+     */
+    private static Tag[] internedTags = new Tag[64];
+
+    /**
+     * The interned Tags, in order of their IDs.
+     */
+    private static final ArrayList<Tag> tagsById = new ArrayList<>();
+
     /**
      * Constructs a new TagManager with a new ArrayList listOfTags.
      */
     public TagManager() {
         this.listOfTags = new ArrayList<>();
+        this.setOfTags = new HashSet<>();
+    }
+
+    /**
+     * Returns the interned Tag with the same name as the given Tag, interning the given Tag under the next free ID if
+     * its name hasn't been seen before.
+     *
+     * @param tag the Tag to intern
+     * @return the interned Tag with the same name
+     */
+    static synchronized Tag intern(Tag tag) {
+        Tag interned = lookUp(tag.getName());
+        if (interned == null) {
+            interned = tag;
+            addInterned(interned);
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the interned Tag with the given normalized name, interning a new Tag for it if the name hasn't been seen
+     * before. No String is created for a name that is already interned.
+     *
+     * @param name a Tag name, without leading, trailing or repeated spaces
+     * @return the interned Tag with the name
+     */
+    static synchronized Tag intern(CharSequence name) {
+        Tag interned = lookUp(name);
+        if (interned == null) {
+            interned = new Tag(name.toString());
+            addInterned(interned);
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the interned Tag with the given normalized name, without interning the name if it hasn't been seen
+     * before.
+     *
+     * @param name a Tag name, without leading, trailing or repeated spaces
+     * @return the interned Tag with the name, or null if there isn't one
+     */
+    static synchronized Tag getInterned(CharSequence name) {
+        return lookUp(name);
+    }
+
+    /**
+     * Returns the interned Tag with the given name, or null if there isn't one.
+     *
+     * @param name the Tag name
+     * @return the interned Tag, or null
+     */
+    private static Tag lookUp(CharSequence name) {
+        int mask = internedTags.length - 1;
+        for (int slot = hash(name) & mask; internedTags[slot] != null; slot = (slot + 1) & mask) {
+            if (internedTags[slot].getName().contentEquals(name))
+                return internedTags[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Gives the given Tag the next free ID and adds it to the interned Tags, growing the table when it is half full.
+     *
+     * @param tag a Tag whose name isn't interned yet
+     */
+    private static void addInterned(Tag tag) {
+        tag.setId(tagsById.size());
+        tagsById.add(tag);
+        if (2 * tagsById.size() > internedTags.length) {
+            internedTags = new Tag[internedTags.length * 2];
+            for (Tag interned : tagsById) {
+                insert(interned);
+            }
+        } else {
+            insert(tag);
+        }
+    }
+
+    /**
+     * Puts the given Tag in the first free slot for its name.
+     *
+     * @param tag the Tag to put in the table
+     */
+    private static void insert(Tag tag) {
+        int mask = internedTags.length - 1;
+        int slot = hash(tag.getName()) & mask;
+        while (internedTags[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        internedTags[slot] = tag;
+    }
+
+    /**
+     * Returns the same hash code for a CharSequence as String.hashCode does for its characters, spread so that close
+     * hash codes land in different slots.
+     *
+     * @param name the Tag name
+     * @return the hash of the name
+     */
+    private static int hash(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns whether the given name can be the name of a Tag in the list of tags: it may not be blank or longer than
+     * 20 characters, and may not contain illegal filename characters, or an @ after the first character.
+     *
+     * @param name the normalized Tag name
+     * @return true if the name is valid, and false if not
+     */
+    static boolean isValidName(CharSequence name) {
+        if (name.length() == 0 || name.length() > 20)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' || c == '/' || c == ':' || c == '*' || c == '?' || c == '"' || c == '<' || c == '>'
+                    || c == '|' || (c == '@' && i > 0))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the Tag with the given normalized name to the list of tags if it is valid and isn't there yet, and returns
+     * the interned Tag if it is in the list afterwards. This is how tags parsed from file names are added, without a
+     * new Tag or String for names that have been seen before.
+     *
+     * @param name the normalized Tag name
+     * @return the interned Tag if it is in the list of tags, or null if the name isn't valid
+     */
+    synchronized Tag addTagName(CharSequence name) {
+        Tag tag = intern(name);
+        if (!setOfTags.contains(tag)) {
+            if (!isValidName(name))
+                return null;
+            listOfTags.add(tag);
+            setOfTags.add(tag);
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the interned Tag with the given ID.
+     *
+     * @param id the ID of an interned Tag
+     * @return the interned Tag with that ID
+     */
+    static synchronized Tag getTag(int id) {
+        return tagsById.get(id);
+    }
+
+    /**
+     * Returns whether the given Tag is in TagManager's list of tags.
+     *
+     * @param tag the Tag to look for
+     * @return true if listOfTags contains the Tag, and false if not
+     */
+    public synchronized boolean containsTag(Tag tag) {
+        return setOfTags.contains(tag);
     }
 
 
@@ -34,21 +235,14 @@ public class TagManager implements Serializable {
      * 20 characters, may not be blank, contain illegal filename characters, trailing or leading whitespaces or
      * multiple spaces. This function will automatically detect and remove whitespaces; in all other invalid cases,
      * the tag will not be added.
-     * Regex adapted from StackOverflow users polygenelubricants, Alex_M
-     * Regular Expressions found here:
-     * https://stackoverflow.com/questions/2932392/java-how-to-replace-2-or-more-spaces-with-single-space-in-string-and-delete-lead
-     * https://stackoverflow.com/questions/754307/regex-to-replace-characters-that-windows-doesnt-accept-in-a-filename
      *
      * @param tag Tag that's to be added to the listOfTags
      * @see Tag
      */
-    public boolean addTag(Tag tag) {
-        String tagName = tag.getName();
-        if ((tagName.length() > 0) &&
-                (tagName.length() <= 20) &&
-                (tagName.matches("^[^.\\\\/:*?\"<>|]?[^\\\\/:*?\"@<>|]*")) &&
-                (!listOfTags.contains(tag))) {
+    public synchronized boolean addTag(Tag tag) {
+        if (isValidName(tag.getName()) && (!setOfTags.contains(tag))) {
             listOfTags.add(tag);
+            setOfTags.add(tag);
             return true;
         } else return false;
     }
@@ -59,9 +253,9 @@ public class TagManager implements Serializable {
      * @param tagsToRemove ArrayList of the tags to be removed from listOfTags.
      * @see Tag
      */
-    public void removeTag(ArrayList<Tag> tagsToRemove) {
+    public synchronized void removeTag(ArrayList<Tag> tagsToRemove) {
         for (Tag tag : tagsToRemove) {
-            if (listOfTags.contains(tag)) {
+            if (setOfTags.remove(tag)) {
                 listOfTags.remove(tag);
             }
         }
@@ -78,35 +272,61 @@ public class TagManager implements Serializable {
     }
 
     /**
-     * Loads the serialized tag file, and restores the last state of TagManager.
+     * Loads the tag catalog file, and restores the last state of TagManager. If there is no catalog file yet, the
+     * serialized tag file of an earlier version is loaded instead; it is replaced by the catalog file when the tags
+     * are next written.
      *
      * @throws IOException            if IOException occurs, it's then thrown
      * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
      */
     @SuppressWarnings("unchecked")
     public void loadSavedTags() throws IOException, ClassNotFoundException {
+        if (new File(Main.tagCatalog).isFile()) {
+            CatalogInput in = new CatalogInput(Main.tagCatalog);
+            int count = in.readVarInt();
+            ArrayList<Tag> tags = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tags.add(in.readTag());
+            }
+            listOfTags = tags;
+            setOfTags = new HashSet<>(listOfTags);
+            return;
+        }
         // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
         // 2017-11-19
         File fileExists = new File(Main.serializedTags);
         if (fileExists.isFile()) {
+            // Cleared once the file has been read.
+            serializedUnreadable = true;
             FileInputStream fileIn = new FileInputStream(fileExists.getPath());
             ObjectInputStream in = new ObjectInputStream(fileIn);
             listOfTags = ((ArrayList<Tag>) in.readObject());
+            setOfTags = new HashSet<>(listOfTags);
             in.close();
             fileIn.close();
+            serializedUnreadable = false;
+            serializedLoaded = true;
         }
     }
 
     /**
-     * Writes to the serialized directory file, saving the current state of TagManager.
+     * Writes to the tag catalog file, saving the current state of TagManager, and deletes the serialized tag file of
+     * an earlier version if the tags were loaded from it. Nothing is written if there is a serialized tag file that
+     * couldn't be loaded, which is kept to be read again.
      */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void writeSavedTags() throws IOException {
-        // Code adapted from https://www.tutorialspoint.com/java/java_serialization.htm
-        // 2017-11-19
-        FileOutputStream fileOut = new FileOutputStream(Main.serializedTags);
-        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-        out.writeObject(listOfTags);
-        out.close();
-        fileOut.close();
+        if (serializedUnreadable)
+            return;
+        CatalogOutput out = new CatalogOutput();
+        synchronized (this) {
+            out.writeVarInt(listOfTags.size());
+            for (Tag tag : listOfTags) {
+                out.writeTag(tag);
+            }
+        }
+        out.writeTo(Main.tagCatalog);
+        if (serializedLoaded)
+            new File(Main.serializedTags).delete();
     }
 }
@@ -0,0 +1,198 @@
+package models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * A TagSet is an immutable snapshot of a set of Tags, kept as the sorted IDs the Tags were interned under. TagSets are
+ * hash-consed: there is only ever one TagSet with the same Tags, so every image with the same Tags and every Log
+ * before or after a change to them shares one TagSet instead of holding a list of its own. The history of an image
+ * then only costs a new TagSet for each set of Tags it hasn't had before, and the old Tags of a Log are the same
+ * object as the new Tags of the Log before it.
+ * <p>
+ * A TagSet is serialized as the names of its Tags, since the IDs are only valid while the program runs, and is
+ * replaced with the shared TagSet when it is read back. Java serialization writes an object shared by several others
+ * only once, so a saved history keeps the sharing too. Every method is thread safe.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public final class TagSet implements Serializable {
+
+    /**
+     * Serialization version of TagSet, kept at the version TagSets were first saved with.
+     */
+    private static final long serialVersionUID = -7341397816979844993L;
+
+    /**
+     * The shared TagSets, each mapped to itself. A TagSet no image or Log holds anymore is dropped.
+     */
+    private static final WeakHashMap<TagSet, WeakReference<TagSet>> snapshots = new WeakHashMap<>();
+
+    /**
+     * The TagSet of no Tags.
+     */
+    static final TagSet empty = of(new int[0]);
+
+    /**
+     * Interned IDs of the Tags in increasing order, without repeats.
+     */
+    private transient int[] ids;
+
+    /**
+     * Hash code of the IDs.
+     */
+    private transient int hash;
+
+    /**
+     * Constructs a new TagSet of the Tags with the given IDs.
+     *
+     * @param ids sorted, distinct IDs of the Tags
+     */
+    private TagSet(int[] ids) {
+        this.ids = ids;
+        this.hash = Arrays.hashCode(ids);
+    }
+
+    /**
+     * Returns the shared TagSet of the Tags with the given IDs.
+     *
+     * @param ids sorted, distinct IDs of the Tags; the array must not be changed afterwards
+     * @return the shared TagSet
+     */
+    static synchronized TagSet of(int[] ids) {
+        TagSet tagSet = new TagSet(ids);
+        WeakReference<TagSet> shared = snapshots.get(tagSet);
+        TagSet existing = (shared == null) ? null : shared.get();
+        if (existing != null)
+            return existing;
+        snapshots.put(tagSet, new WeakReference<>(tagSet));
+        return tagSet;
+    }
+
+    /**
+     * Returns the shared TagSet of the given Tags. Repeated Tags are only counted once.
+     *
+     * @param tags ArrayList of Tag objects
+     * @return the shared TagSet
+     */
+    static TagSet of(ArrayList<Tag> tags) {
+        return tags.isEmpty() ? empty : of(ImageFile.toIds(tags));
+    }
+
+    /**
+     * Returns the interned IDs of the Tags in this TagSet.
+     *
+     * @return the IDs in increasing order; the array must not be changed
+     */
+    int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns the Tags in this TagSet, in the order of their IDs.
+     *
+     * @return a new ArrayList of the Tag objects
+     */
+    public ArrayList<Tag> toTags() {
+        return ImageFile.toTags(ids);
+    }
+
+    /**
+     * Returns the number of Tags in this TagSet.
+     *
+     * @return number of Tags
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns whether this TagSet holds the given Tag.
+     *
+     * @param tag the Tag to look for
+     * @return true if the Tag is in this TagSet, and false if not
+     */
+    public boolean contains(Tag tag) {
+        return Arrays.binarySearch(ids, tag.getId()) >= 0;
+    }
+
+    /**
+     * Returns whether the given object is a TagSet with the same Tags.
+     *
+     * @param other object to compare to
+     * @return true if other is a TagSet with the same Tags, and false if not
+     */
+    @Override
+    public boolean equals(Object other) {
+        return (other == this) || (other instanceof TagSet && hash == ((TagSet) other).hash
+                && Arrays.equals(ids, ((TagSet) other).ids));
+    }
+
+    /**
+     * Returns the hash code of the IDs of the Tags, to match equals.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the Tags of this TagSet as a list.
+     *
+     * @return String representation of the Tags
+     */
+    @Override
+    public String toString() {
+        return toTags().toString();
+    }
+
+    /**
+     * Writes the names of the Tags in place of their IDs.
+     *
+     * @param out the stream to write to
+     * @throws IOException if IOException occurs, it's then thrown
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(ids.length);
+        for (int id : ids) {
+            out.writeObject(TagManager.getTag(id).getName());
+        }
+    }
+
+    /**
+     * Reads the names of the Tags and interns them again.
+     *
+     * @param in the stream to read from
+     * @throws IOException            if IOException occurs, it's then thrown
+     * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ArrayList<Tag> tags = new ArrayList<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            tags.add(new Tag((String) in.readObject()));
+        }
+        this.ids = ImageFile.toIds(tags);
+        this.hash = Arrays.hashCode(ids);
+    }
+
+    /**
+     * Replaces a deserialized TagSet with the shared TagSet of the same Tags.
+     *
+     * @return the shared TagSet
+     */
+    private Object readResolve() {
+        return of(ids);
+    }
+}
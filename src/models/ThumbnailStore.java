@@ -0,0 +1,488 @@
+package models;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A ThumbnailStore keeps small thumbnails of images on disk between runs, so that a folder that was browsed before can
+ * show its thumbnails without decoding a single image. Thumbnails are stored as raw ARGB pixels in a pack file that
+ * is only appended to, and read straight out of a MappedByteBuffer of it. An index file holds where each thumbnail
+ * is in the pack.
+ * <p>
+ * Thumbnails are keyed by the identity of the image on its file system (ie. device and inode) when there is one, so
+ * that renaming an image when it is tagged keeps its thumbnail, and by its path otherwise. Each thumbnail records the
+ * modified time of the image it was made from, and isn't handed out once the image has changed. The index is only
+ * appended to in the same way as the ScanCache, and the pack is rewritten without stale thumbnails once more than
+ * half of it is stale. Every public method is synchronized, so thumbnails can be added from background threads.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class ThumbnailStore {
+
+    /**
+     * Version of the index file format, written at the start of the file.
+     */
+    private static final int version = 1;
+
+    /**
+     * Bytes each pixel takes up in the pack.
+     */
+    private static final int bytesPerPixel = 4;
+
+    /**
+     * Bytes of the width and height written before the pixels of each thumbnail.
+     */
+    private static final int headerSize = 8;
+
+    /**
+     * Path of the pack file.
+     */
+    private final String packPath;
+
+    /**
+     * Path of the index file.
+     */
+    private final String indexPath;
+
+    /**
+     * Where each thumbnail is in the pack, keyed by the identity of its image.
+     */
+    private final HashMap<String, Entry> entries;
+
+    /**
+     * Keys of the entries added or changed since the index was last written.
+     */
+    private final HashMap<String, Boolean> changed;
+
+    /**
+     * Channel the pack is appended to and mapped from, or null if the pack isn't open.
+     */
+    private FileChannel pack;
+
+    /**
+     * Read-only mapping of the pack, or null if nothing has been mapped yet.
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * Bytes of the pack taken up by thumbnails that are in the index.
+     */
+    private long liveBytes;
+
+    /**
+     * Number of entry records in the index file.
+     */
+    private int recordsInFile;
+
+    /**
+     * Constructs a new, empty ThumbnailStore that is kept in the pack and index files at the given paths.
+     *
+     * @param packPath  path of the pack file
+     * @param indexPath path of the index file
+     */
+    public ThumbnailStore(String packPath, String indexPath) {
+        this.packPath = packPath;
+        this.indexPath = indexPath;
+        this.entries = new HashMap<>();
+        this.changed = new HashMap<>();
+    }
+
+    /**
+     * Returns the key the thumbnail of the given ImageFile is stored under.
+     *
+     * @param imageFile the ImageFile
+     * @return the file key of the ImageFile if it has one, and its path otherwise
+     */
+    private static String keyOf(ImageFile imageFile) {
+        return (imageFile.getFileKey() != null) ? imageFile.getFileKey() : imageFile.getImageFile().getPath();
+    }
+
+    /**
+     * Returns the last modified time of the given ImageFile, as read when it was scanned if it was.
+     *
+     * @param imageFile the ImageFile
+     * @return the last modified time in milliseconds
+     */
+    private static long modifiedTimeOf(ImageFile imageFile) {
+        return (imageFile.getModifiedTime() != 0) ? imageFile.getModifiedTime()
+                : imageFile.getImageFile().lastModified();
+    }
+
+    /**
+     * Returns whether there is an up to date thumbnail of the given ImageFile.
+     *
+     * @param imageFile the ImageFile
+     * @return true if its thumbnail is stored and was made since it was last modified, and false if not
+     */
+    public synchronized boolean contains(ImageFile imageFile) {
+        Entry entry = entries.get(keyOf(imageFile));
+        return entry != null && entry.modifiedTime == modifiedTimeOf(imageFile);
+    }
+
+    /**
+     * Returns the thumbnail of the given ImageFile, read from the mapped pack without copying its pixels.
+     *
+     * @param imageFile the ImageFile
+     * @return the Thumbnail, or null if there isn't one or the ImageFile has changed since it was made
+     */
+    public synchronized Thumbnail get(ImageFile imageFile) {
+        String key = keyOf(imageFile);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.modifiedTime != modifiedTimeOf(imageFile))
+            return null;
+        if (!entry.path.equals(imageFile.getImageFile().getPath())) {
+            entry.path = imageFile.getImageFile().getPath();
+            changed.put(key, Boolean.TRUE);
+        }
+        try {
+            if (mapped == null || entry.offset + entry.length > mapped.capacity())
+                map();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) entry.offset);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        buffer.limit((int) entry.offset + entry.length);
+        return new Thumbnail(width, height, buffer.slice().asIntBuffer());
+    }
+
+    /**
+     * Appends the given thumbnail of the given ImageFile to the pack, replacing the one stored before.
+     *
+     * @param imageFile the ImageFile the thumbnail was made from
+     * @param width     width of the thumbnail
+     * @param height    height of the thumbnail
+     * @param pixels    the ARGB pixels of the thumbnail, row by row
+     */
+    public synchronized void put(ImageFile imageFile, int width, int height, int[] pixels) {
+        int length = headerSize + width * height * bytesPerPixel;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.asIntBuffer().put(pixels, 0, width * height);
+        buffer.rewind();
+        try {
+            open();
+            long offset = pack.size();
+            if (offset + length > Integer.MAX_VALUE)
+                return;
+            while (buffer.hasRemaining()) {
+                pack.write(buffer, offset + buffer.position());
+            }
+            Entry entry = new Entry(imageFile.getImageFile().getPath(), modifiedTimeOf(imageFile), offset, length);
+            String key = keyOf(imageFile);
+            Entry previous = entries.put(key, entry);
+            if (previous != null)
+                liveBytes -= previous.length;
+            liveBytes += length;
+            changed.put(key, Boolean.TRUE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the index file, if it exists. A later record for an image replaces an earlier one, and a record cut short
+     * (ie. by a crash while it was written) ends the file. Records that point past the end of the pack are ignored.
+     */
+    public synchronized void loadThumbnails() {
+        File file = new File(indexPath);
+        if (!file.isFile())
+            return;
+        long packSize = new File(packPath).length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != version)
+                return;
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+                recordsInFile++;
+                if (entry.offset + entry.length > packSize)
+                    continue;
+                Entry previous = entries.put(key, entry);
+                if (previous != null)
+                    liveBytes -= previous.length;
+                liveBytes += entry.length;
+            }
+        } catch (EOFException e) {
+            // The last record was cut short and is ignored.
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the entries added or changed since the last write to the end of the index file, or rewrites the whole
+     * file if it has grown to more than twice the number of entries.
+     */
+    public synchronized void writeThumbnails() {
+        if (changed.isEmpty())
+            return;
+        writeIndex(!new File(indexPath).isFile() || recordsInFile + changed.size() > 2 * entries.size());
+    }
+
+    /**
+     * Writes the changed entries to the end of the index file, or every entry to a new index file.
+     *
+     * @param rewrite whether to write every entry to a new index file
+     */
+    private void writeIndex(boolean rewrite) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexPath, !rewrite)))) {
+            if (rewrite) {
+                out.writeInt(version);
+                recordsInFile = 0;
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                    recordsInFile++;
+                }
+            } else {
+                for (String key : changed.keySet()) {
+                    writeEntry(out, key, entries.get(key));
+                    recordsInFile++;
+                }
+            }
+            changed.clear();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites the pack without the thumbnails that are no longer in the index or whose image no longer exists, if
+     * they take up more than half of it. The index is rewritten to match once the new pack has replaced the old one;
+     * if it can't be, the new pack is deleted and the index is left as it was. Meant to be called on a background
+     * thread, as it reads and writes every live thumbnail.
+     */
+    public synchronized void compactIfNeeded() {
+        File packFile = new File(packPath);
+        if (!packFile.isFile() || liveBytes * 2 >= packFile.length())
+            return;
+        File compacted = new File(packPath + ".tmp");
+        HashMap<String, Long> offsets = new HashMap<>();
+        long offset = 0;
+        try (FileChannel out = new FileOutputStream(compacted).getChannel()) {
+            open();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (!new File(entry.getValue().path).exists())
+                    continue;
+                pack.transferTo(entry.getValue().offset, entry.getValue().length, out);
+                offsets.put(entry.getKey(), offset);
+                offset += entry.getValue().length;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            compacted.delete();
+            return;
+        }
+        try {
+            closePack();
+            Files.move(compacted.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The old pack is still in place (ie. it couldn't be replaced while mapped), so the old offsets still are.
+            e.printStackTrace();
+            compacted.delete();
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            Long newOffset = offsets.get(entry.getKey());
+            if (newOffset == null)
+                iterator.remove();
+            else
+                entry.getValue().offset = newOffset;
+        }
+        liveBytes = offset;
+        // Every offset changed, so the whole index is written again.
+        writeIndex(true);
+    }
+
+    /**
+     * Writes the index and closes the pack. Thumbnails already handed out stay readable.
+     */
+    public synchronized void close() {
+        writeThumbnails();
+        closePack();
+    }
+
+    /**
+     * Closes the pack and drops its mapping, which stays valid for as long as buffers read from it are in use.
+     */
+    private void closePack() {
+        if (pack != null) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            pack = null;
+        }
+        mapped = null;
+    }
+
+    /**
+     * Returns the number of stored thumbnails.
+     *
+     * @return the number of thumbnails
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Opens the pack for appending and reading, unless it is already open.
+     *
+     * @throws IOException if the pack can't be opened
+     */
+    private void open() throws IOException {
+        if (pack == null)
+            pack = new RandomAccessFile(packPath, "rw").getChannel();
+    }
+
+    /**
+     * Maps the whole pack as it is now, so that thumbnails appended since it was last mapped can be read.
+     *
+     * @throws IOException if the pack can't be mapped
+     */
+    private void map() throws IOException {
+        open();
+        mapped = pack.map(FileChannel.MapMode.READ_ONLY, 0, pack.size());
+    }
+
+    /**
+     * Writes the record for one entry.
+     *
+     * @param out   stream to write to
+     * @param key   key of the entry
+     * @param entry the entry
+     * @throws IOException if the record can't be written
+     */
+    private static void writeEntry(DataOutputStream out, String key, Entry entry) throws IOException {
+        out.writeUTF(key);
+        out.writeUTF(entry.path);
+        out.writeLong(entry.modifiedTime);
+        out.writeLong(entry.offset);
+        out.writeInt(entry.length);
+    }
+
+    /**
+     * A Thumbnail is the size and the ARGB pixels of a stored thumbnail.
+     */
+    public static class Thumbnail {
+
+        /**
+         * Width of the thumbnail.
+         */
+        private final int width;
+
+        /**
+         * Height of the thumbnail.
+         */
+        private final int height;
+
+        /**
+         * The ARGB pixels of the thumbnail, row by row.
+         */
+        private final IntBuffer pixels;
+
+        /**
+         * Constructs a new Thumbnail.
+         *
+         * @param width  width of the thumbnail
+         * @param height height of the thumbnail
+         * @param pixels the ARGB pixels of the thumbnail, row by row
+         */
+        Thumbnail(int width, int height, IntBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        /**
+         * Returns the width of the thumbnail.
+         *
+         * @return the width
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the height of the thumbnail.
+         *
+         * @return the height
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the ARGB pixels of the thumbnail, row by row.
+         *
+         * @return the pixels
+         */
+        public IntBuffer getPixels() {
+            return pixels;
+        }
+    }
+
+    /**
+     * Where one thumbnail is in the pack, and which version of which image it was made from.
+     */
+    private static class Entry {
+
+        /**
+         * Path of the image when the thumbnail was last used.
+         */
+        private String path;
+
+        /**
+         * Last modified time of the image the thumbnail was made from.
+         */
+        private final long modifiedTime;
+
+        /**
+         * Offset of the thumbnail in the pack.
+         */
+        private long offset;
+
+        /**
+         * Bytes the thumbnail takes up in the pack, including its width and height.
+         */
+        private final int length;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param path         path of the image
+         * @param modifiedTime last modified time of the image
+         * @param offset       offset of the thumbnail in the pack
+         * @param length       bytes the thumbnail takes up in the pack
+         */
+        Entry(String path, long modifiedTime, long offset, int length) {
+            this.path = path;
+            this.modifiedTime = modifiedTime;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import javafx.stage.Stage;
 import java.io.*;
 
 import controllers.*;
+import models.HistoryLog;
+import models.LogAppender;
 
 /**
  * Main loads and creates the interface for the user to interact with.
@@ -33,20 +35,65 @@ public class Main extends Application {
     public static final String logPath = configDirectoryPath + "/log.txt";
 
     /**
-     * The path for serialized tags file.
+     * The path for serialized tags file, read only if there is no tag catalog file yet.
      */
     public static final String serializedTags = savedDirectoryPath + "/tags.ser";
 
     /**
-     * The path for serialized directories file.
+     * The path for serialized directories file, read only if there is no directory catalog file yet.
      */
     public static final String serializedDirectories = savedDirectoryPath + "/directories.ser";
 
     /**
-     * The path for serialized favourites file.
+     * The path for serialized favourites file, read only if there is no favourite catalog file yet.
      */
     public static final String serializedFavourites = savedDirectoryPath + "/favourites.ser";
 
+    /**
+     * The path for the tag catalog file.
+     */
+    public static final String tagCatalog = savedDirectoryPath + "/tags.cat";
+
+    /**
+     * The path for the directory catalog file.
+     */
+    public static final String directoryCatalog = savedDirectoryPath + "/directories.cat";
+
+    /**
+     * The path for the favourite catalog file.
+     */
+    public static final String favouriteCatalog = savedDirectoryPath + "/favourites.cat";
+
+    /**
+     * The path for the directory scan cache file.
+     */
+    public static final String scanCache = savedDirectoryPath + "/scancache.dat";
+
+    /**
+     * The path for the thumbnail pack file.
+     */
+    public static final String thumbnailPack = savedDirectoryPath + "/thumbnails.pack";
+
+    /**
+     * The path for the thumbnail index file.
+     */
+    public static final String thumbnailIndex = savedDirectoryPath + "/thumbnails.idx";
+
+    /**
+     * The path for the rename journal file.
+     */
+    public static final String renameJournal = savedDirectoryPath + "/renames.journal";
+
+    /**
+     * The path for the history record file.
+     */
+    public static final String historyRecords = savedDirectoryPath + "/history.dat";
+
+    /**
+     * The path for the history string file.
+     */
+    public static final String historyStrings = savedDirectoryPath + "/history.str";
+
     /**
      * All processes required to be executed every time the application starts.
      *
@@ -73,9 +120,15 @@ public class Main extends Application {
     @Override
     public void stop() throws IOException {
         createConfigDirectory();
+        if (GUIController.getDirectoryWatcher() != null)
+            GUIController.getDirectoryWatcher().close();
         GUIController.getTagManager().writeSavedTags();
         GUIController.getDirectoryManager().writeSavedDirectories();
         GUIController.getFavourites().writeSavedFavourites();
+        GUIController.getScanCache().writeScanCache();
+        GUIController.getThumbnailStore().close();
+        LogAppender.getLogAppender().close();
+        HistoryLog.getHistoryLog().close();
     }
 
     /**
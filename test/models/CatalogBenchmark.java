@@ -0,0 +1,156 @@
+package models;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * CatalogBenchmark compares the catalog format with the Java serialization it replaced, on a made-up library that is
+ * the same on every run: the same directories, images, Tags and file keys come out of a Random with a fixed seed. It
+ * writes and reads the directories both ways a number of times, and prints the size of each file and the median time
+ * each write and read took.
+ * <p>
+ * Run it with the number of directories, the number of images in each and the number of runs, which default to 200,
+ * 250 and 15 (ie. java models.CatalogBenchmark 200 250 15). The files are written to a temporary directory, which is
+ * deleted afterwards.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class CatalogBenchmark {
+
+    /**
+     * Seed of the Random the library is made from.
+     */
+    private static final long seed = 20171119L;
+
+    /**
+     * Number of distinct Tags in the library.
+     */
+    private static final int tagCount = 300;
+
+    /**
+     * Most Tags on one image.
+     */
+    private static final int maxTagsPerImage = 5;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args number of directories, number of images in each, and number of runs, all optional
+     * @throws Exception if a file can't be written or read
+     */
+    public static void main(String[] args) throws Exception {
+        int directoryCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int imagesPerDirectory = (args.length > 1) ? Integer.parseInt(args[1]) : 250;
+        int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 15;
+        ArrayList<Directory> directories = makeLibrary(directoryCount, imagesPerDirectory);
+        File temporary = Files.createTempDirectory("catalog-benchmark").toFile();
+        File serialized = new File(temporary, "directories.ser");
+        File catalog = new File(temporary, "directories.cat");
+        long[] serializedWrites = new long[runs];
+        long[] serializedReads = new long[runs];
+        long[] catalogWrites = new long[runs];
+        long[] catalogReads = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            // Each write and read starts on a clean heap, so none of them pays for the garbage of the one before.
+            System.gc();
+            long start = System.nanoTime();
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(serialized)))) {
+                out.writeObject(directories);
+            }
+            serializedWrites[run] = System.nanoTime() - start;
+            System.gc();
+            start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                    new FileInputStream(serialized)))) {
+                in.readObject();
+            }
+            serializedReads[run] = System.nanoTime() - start;
+            System.gc();
+            start = System.nanoTime();
+            CatalogOutput out = new CatalogOutput();
+            out.writeVarInt(directories.size());
+            for (Directory directory : directories) {
+                directory.writeTo(out);
+            }
+            out.writeTo(catalog.getPath());
+            catalogWrites[run] = System.nanoTime() - start;
+            System.gc();
+            start = System.nanoTime();
+            DirectoryManager.readCatalog(new CatalogInput(catalog.getPath()));
+            catalogReads[run] = System.nanoTime() - start;
+        }
+        System.out.println(directoryCount + " directories of " + imagesPerDirectory + " images, " + runs + " runs");
+        System.out.printf("%-13s %12s %12s %12s%n", "", "bytes", "write (ms)", "read (ms)");
+        System.out.printf("%-13s %12d %12.1f %12.1f%n", "serialized", serialized.length(),
+                median(serializedWrites), median(serializedReads));
+        System.out.printf("%-13s %12d %12.1f %12.1f%n", "catalog", catalog.length(), median(catalogWrites),
+                median(catalogReads));
+        System.out.printf("%-13s %12.1f %12.1f %12.1f%n", "ratio", (double) serialized.length() / catalog.length(),
+                median(serializedWrites) / median(catalogWrites), median(serializedReads) / median(catalogReads));
+        serialized.delete();
+        catalog.delete();
+        temporary.delete();
+    }
+
+    /**
+     * Makes the library the benchmark is run on. Every image has a few Tags in its name and a file key; its history is
+     * kept in the HistoryLog, so none is saved with the directories.
+     *
+     * @param directoryCount     number of directories
+     * @param imagesPerDirectory number of images in each directory
+     * @return the Directories
+     */
+    private static ArrayList<Directory> makeLibrary(int directoryCount, int imagesPerDirectory) {
+        Random random = new Random(seed);
+        Tag[] tags = new Tag[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = TagManager.intern("tag" + i);
+        }
+        ArrayList<Directory> directories = new ArrayList<>(directoryCount);
+        int image = 0;
+        for (int d = 0; d < directoryCount; d++) {
+            Directory directory = new Directory("/home/user/Pictures/" + (2000 + d / 12) + "/" + (d % 12 + 1));
+            directory.setModifiedTime(1500000000000L + random.nextInt(1000000000));
+            ArrayList<File> files = new ArrayList<>(imagesPerDirectory);
+            for (int i = 0; i < imagesPerDirectory; i++, image++) {
+                String baseName = String.format("IMG_%05d", image);
+                int[] ids = new int[1 + random.nextInt(maxTagsPerImage)];
+                for (int t = 0; t < ids.length; t++) {
+                    ids[t] = tags[random.nextInt(tagCount)].getId();
+                }
+                ids = Arrays.stream(ids).sorted().distinct().toArray();
+                TagSet tagSet = TagSet.of(ids);
+                StringBuilder name = new StringBuilder(baseName);
+                for (Tag tag : tagSet.toTags()) {
+                    name.append(' ').append(tag);
+                }
+                ImageFile imageFile = new ImageFile(directory.getPath() + "/" + name + ".jpg");
+                imageFile.setAttributes(100000 + random.nextInt(5000000), 1500000000000L + random.nextInt(1000000000),
+                        "(dev=803,ino=" + (1000000 + image) + ")");
+                imageFile.setDimensions(4000, 3000);
+                imageFile.setParsedName(baseName, ids);
+                files.add(imageFile);
+            }
+            directory.setFiles(files);
+            directories.add(directory);
+        }
+        return directories;
+    }
+
+    /**
+     * Returns the median of the given times in milliseconds.
+     *
+     * @param nanos times in nanoseconds
+     * @return the median time in milliseconds
+     */
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,162 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * FileNameParserBenchmark compares FileNameParser with the regular expressions that GUIController used to auto-tag
+ * scanned images: the lowercased name matched against regexFormat, the base name and tags split out of it on " @",
+ * every tag name normalized with replaceAll, and checked with another regular expression before it was added to the
+ * list of tags. Both are run over the same made-up file names, which are the same on every run, and the median time
+ * of each is printed. The base names and tags they find are compared first, and any name they disagree on is printed.
+ * <p>
+ * Run it with the number of names and the number of runs, which default to 100000 and 15 (ie. java
+ * models.FileNameParserBenchmark 100000 15).
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class FileNameParserBenchmark {
+
+    /**
+     * The regular expression a file name had to match to be auto-tagged, as GUIController had it.
+     */
+    private static final String regexFormat =
+            "^[\\W\\D\\w\\d\\s]+((\\s)(@[^.\\\\/:*?\"<>|]*[^\\s]))+\\.((jpg)|(png)|(gif)|(jpeg))";
+
+    /**
+     * The regular expression a Tag name had to match to be added to the list of tags, as TagManager had it.
+     */
+    private static final String validName = "^[^.\\\\/:*?\"<>|]?[^\\\\/:*?\"@<>|]*";
+
+    /**
+     * Seed of the Random the names are made from.
+     */
+    private static final long seed = 20171119L;
+
+    /**
+     * Number of distinct tags in the names.
+     */
+    private static final int tagCount = 300;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args number of names and number of runs, both optional
+     */
+    public static void main(String[] args) {
+        int nameCount = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 15;
+        String[] names = makeNames(nameCount);
+        int mismatches = 0;
+        FileNameParser parser = new FileNameParser();
+        TagManager tagManager = new TagManager();
+        ArrayList<String> listOfTags = new ArrayList<>();
+        for (String name : names) {
+            ArrayList<String> expected = parseWithRegex(name, listOfTags);
+            ArrayList<String> found = new ArrayList<>();
+            if (parser.parse(name, tagManager)) {
+                found.add(parser.getBaseName());
+                for (int id : parser.getTagIds()) {
+                    found.add(TagManager.getTag(id).getName());
+                }
+            }
+            // The parser gives the tags in order of their IDs, and the regular expressions in the order they're named.
+            if (!expected.isEmpty())
+                expected.subList(1, expected.size()).sort(null);
+            if (!found.isEmpty())
+                found.subList(1, found.size()).sort(null);
+            if (!expected.equals(found)) {
+                mismatches++;
+                System.out.println("Mismatch on \"" + name + "\": " + expected + " and " + found);
+            }
+        }
+        long[] regexTimes = new long[runs];
+        long[] parserTimes = new long[runs];
+        long checksum = 0;
+        for (int run = 0; run < runs; run++) {
+            System.gc();
+            long start = System.nanoTime();
+            for (String name : names) {
+                checksum += parseWithRegex(name, listOfTags).size();
+            }
+            regexTimes[run] = System.nanoTime() - start;
+            System.gc();
+            start = System.nanoTime();
+            for (String name : names) {
+                if (parser.parse(name, tagManager))
+                    checksum += 1 + parser.getTagIds().length;
+            }
+            parserTimes[run] = System.nanoTime() - start;
+        }
+        System.out.println(nameCount + " names, " + runs + " runs, " + mismatches + " mismatches (" + checksum + ")");
+        System.out.printf("%-19s %10s%n", "", "time (ms)");
+        System.out.printf("%-19s %10.1f%n", "regular expressions", median(regexTimes));
+        System.out.printf("%-19s %10.1f%n", "FileNameParser", median(parserTimes));
+        System.out.printf("%-19s %10.1f%n", "ratio", median(regexTimes) / median(parserTimes));
+    }
+
+    /**
+     * Makes the file names the benchmark is run on. Most carry a few tags; some carry none, and some have spaces
+     * around or inside their tags, or an extension that isn't an image's.
+     *
+     * @param count number of names
+     * @return the names
+     */
+    private static String[] makeNames(int count) {
+        Random random = new Random(seed);
+        String[] extensions = {".jpg", ".JPG", ".png", ".gif", ".jpeg", ".txt"};
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(String.format("IMG_%05d", i));
+            int tags = random.nextInt(5);
+            for (int t = 0; t < tags; t++) {
+                name.append(" @");
+                if (random.nextInt(20) == 0)
+                    name.append(' ');
+                name.append("tag").append(random.nextInt(tagCount));
+                if (random.nextInt(20) == 0)
+                    name.append("  two");
+            }
+            names[i] = name.append(extensions[random.nextInt(extensions.length)]).toString();
+        }
+        return names;
+    }
+
+    /**
+     * Parses the given file name the way GUIController and TagManager used to, adding new tags to the given list.
+     *
+     * @param name       the file name
+     * @param listOfTags the names of the tags added so far
+     * @return the base name followed by the names of the tags in the list, or nothing if the name carries no tags
+     */
+    private static ArrayList<String> parseWithRegex(String name, ArrayList<String> listOfTags) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!name.toLowerCase().matches(regexFormat))
+            return result;
+        String[] extractedTags = name.substring(0, name.lastIndexOf('.')).split(" @");
+        result.add(extractedTags[0].trim());
+        for (int i = 1; i < extractedTags.length; i++) {
+            String tagName = extractedTags[i].trim().replaceAll("^ +| +$|( )+", "$1");
+            if (tagName.length() > 0 && tagName.length() <= 20 && tagName.matches(validName)
+                    && !listOfTags.contains(tagName))
+                listOfTags.add(tagName);
+            if (listOfTags.contains(tagName) && !result.subList(1, result.size()).contains(tagName))
+                result.add(tagName);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the median of the given times in milliseconds.
+     *
+     * @param nanos times in nanoseconds
+     * @return the median time in milliseconds
+     */
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
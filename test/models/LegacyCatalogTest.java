@@ -0,0 +1,222 @@
+package models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import views.Main;
+
+/**
+ * LegacyCatalogTest checks that the serialized files saved by the first release are still loaded, and are only
+ * deleted once they have been written to the catalog files. The files in the legacy folder next to it were written by
+ * the classes of the first release (commit 1c4a060): the tags beach, sun and dog; a directory
+ * /tmp/legacy-photos/trip holding IMG_0001.jpg, IMG_0002.jpg and a subdirectory sub holding IMG_0003.png; IMG_0001
+ * tagged with sun and beach and then untagged sun, IMG_0003 tagged with dog; and IMG_0001 added to the favourites. None
+ * of the images has to exist on disk. The changes were saved without a time, and must not be taken for old ones and
+ * collapsed when they are loaded.
+ * <p>
+ * The files are copied into a temporary folder that is used as the working directory, which is deleted afterwards.
+ * Run it from the project folder, like the benchmarks (ie. java models.LegacyCatalogTest); it throws an
+ * AssertionError on the first check that fails.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class LegacyCatalogTest {
+
+    /**
+     * The folder the serialized files of the first release are kept in.
+     */
+    private static final String legacyFolder = "test/models/legacy";
+
+    /**
+     * Runs the test.
+     *
+     * @param args not used
+     * @throws Exception if the files can't be copied, read or written
+     */
+    public static void main(String[] args) throws Exception {
+        Path legacy = new File(legacyFolder).toPath().toAbsolutePath();
+        Path folder = Files.createTempDirectory("legacy");
+        // Main reads the working directory once, so it is set before Main is first used.
+        System.setProperty("user.dir", folder.toString());
+        try {
+            Path saved = new File(Main.serializedTags).getParentFile().toPath();
+            Files.createDirectories(saved);
+            for (String name : new String[]{"tags.ser", "directories.ser", "favourites.ser"}) {
+                Files.copy(legacy.resolve(name), saved.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+            checkLoaded();
+            checkMigrated();
+            checkKeptIfUnreadable(legacy);
+            System.out.println("LegacyCatalogTest passed");
+        } finally {
+            LogAppender.getLogAppender().close();
+            HistoryLog.getHistoryLog().close();
+            delete(folder);
+        }
+    }
+
+    /**
+     * Checks that the tags, directories, images, histories and favourites of the serialized files are loaded.
+     *
+     * @throws Exception if the files can't be read
+     */
+    private static void checkLoaded() throws Exception {
+        TagManager tagManager = new TagManager();
+        tagManager.loadSavedTags();
+        check(tagManager.getListOfTags().toString().equals("[@beach, @sun, @dog]"),
+                "tags: " + tagManager.getListOfTags());
+
+        DirectoryManager directoryManager = new DirectoryManager();
+        directoryManager.loadSavedDirectories();
+        Directory trip = directoryManager.getDirectory("/tmp/legacy-photos/trip");
+        Directory sub = directoryManager.getDirectory("/tmp/legacy-photos/trip/sub");
+        check(trip != null && sub != null, "directories: " + directoryManager.getListOfDirectories());
+        check(trip.getFiles().toString().equals("[IMG_0001 @beach.jpg, IMG_0002.jpg, sub]"),
+                "trip: " + trip.getFiles());
+        check(trip.getFiles().get(2) == sub, "sub isn't shared");
+        check(sub.getFiles().toString().equals("[IMG_0003 @dog.png]"), "sub: " + sub.getFiles());
+
+        ImageFile one = (ImageFile) trip.getFiles().get(0);
+        check(one.getBaseName().equals("IMG_0001"), "base name: " + one.getBaseName());
+        check(one.getCurrentTags().toString().equals("[@beach]"), "current tags: " + one.getCurrentTags());
+        // The changes were saved without a time, and are kept as they were rather than collapsed into a checkpoint.
+        ArrayList<Log> history = one.getImageLog();
+        check(history.size() == 2, "history: " + history);
+        checkLog(history.get(0), "IMG_0001.jpg", "IMG_0001 @sun @beach.jpg", "[]", "[@beach, @sun]");
+        checkLog(history.get(1), "IMG_0001 @sun @beach.jpg", "IMG_0001 @beach.jpg", "[@beach, @sun]", "[@beach]");
+        ImageFile three = (ImageFile) sub.getFiles().get(0);
+        check(three.getCurrentTags().toString().equals("[@dog]"), "IMG_0003 tags: " + three.getCurrentTags());
+
+        Favourite favourite = new Favourite();
+        favourite.loadSavedFavourites();
+        check(favourite.getListOfFavourites().toString().equals("[IMG_0001 @beach.jpg]"),
+                "favourites: " + favourite.getListOfFavourites());
+    }
+
+    /**
+     * Checks that loading the serialized files and writing them again replaces them with catalog files that hold the
+     * same tags, directories and favourites.
+     *
+     * @throws Exception if the files can't be read or written
+     */
+    private static void checkMigrated() throws Exception {
+        TagManager tagManager = new TagManager();
+        tagManager.loadSavedTags();
+        DirectoryManager directoryManager = new DirectoryManager();
+        directoryManager.loadSavedDirectories();
+        Favourite favourite = new Favourite();
+        favourite.loadSavedFavourites();
+        tagManager.writeSavedTags();
+        directoryManager.writeSavedDirectories();
+        favourite.writeSavedFavourites();
+        String[][] files = {{Main.tagCatalog, Main.serializedTags}, {Main.directoryCatalog, Main.serializedDirectories},
+                {Main.favouriteCatalog, Main.serializedFavourites}};
+        for (String[] catalogAndSerialized : files) {
+            check(new File(catalogAndSerialized[0]).isFile(), catalogAndSerialized[0] + " wasn't written");
+            check(!new File(catalogAndSerialized[1]).exists(), catalogAndSerialized[1] + " wasn't deleted");
+        }
+
+        TagManager tagCatalog = new TagManager();
+        tagCatalog.loadSavedTags();
+        check(tagCatalog.getListOfTags().equals(tagManager.getListOfTags()),
+                "tag catalog: " + tagCatalog.getListOfTags());
+        DirectoryManager directoryCatalog = new DirectoryManager();
+        directoryCatalog.loadSavedDirectories();
+        Directory trip = directoryCatalog.getDirectory("/tmp/legacy-photos/trip");
+        check(trip != null && trip.getFiles().toString().equals("[IMG_0001 @beach.jpg, IMG_0002.jpg, sub]"),
+                "directory catalog: " + directoryCatalog.getListOfDirectories());
+        Favourite favouriteCatalog = new Favourite();
+        favouriteCatalog.loadSavedFavourites();
+        check(favouriteCatalog.getListOfFavourites().toString().equals("[IMG_0001 @beach.jpg]"),
+                "favourite catalog: " + favouriteCatalog.getListOfFavourites());
+    }
+
+    /**
+     * Checks that a serialized file that can't be loaded is kept, and isn't hidden behind a catalog file, when the tags
+     * are written: it is read again the next time they are loaded, and once it can be loaded its tags are.
+     *
+     * @param legacy the folder the serialized files of the first release are kept in
+     * @throws Exception if the files can't be written
+     */
+    private static void checkKeptIfUnreadable(Path legacy) throws Exception {
+        Files.delete(new File(Main.tagCatalog).toPath());
+        byte[] bytes = Files.readAllBytes(legacy.resolve("tags.ser"));
+        Files.write(new File(Main.serializedTags).toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        TagManager tagManager = new TagManager();
+        check(!loads(tagManager), "a cut short tags.ser was loaded");
+        tagManager.writeSavedTags();
+        check(new File(Main.serializedTags).isFile(), "a tags.ser that couldn't be loaded was deleted");
+        check(!new File(Main.tagCatalog).exists(), "a tag catalog was written over a tags.ser that couldn't be loaded");
+
+        TagManager again = new TagManager();
+        check(!loads(again), "a cut short tags.ser was loaded the second time");
+        Files.write(new File(Main.serializedTags).toPath(), bytes);
+        TagManager repaired = new TagManager();
+        check(loads(repaired) && repaired.getListOfTags().toString().equals("[@beach, @sun, @dog]"),
+                "tags once tags.ser could be loaded: " + repaired.getListOfTags());
+    }
+
+    /**
+     * Loads the saved tags into the given TagManager.
+     *
+     * @param tagManager the TagManager
+     * @return true if they were loaded, and false if they couldn't be
+     * @throws ClassNotFoundException if ClassNotFoundException occurs, it's then thrown
+     */
+    private static boolean loads(TagManager tagManager) throws ClassNotFoundException {
+        try {
+            tagManager.loadSavedTags();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks that the given Log goes from the given name and Tags to the others.
+     *
+     * @param log     the Log
+     * @param oldName the name before the change
+     * @param newName the name after the change
+     * @param oldTags the Tags before the change, as a String
+     * @param newTags the Tags after the change, as a String
+     */
+    private static void checkLog(Log log, String oldName, String newName, String oldTags, String newTags) {
+        check(log.getOldName().equals(oldName) && log.getNewName().equals(newName),
+                "log names: " + log.getOldName() + " -> " + log.getNewName());
+        check(log.getOldTags().toString().equals(oldTags) && log.getNewTags().toString().equals(newTags),
+                "log tags: " + log.getOldTags() + " -> " + log.getNewTags());
+    }
+
+    /**
+     * Throws an AssertionError with the given message if the given condition doesn't hold.
+     *
+     * @param condition the condition to check
+     * @param message   what went wrong
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * Deletes the given folder and everything in it.
+     *
+     * @param folder the folder
+     * @throws IOException if the folder can't be listed
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void delete(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
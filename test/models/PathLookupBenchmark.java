@@ -0,0 +1,145 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * PathLookupBenchmark compares the path index and path trie of DirectoryManager with the linear search over its list
+ * of directories that they replaced. The directories are albums spread over a folder for every month of several
+ * years. For each library size it times adding every Directory, looking up directories by path, and listing every
+ * directory under each month's folder, and prints the median time of each.
+ * <p>
+ * Run it with the largest number of directories and the number of runs, which default to 100000 and 5 (ie. java
+ * models.PathLookupBenchmark 100000 5). Libraries of 1000, 10 times as many, and so on up to the largest are timed.
+ * The linear search looks up a sample of lookupSample paths rather than every one, since it takes as long as the
+ * library is big; its time is given per lookup like the index's.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class PathLookupBenchmark {
+
+    /**
+     * Seed of the Random the lookups are picked with.
+     */
+    private static final long seed = 20171119L;
+
+    /**
+     * Number of month folders the directories are spread over (ie. 20 years of 12 months).
+     */
+    private static final int folderCount = 240;
+
+    /**
+     * Number of paths looked up by the linear search in each run.
+     */
+    private static final int lookupSample = 1000;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args largest number of directories and number of runs, both optional
+     */
+    public static void main(String[] args) {
+        int largest = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        System.out.printf("%-11s %10s %13s %13s %13s %13s%n", "directories", "add (ms)", "index (ns)",
+                "linear (ns)", "trie (ms)", "scan (ms)");
+        for (int size = 1000; size <= largest; size *= 10) {
+            run(size, runs);
+        }
+    }
+
+    /**
+     * Times a library of the given number of directories and prints a line of results.
+     *
+     * @param size number of directories
+     * @param runs number of runs
+     */
+    private static void run(int size, int runs) {
+        ArrayList<Directory> directories = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            directories.add(new Directory(folder(i % folderCount) + "/album" + i));
+        }
+        Random random = new Random(seed);
+        String[] lookups = new String[lookupSample];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = directories.get(random.nextInt(size)).getPath();
+        }
+        long[] adds = new long[runs];
+        long[] indexLookups = new long[runs];
+        long[] linearLookups = new long[runs];
+        long[] trieQueries = new long[runs];
+        long[] linearQueries = new long[runs];
+        int found = 0;
+        for (int run = 0; run < runs; run++) {
+            System.gc();
+            long start = System.nanoTime();
+            DirectoryManager directoryManager = new DirectoryManager();
+            for (Directory directory : directories) {
+                directoryManager.addDirectory(directory);
+            }
+            adds[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Directory directory : directories) {
+                if (directoryManager.getDirectory(directory.getPath()) != null)
+                    found++;
+            }
+            indexLookups[run] = (System.nanoTime() - start) / size;
+
+            start = System.nanoTime();
+            for (String path : lookups) {
+                for (Directory directory : directories) {
+                    if (directory.getPath().equals(path)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+            linearLookups[run] = (System.nanoTime() - start) / lookups.length;
+
+            start = System.nanoTime();
+            for (int folder = 0; folder < folderCount; folder++) {
+                found += directoryManager.getDirectoriesUnder(folder(folder)).size();
+            }
+            trieQueries[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int folder = 0; folder < folderCount; folder++) {
+                String prefix = folder(folder) + "/";
+                for (Directory directory : directories) {
+                    if (directory.getPath().startsWith(prefix))
+                        found++;
+                }
+            }
+            linearQueries[run] = System.nanoTime() - start;
+        }
+        // Every lookup and query finds what it looks for; checking the count also keeps the loops from being cut.
+        System.out.printf("%-11d %10.1f %13d %13d %13.1f %13.1f %s%n", size, median(adds) / 1e6,
+                median(indexLookups), median(linearLookups), median(trieQueries) / 1e6, median(linearQueries) / 1e6,
+                (found == runs * (size + lookupSample + 2 * size)) ? "" : "(missed " + found + ")");
+    }
+
+    /**
+     * Returns the path of the month folder with the given number.
+     *
+     * @param folder number of the folder, from 0 to folderCount - 1
+     * @return the path of the folder
+     */
+    private static String folder(int folder) {
+        return "/home/user/Pictures/" + (2000 + folder / 12) + "/" + (folder % 12 + 1);
+    }
+
+    /**
+     * Returns the median of the given times.
+     *
+     * @param nanos times in nanoseconds
+     * @return the median time in nanoseconds
+     */
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
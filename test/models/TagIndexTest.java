@@ -0,0 +1,298 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * TagIndexTest checks the CompressedBitmap the TagIndex keeps for every Tag, and the tag queries the TagIndex answers
+ * with them. The bitmaps are checked against a TreeSet of the same values: around the arrayLimit of 4096 values at
+ * which a chunk turns from a sorted array into a bitmap, and with AND, OR and AND NOT of sets whose chunks are sparse,
+ * dense, or only in one of the sets. The queries are checked on a small library of images that don't have to exist on
+ * disk.
+ * <p>
+ * Run it from the project folder, like the benchmarks (ie. java models.TagIndexTest); it throws an AssertionError on
+ * the first check that fails.
+ *
+ * @author Eric Yuan
+ * @version 1.0
+ */
+public class TagIndexTest {
+
+    /**
+     * Seed of the Random the values of the bitmaps are picked with.
+     */
+    private static final long seed = 20171203L;
+
+    /**
+     * The most values a chunk of a CompressedBitmap keeps in a sorted array.
+     */
+    private static final int arrayLimit = 4096;
+
+    /**
+     * Number of values in a chunk of a CompressedBitmap.
+     */
+    private static final int chunkSize = 65536;
+
+    /**
+     * Runs the test.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        checkArrayLimit();
+        checkCombined();
+        checkQueries();
+        System.out.println("TagIndexTest passed");
+    }
+
+    /**
+     * Checks that a chunk holds the same values as it is filled up to the arrayLimit, turns into a bitmap with the
+     * value after it, and has values removed again, and that a chunk holding a value at each end of its range works
+     * either way.
+     */
+    private static void checkArrayLimit() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Every 16th value of the second chunk, so that the chunk spans its whole range.
+        for (int i = 0; i < arrayLimit; i++) {
+            add(bitmap, expected, chunkSize + i * 16);
+        }
+        add(bitmap, expected, chunkSize + 16);
+        checkSame(bitmap, expected, "at the array limit");
+        add(bitmap, expected, chunkSize + 1);
+        checkSame(bitmap, expected, "past the array limit");
+        add(bitmap, expected, chunkSize);
+        add(bitmap, expected, 2 * chunkSize - 1);
+        checkSame(bitmap, expected, "a bitmap with values at both ends");
+        for (int i = 0; i < arrayLimit; i += 2) {
+            remove(bitmap, expected, chunkSize + i * 16);
+        }
+        remove(bitmap, expected, chunkSize + 16 * 3);
+        remove(bitmap, expected, 5);
+        checkSame(bitmap, expected, "a bitmap with values removed");
+        for (int value : new TreeSet<>(expected)) {
+            remove(bitmap, expected, value);
+        }
+        checkSame(bitmap, expected, "a bitmap with every value removed");
+
+        CompressedBitmap ends = new CompressedBitmap();
+        TreeSet<Integer> endsExpected = new TreeSet<>();
+        add(ends, endsExpected, chunkSize - 1);
+        add(ends, endsExpected, 0);
+        add(ends, endsExpected, Integer.MAX_VALUE);
+        checkSame(ends, endsExpected, "values at the ends of their chunks");
+    }
+
+    /**
+     * Checks AND, OR and AND NOT of sets that share some chunks and not others, whose shared chunks are both sorted
+     * arrays, both bitmaps, or one of each, and whose results are merged past the arrayLimit or cut back under it.
+     */
+    private static void checkCombined() {
+        Random random = new Random(seed);
+        // How many values each set has in each chunk; 0 leaves the chunk out of the set.
+        int[][] counts = {
+                {100, 200},                        // two sorted arrays
+                {arrayLimit, arrayLimit},          // two full sorted arrays whose OR is a bitmap
+                {6000, 6000},                      // two bitmaps whose AND is a sorted array
+                {20000, 50000},                    // two bitmaps whose AND is a bitmap
+                {3000, 9000},                      // a sorted array and a bitmap
+                {9000, 3000},                      // a bitmap and a sorted array
+                {500, 0},                          // only in the first set
+                {0, 7000},                         // only in the second set
+                {arrayLimit + 1, arrayLimit + 1}}; // two bitmaps just past the limit
+        CompressedBitmap first = new CompressedBitmap();
+        CompressedBitmap second = new CompressedBitmap();
+        TreeSet<Integer> firstExpected = new TreeSet<>();
+        TreeSet<Integer> secondExpected = new TreeSet<>();
+        for (int chunk = 0; chunk < counts.length; chunk++) {
+            fill(first, firstExpected, random, chunk, counts[chunk][0]);
+            fill(second, secondExpected, random, chunk, counts[chunk][1]);
+        }
+        checkSame(first, firstExpected, "the first set");
+        checkSame(second, secondExpected, "the second set");
+
+        TreeSet<Integer> and = new TreeSet<>(firstExpected);
+        and.retainAll(secondExpected);
+        TreeSet<Integer> or = new TreeSet<>(firstExpected);
+        or.addAll(secondExpected);
+        TreeSet<Integer> andNot = new TreeSet<>(firstExpected);
+        andNot.removeAll(secondExpected);
+        TreeSet<Integer> notAnd = new TreeSet<>(secondExpected);
+        notAnd.removeAll(firstExpected);
+        checkSame(first.and(second), and, "AND");
+        checkSame(second.and(first), and, "AND the other way round");
+        checkSame(first.or(second), or, "OR");
+        checkSame(second.or(first), or, "OR the other way round");
+        checkSame(first.andNot(second), andNot, "AND NOT");
+        checkSame(second.andNot(first), notAnd, "AND NOT the other way round");
+        checkSame(first.andNot(first), new TreeSet<>(), "AND NOT itself");
+        checkSame(first.and(new CompressedBitmap()), new TreeSet<>(), "AND an empty set");
+        checkSame(new CompressedBitmap().or(second), secondExpected, "OR an empty set");
+        checkSame(first, firstExpected, "the first set after combining it");
+
+        // The results of combining are changed afterwards like any other set.
+        CompressedBitmap result = first.or(second);
+        add(result, or, 8 * chunkSize + 1);
+        add(result, or, 12 * chunkSize);
+        remove(result, or, or.first());
+        remove(result, or, 2 * chunkSize + 7);
+        checkSame(result, or, "a changed result of OR");
+    }
+
+    /**
+     * Checks queries with several Tags, NOT, parentheses, Tag names with spaces and unknown Tags, and that the
+     * index follows images being removed.
+     */
+    private static void checkQueries() {
+        TagIndex index = new TagIndex();
+        ImageFile sun = image(index, "sun", "tag index sun");
+        ImageFile beachDog = image(index, "beachDog", "tag index beach", "tag index dog");
+        ImageFile sunDog = image(index, "sunDog", "tag index sun", "tag index dog");
+        ImageFile all = image(index, "all", "tag index beach", "tag index sun", "tag index dog");
+        ImageFile none = image(index, "none");
+
+        checkQuery(index, "@tag index beach", beachDog, all);
+        checkQuery(index, "tag  index   dog", beachDog, sunDog, all);
+        checkQuery(index, "@tag index beach AND @tag index dog", beachDog, all);
+        checkQuery(index, "@tag index beach OR @tag index sun", sun, beachDog, sunDog, all);
+        checkQuery(index, "@tag index dog AND NOT @tag index beach", sunDog);
+        checkQuery(index, "NOT @tag index dog", sun, none);
+        checkQuery(index, "NOT NOT @tag index dog", beachDog, sunDog, all);
+        checkQuery(index, "@tag index sun OR @tag index beach AND @tag index dog", sun, beachDog, sunDog, all);
+        checkQuery(index, "(@tag index sun OR @tag index beach) AND NOT @tag index dog", sun);
+        checkQuery(index, "@tag index sun AND (@tag index beach OR (@tag index dog))", sunDog, all);
+        checkQuery(index, "@tag index beach AND @tag index sun AND @tag index dog", all);
+        checkQuery(index, "@tag index nothing");
+        checkQuery(index, "@tag index nothing OR @tag index beach", beachDog, all);
+        checkQuery(index, "NOT @tag index nothing", sun, beachDog, sunDog, all, none);
+        check(TagManager.getInterned("tag index nothing") == null, "an unknown tag was interned by a query");
+
+        index.remove(all);
+        checkQuery(index, "@tag index beach AND @tag index dog", beachDog);
+        checkQuery(index, "NOT @tag index dog", sun, none);
+        index.add(all);
+        checkQuery(index, "@tag index beach AND @tag index dog", beachDog, all);
+
+        for (String bad : new String[]{"", "AND @tag index beach", "@tag index beach AND", "(@tag index beach",
+                "@tag index beach)", "NOT", "@tag index beach OR OR @tag index sun"}) {
+            try {
+                index.query(bad);
+                throw new AssertionError("bad query was answered: " + bad);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Adds the given value to the given CompressedBitmap and to the set of values it should hold.
+     *
+     * @param bitmap   the CompressedBitmap
+     * @param expected the values it should hold
+     * @param value    the value to add
+     */
+    private static void add(CompressedBitmap bitmap, TreeSet<Integer> expected, int value) {
+        bitmap.add(value);
+        expected.add(value);
+    }
+
+    /**
+     * Removes the given value from the given CompressedBitmap and from the set of values it should hold.
+     *
+     * @param bitmap   the CompressedBitmap
+     * @param expected the values it should hold
+     * @param value    the value to remove
+     */
+    private static void remove(CompressedBitmap bitmap, TreeSet<Integer> expected, int value) {
+        bitmap.remove(value);
+        expected.remove(value);
+    }
+
+    /**
+     * Adds the given number of random values of the given chunk to the given CompressedBitmap and to the set of values
+     * it should hold.
+     *
+     * @param bitmap   the CompressedBitmap
+     * @param expected the values it should hold
+     * @param random   the Random the values are picked with
+     * @param chunk    the chunk the values are in
+     * @param count    the number of values to add
+     */
+    private static void fill(CompressedBitmap bitmap, TreeSet<Integer> expected, Random random, int chunk,
+                             int count) {
+        TreeSet<Integer> values = new TreeSet<>();
+        while (values.size() < count) {
+            values.add(chunk * chunkSize + random.nextInt(chunkSize));
+        }
+        for (int value : values) {
+            add(bitmap, expected, value);
+        }
+    }
+
+    /**
+     * Checks that the given CompressedBitmap holds the given values and no others.
+     *
+     * @param bitmap   the CompressedBitmap
+     * @param expected the values it should hold
+     * @param what     what the CompressedBitmap is, for the message
+     */
+    private static void checkSame(CompressedBitmap bitmap, TreeSet<Integer> expected, String what) {
+        int[] values = new int[expected.size()];
+        int n = 0;
+        for (int value : expected) {
+            values[n++] = value;
+        }
+        check(bitmap.cardinality() == expected.size(),
+                what + ": cardinality " + bitmap.cardinality() + " instead of " + expected.size());
+        check(Arrays.equals(bitmap.toArray(), values), what + ": values differ");
+        for (int value : expected) {
+            check(bitmap.contains(value), what + ": doesn't contain " + value);
+            check(value == Integer.MAX_VALUE || expected.contains(value + 1) || !bitmap.contains(value + 1),
+                    what + ": contains " + (value + 1));
+        }
+    }
+
+    /**
+     * Adds an image with the given Tags to the given TagIndex.
+     *
+     * @param index    the TagIndex
+     * @param baseName base name of the image
+     * @param tagNames names of the Tags of the image
+     * @return the image
+     */
+    private static ImageFile image(TagIndex index, String baseName, String... tagNames) {
+        ImageFile imageFile = new ImageFile("/tmp/tag-index/" + baseName + ".jpg");
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (String tagName : tagNames) {
+            tags.add(new Tag(tagName));
+        }
+        imageFile.setCurrentTags(tags);
+        index.add(imageFile);
+        return imageFile;
+    }
+
+    /**
+     * Checks that the given query matches the given images, in the order they were added to the TagIndex.
+     *
+     * @param index    the TagIndex
+     * @param query    the tag expression
+     * @param expected the images it should match
+     */
+    private static void checkQuery(TagIndex index, String query, ImageFile... expected) {
+        ArrayList<ImageFile> matches = index.query(query);
+        check(matches.equals(Arrays.asList(expected)), query + ": " + matches);
+    }
+
+    /**
+     * Throws an AssertionError with the given message if the given condition doesn't hold.
+     *
+     * @param condition the condition to check
+     * @param message   what went wrong
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}